@@ -0,0 +1,133 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.JButton;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.table.AbstractTableModel;
+
+import org.openstreetmap.josm.actions.AutoScaleAction;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.gui.DefaultNameFormatter;
+
+import com.kaartgroup.kaartvalidator.validation.HotSpots;
+import com.kaartgroup.kaartvalidator.validation.TestTimings;
+
+/**
+ * A table of the slowest primitives of the last profiled run of each Kaart test, that can be selected in the map
+ * @author Taylor Smock
+ */
+public class HotSpotsPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+
+    private final HotSpotsModel model = new HotSpotsModel();
+    private final JTable table = new JTable(model);
+
+    /**
+     * Create a new panel with the primitives recorded so far
+     */
+    public HotSpotsPanel() {
+        super(new BorderLayout());
+        table.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(600, 200));
+        add(scrollPane, BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEADING));
+        JButton refresh = new JButton(tr("Refresh"));
+        refresh.addActionListener(e -> model.refresh());
+        JButton clear = new JButton(tr("Clear"));
+        clear.addActionListener(e -> {
+            HotSpots.clear();
+            model.refresh();
+        });
+        JButton select = new JButton(tr("Select in map"));
+        select.addActionListener(e -> selectInMap());
+        buttons.add(refresh);
+        buttons.add(clear);
+        buttons.add(select);
+        add(buttons, BorderLayout.SOUTH);
+        model.refresh();
+    }
+
+    private void selectInMap() {
+        List<OsmPrimitive> primitives = new ArrayList<>();
+        for (int row : table.getSelectedRows()) {
+            OsmPrimitive primitive = model.entries.get(table.convertRowIndexToModel(row)).getPrimitive();
+            if (primitive != null && primitive.getDataSet() != null && !primitive.isDeleted()) primitives.add(primitive);
+        }
+        if (primitives.isEmpty()) return;
+        // Primitives of other datasets than the first one cannot be selected at the same time
+        DataSet dataSet = primitives.get(0).getDataSet();
+        primitives.removeIf(primitive -> primitive.getDataSet() != dataSet);
+        dataSet.setSelected(primitives);
+        AutoScaleAction.zoomTo(primitives);
+    }
+
+    private static final class HotSpotsModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+        private static final String[] COLUMNS = {tr("Test"), tr("Primitive"), tr("Time (ms)"), tr("Errors")};
+        private final transient List<String> tests = new ArrayList<>();
+        private final transient List<HotSpots.Entry> entries = new ArrayList<>();
+
+        void refresh() {
+            tests.clear();
+            entries.clear();
+            for (Map.Entry<String, List<HotSpots.Entry>> test : HotSpots.getSlowest().entrySet()) {
+                for (HotSpots.Entry entry : test.getValue()) {
+                    tests.add(test.getKey());
+                    entries.add(entry);
+                }
+            }
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return entries.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            if (column == 2) return Double.class;
+            if (column == 3) return Integer.class;
+            return String.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            HotSpots.Entry entry = entries.get(row);
+            switch (column) {
+            case 0: return tests.get(row);
+            case 1:
+                OsmPrimitive primitive = entry.getPrimitive();
+                return primitive == null ? entry.getName()
+                        : entry.getName() + " " + primitive.getDisplayName(DefaultNameFormatter.getInstance());
+            case 2: return Math.round(TestTimings.millis(entry.getNanos()) * 100) / 100.0;
+            default: return entry.getErrors();
+            }
+        }
+    }
+}
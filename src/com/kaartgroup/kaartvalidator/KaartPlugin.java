@@ -1,34 +1,80 @@
 // License: GPL. For details, see LICENSE file.
 package com.kaartgroup.kaartvalidator;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.validation.OsmValidator;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.layer.LayerManager.LayerAddEvent;
+import org.openstreetmap.josm.gui.layer.LayerManager.LayerChangeListener;
+import org.openstreetmap.josm.gui.layer.LayerManager.LayerOrderChangeEvent;
+import org.openstreetmap.josm.gui.layer.LayerManager.LayerRemoveEvent;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 import org.openstreetmap.josm.gui.preferences.PreferenceSetting;
 import org.openstreetmap.josm.plugins.Plugin;
 import org.openstreetmap.josm.plugins.PluginInformation;
 
+import com.kaartgroup.kaartvalidator.index.ChangeTracker;
+import com.kaartgroup.kaartvalidator.index.DataSetIndex;
 import com.kaartgroup.kaartvalidator.validation.*;
 
 /**
  * Primary class of the Kaart plugin
  * @author Taylor Smock
  */
-public class KaartPlugin extends Plugin {
+public class KaartPlugin extends Plugin implements LayerChangeListener {
+    private static final List<Class<? extends KaartTest>> TESTS = Collections.unmodifiableList(Arrays.asList(
+            TurnLanes.class,
+            RoadEndsWithLinks.class,
+            NameRefConsistency.class,
+            Maxspeed.class,
+            LinkDestinations.class,
+            LinkTurn.class,
+            Abbreviations.class,
+            RestrictionConsistency.class));
+
     /**
      * Primary constructor
      */
     public KaartPlugin(PluginInformation info) {
         super(info);
-        OsmValidator.addTest(TurnLanes.class);
-        OsmValidator.addTest(RoadEndsWithLinks.class);
-        OsmValidator.addTest(NameRefConsistency.class);
-        OsmValidator.addTest(Maxspeed.class);
-        OsmValidator.addTest(LinkDestinations.class);
-        OsmValidator.addTest(LinkTurn.class);
-        OsmValidator.addTest(Abbreviations.class);
+        for (Class<? extends KaartTest> test : TESTS) {
+            OsmValidator.addTest(test);
+        }
+        MainApplication.getLayerManager().addLayerChangeListener(this);
     }
 
-    /*@Override
+    /**
+     * @return The Kaart tests, in the order they are registered
+     */
+    public static List<Class<? extends KaartTest>> getTests() {
+        return TESTS;
+    }
+
+    @Override
     public PreferenceSetting getPreferenceSetting() {
         return new KaartPluginPreferences();
-    }*/
+    }
+
+    @Override
+    public void layerAdded(LayerAddEvent e) {
+        // Indexes are built when a layer is first validated
+    }
+
+    @Override
+    public void layerRemoving(LayerRemoveEvent e) {
+        if (e.getRemovedLayer() instanceof OsmDataLayer) {
+            DataSet dataSet = ((OsmDataLayer) e.getRemovedLayer()).getDataSet();
+            DataSetIndex.release(dataSet);
+            ChangeTracker.release(dataSet);
+        }
+    }
+
+    @Override
+    public void layerOrderChanged(LayerOrderChangeEvent e) {
+        // Do nothing
+    }
 }
@@ -18,13 +18,19 @@ import com.kaartgroup.kaartvalidator.utils.KaartProperties;
 
 public class KaartPluginPreferences extends DefaultTabPreferenceSetting {
 	private final JCheckBox checkturnlaneintersections;
+	private final JCheckBox incrementalvalidation;
+	private final JCheckBox profilechecks;
 	public KaartPluginPreferences() {
 		super("Kaart-Logo-2", tr("KaartPlugin Settings"), tr("Kaart Plugin Settings"));
 		checkturnlaneintersections = new JCheckBox(tr("Check turn lanes going through intersections"));	
+		incrementalvalidation = new JCheckBox(tr("Only validate again what changed since the last validation"));
+		profilechecks = new JCheckBox(tr("Time the check of every way and keep the slowest (slower validation)"));
 	}
 	@Override
 	public boolean ok() {
 		KaartProperties.CHECK_TURN_LANES_AT_INTERSECTIONS.put(this.checkturnlaneintersections.isSelected());
+		KaartProperties.INCREMENTAL_VALIDATION.put(this.incrementalvalidation.isSelected());
+		KaartProperties.PROFILE_CHECKS.put(this.profilechecks.isSelected());
 		
 		return false;
 	}
@@ -39,11 +45,21 @@ public class KaartPluginPreferences extends DefaultTabPreferenceSetting {
 		mainPanel.add(new JLabel("<html><b>Validators :</b> (this is a placeholder)</html>"), GBC.eol().fill(GBC.HORIZONTAL));
 
 		mainPanel.add(checkturnlaneintersections);
+		mainPanel.add(incrementalvalidation);
+		mainPanel.add(profilechecks);
+
+		mainPanel.add(new JLabel("<html><b>" + tr("Timings of the last test runs") + "</b></html>"), GBC.eol().fill(GBC.HORIZONTAL));
+		mainPanel.add(new TestTimingsPanel());
+
+		mainPanel.add(new JLabel("<html><b>" + tr("Slowest primitives of the last profiled test runs") + "</b></html>"), GBC.eol().fill(GBC.HORIZONTAL));
+		mainPanel.add(new HotSpotsPanel());
 		
 		createPreferenceTabWithScrollPane(gui, mainPanel);
 	}
 
 	private void markCheckBoxes() {
 		checkturnlaneintersections.setSelected(KaartProperties.CHECK_TURN_LANES_AT_INTERSECTIONS.get());
+		incrementalvalidation.setSelected(KaartProperties.INCREMENTAL_VALIDATION.get());
+		profilechecks.setSelected(KaartProperties.PROFILE_CHECKS.get());
 	}
 }
@@ -0,0 +1,134 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.DateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+
+import com.kaartgroup.kaartvalidator.validation.TestTimings;
+
+/**
+ * A table of the timings of the last runs of the Kaart tests, newest first, that can be exported as CSV
+ * @author Taylor Smock
+ */
+public class TestTimingsPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+
+    private final TimingsModel model = new TimingsModel();
+
+    /**
+     * Create a new panel with the runs recorded so far
+     */
+    public TestTimingsPanel() {
+        super(new BorderLayout());
+        JTable table = new JTable(model);
+        table.setAutoCreateRowSorter(true);
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(600, 200));
+        add(scrollPane, BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEADING));
+        JButton refresh = new JButton(tr("Refresh"));
+        refresh.addActionListener(e -> model.refresh());
+        JButton clear = new JButton(tr("Clear"));
+        clear.addActionListener(e -> {
+            TestTimings.clear();
+            model.refresh();
+        });
+        JButton export = new JButton(tr("Export CSV..."));
+        export.addActionListener(e -> export());
+        buttons.add(refresh);
+        buttons.add(clear);
+        buttons.add(export);
+        add(buttons, BorderLayout.SOUTH);
+        model.refresh();
+    }
+
+    private void export() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("kaart-test-timings.csv"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        try (Writer writer = Files.newBufferedWriter(chooser.getSelectedFile().toPath(), StandardCharsets.UTF_8)) {
+            TestTimings.writeCsv(writer, TestTimings.getRuns());
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, tr("Could not export the timings: {0}", ex.getMessage()),
+                    tr("Error"), JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private static final class TimingsModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+        private static final String[] COLUMNS = {tr("Finished"), tr("Test"), tr("startTest (ms)"), tr("visit (ms)"),
+                tr("endTest (ms)"), tr("Total (ms)"), tr("Visited"), tr("Candidates"), tr("Errors"),
+                tr("Allocated (MB)")};
+        private transient List<TestTimings.Run> runs = Collections.emptyList();
+
+        void refresh() {
+            runs = TestTimings.getRuns();
+            Collections.reverse(runs);
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return runs.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            if (column == 0 || column == 1) return String.class;
+            if (column >= 6 && column <= 8) return Integer.class;
+            return Double.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            TestTimings.Run run = runs.get(row);
+            switch (column) {
+            case 0: return DateFormat.getTimeInstance(DateFormat.MEDIUM).format(new Date(run.getFinished()));
+            case 1: return run.isPartial() ? tr("{0} (partial)", run.getTest()) : run.getTest();
+            case 2: return round(TestTimings.millis(run.getStartTestNanos()));
+            case 3: return round(TestTimings.millis(run.getVisitNanos()));
+            case 4: return round(TestTimings.millis(run.getEndTestNanos()));
+            case 5: return round(TestTimings.millis(run.getTotalNanos()));
+            case 6: return run.getVisited();
+            case 7: return run.getCandidates();
+            case 8: return run.getErrors();
+            default: return run.getAllocatedBytes() < 0 ? null : round(run.getAllocatedBytes() / (1024.0 * 1024.0));
+            }
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 10) / 10.0;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.abbreviations;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * A bounded least-recently-used cache of abbreviation results, keyed by the languages checked, tag key and tag value
+ * @author Taylor Smock
+ */
+public class AbbreviationCache {
+    /**
+     * The result of looking for abbreviations in a tag value
+     */
+    public static final class Result {
+        /** The result for values without abbreviations */
+        public static final Result NONE = new Result(null, Collections.emptySet(), null);
+
+        private final AbbreviationMatcher.Match match;
+        private final Set<String> expansions;
+        private final String fix;
+
+        /**
+         * Create a new result
+         * @param match The abbreviation found
+         * @param expansions The possible expansions of the abbreviation
+         * @param fix The value with the abbreviation expanded, or null if it cannot be expanded automatically
+         */
+        public Result(AbbreviationMatcher.Match match, Set<String> expansions, String fix) {
+            this.match = match;
+            this.expansions = expansions;
+            this.fix = fix;
+        }
+
+        /**
+         * @return The abbreviation found, or null if there is no abbreviation
+         */
+        public AbbreviationMatcher.Match getMatch() {
+            return match;
+        }
+
+        /**
+         * @return The possible expansions of the abbreviation
+         */
+        public Set<String> getExpansions() {
+            return expansions;
+        }
+
+        /**
+         * @return The value with the abbreviation expanded, or null
+         */
+        public String getFix() {
+            return fix;
+        }
+    }
+
+    private static final class Key {
+        final String languages;
+        final String key;
+        final String value;
+        final int hash;
+
+        Key(String languages, String key, String value) {
+            this.languages = languages;
+            this.key = key;
+            this.value = value;
+            this.hash = 31 * (31 * languages.hashCode() + key.hashCode()) + value.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return hash == other.hash && Objects.equals(languages, other.languages) && Objects.equals(key, other.key)
+                    && Objects.equals(value, other.value);
+        }
+    }
+
+    private final Map<Key, Result> cache;
+    private long hits;
+    private long misses;
+
+    /**
+     * Create a new cache
+     * @param maxSize The maximum number of values to keep
+     */
+    public AbbreviationCache(int maxSize) {
+        cache = new LinkedHashMap<Key, Result>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the result for a tag, computing it if it is not cached
+     * @param languages The languages the value is checked against (e.g., "el,en")
+     * @param key The tag key
+     * @param value The tag value
+     * @param analyzer The function to compute the result from the value
+     * @return The result for the tag
+     */
+    public Result get(String languages, String key, String value, Function<String, Result> analyzer) {
+        Key cacheKey = new Key(languages, key, value);
+        synchronized (this) {
+            Result result = cache.get(cacheKey);
+            if (result != null) {
+                hits++;
+                return result;
+            }
+            misses++;
+        }
+        // Analyze outside of the lock, two threads may analyze the same value but they get equal results
+        Result result = analyzer.apply(value);
+        synchronized (this) {
+            cache.put(cacheKey, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of lookups that were answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of lookups that had to be computed
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of values currently cached
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,98 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.abbreviations;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openstreetmap.josm.tools.Logging;
+
+import com.kaartgroup.kaartvalidator.utils.ValidationEvents;
+
+/**
+ * The abbreviation dictionaries packaged with the plugin. Each dictionary is read once per JVM,
+ * the first time it is needed.
+ * @author Taylor Smock
+ */
+public final class AbbreviationDictionaries {
+    private static final String PATH = "/data/abbreviations/";
+    private static final Map<String, AbbreviationDictionary> DICTIONARIES = new ConcurrentHashMap<>();
+    private static Map<String, List<String>> territories;
+
+    private AbbreviationDictionaries() {
+        // Hide the constructor
+    }
+
+    /**
+     * Get the languages that have a dictionary, and the territories where they are usually used
+     * @return A map of language codes to ISO 3166 codes
+     */
+    public static synchronized Map<String, List<String>> getLanguages() {
+        if (territories == null) {
+            Map<String, List<String>> languages = new LinkedHashMap<>();
+            try (InputStream stream = AbbreviationDictionaries.class.getResourceAsStream(PATH + "languages.txt")) {
+                if (stream != null) {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.trim().isEmpty() || line.startsWith("#")) continue;
+                        String[] fields = line.trim().split("\\s+");
+                        languages.put(fields[0], Collections.unmodifiableList(Arrays.asList(fields).subList(1, fields.length)));
+                    }
+                }
+            } catch (IOException e) {
+                Logging.error(e);
+            }
+            territories = Collections.unmodifiableMap(languages);
+        }
+        return territories;
+    }
+
+    /**
+     * Get the dictionary for a language
+     * @param language The language code (e.g., "el")
+     * @return The dictionary, or null if there is no dictionary for the language
+     */
+    public static AbbreviationDictionary get(String language) {
+        if (!getLanguages().containsKey(language)) return null;
+        return DICTIONARIES.computeIfAbsent(language, AbbreviationDictionaries::load);
+    }
+
+    private static AbbreviationDictionary load(String language) {
+        Object event = ValidationEvents.beginIndexBuild();
+        AbbreviationDictionary dictionary;
+        try (InputStream stream = AbbreviationDictionaries.class.getResourceAsStream(PATH + language + ".txt")) {
+            dictionary = stream == null ? new AbbreviationDictionary()
+                    : AbbreviationDictionary.read(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Logging.error(e);
+            dictionary = new AbbreviationDictionary();
+        }
+        ValidationEvents.commit(event, "AbbreviationDictionary " + language, dictionary.size());
+        return dictionary;
+    }
+
+    /**
+     * Get the language of a name key
+     * @param key The key (e.g., "name:el", "alt_name:en-GB", "name")
+     * @return The language code (e.g., "el", "en"), or null if the key does not have a language
+     */
+    public static String getLanguage(String key) {
+        int index = key.indexOf("name:");
+        if (index < 0) return null;
+        int start = index + "name:".length();
+        int end = start;
+        while (end < key.length() && Character.isLetter(key.charAt(end))) {
+            end++;
+        }
+        return end > start ? key.substring(start, end) : null;
+    }
+}
@@ -0,0 +1,150 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.abbreviations;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A dictionary of abbreviations, keyed by the abbreviation and where it may appear in a name
+ * @author Taylor Smock
+ */
+public class AbbreviationDictionary {
+    /**
+     * Where an abbreviation may appear in a name
+     */
+    public enum Position {
+        PREFIX, SUFFIX, UNKNOWN;
+
+        /**
+         * Get a position from its name
+         * @param position The position ("prefix", "suffix", "unknown")
+         * @return The position, or null if it is not a position
+         */
+        public static Position fromString(String position) {
+            for (Position p : values()) {
+                if (p.name().equalsIgnoreCase(position)) return p;
+            }
+            return null;
+        }
+    }
+
+    private final Map<String, Map<Position, List<String>>> entries = new LinkedHashMap<>();
+    private volatile AbbreviationMatcher matcher;
+
+    /**
+     * Read a dictionary. Each line has an abbreviation, a position, and expansions separated by semicolons,
+     * all separated by tabs. Empty lines and lines starting with # are ignored.
+     * @param reader The reader to read the dictionary from
+     * @return The dictionary
+     * @throws IOException If the dictionary could not be read, or a line is malformed
+     */
+    public static AbbreviationDictionary read(Reader reader) throws IOException {
+        AbbreviationDictionary dictionary = new AbbreviationDictionary();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty() || line.startsWith("#")) continue;
+            String[] fields = line.split("\t");
+            Position position = fields.length == 3 ? Position.fromString(fields[1].trim()) : null;
+            if (position == null) {
+                throw new IOException("Malformed abbreviation on line " + lineNumber + ": " + line);
+            }
+            dictionary.add(fields[0].trim(), position, Arrays.asList(fields[2].trim().split(";")));
+        }
+        return dictionary;
+    }
+
+    /**
+     * Add an abbreviation to the dictionary
+     * @param abbreviation The abbreviation (e.g., "Ave")
+     * @param position Where the abbreviation may appear
+     * @param expansions The expansions of the abbreviation (e.g., "Avenue")
+     */
+    public void add(String abbreviation, Position position, Collection<String> expansions) {
+        List<String> current = entries.computeIfAbsent(abbreviation, k -> new EnumMap<>(Position.class))
+                .computeIfAbsent(position, k -> new ArrayList<>());
+        for (String expansion : expansions) {
+            if (!current.contains(expansion)) current.add(expansion);
+        }
+        matcher = null;
+    }
+
+    /**
+     * Get the expansions for an abbreviation at a position
+     * @param abbreviation The abbreviation
+     * @param position The position
+     * @return The expansions (empty if there are none)
+     */
+    public List<String> getExpansions(String abbreviation, Position position) {
+        Map<Position, List<String>> positions = entries.get(abbreviation);
+        if (positions == null || !positions.containsKey(position)) return Collections.emptyList();
+        return Collections.unmodifiableList(positions.get(position));
+    }
+
+    /**
+     * Get the expansions for an abbreviation at any position
+     * @param abbreviation The abbreviation
+     * @return The expansions in insertion order (empty if there are none)
+     */
+    public Set<String> getExpansions(String abbreviation) {
+        Map<Position, List<String>> positions = entries.get(abbreviation);
+        if (positions == null) return Collections.emptySet();
+        Set<String> expansions = new LinkedHashSet<>();
+        for (List<String> list : positions.values()) {
+            expansions.addAll(list);
+        }
+        return expansions;
+    }
+
+    /**
+     * @return The number of abbreviations in the dictionary
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the compiled matcher for this dictionary, compiling it on first use
+     * @return The matcher for this dictionary
+     */
+    public AbbreviationMatcher getMatcher() {
+        AbbreviationMatcher current = matcher;
+        if (current == null) {
+            synchronized (this) {
+                current = matcher;
+                if (current == null) {
+                    current = compile();
+                    matcher = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Compile the dictionary into a matcher
+     * @return A matcher that finds every abbreviation of this dictionary in one pass over a name
+     */
+    public AbbreviationMatcher compile() {
+        AbbreviationMatcher.Builder builder = new AbbreviationMatcher.Builder();
+        for (Map.Entry<String, Map<Position, List<String>>> entry : entries.entrySet()) {
+            for (Position position : entry.getValue().keySet()) {
+                builder.add(entry.getKey(), position);
+            }
+        }
+        return builder.build();
+    }
+}
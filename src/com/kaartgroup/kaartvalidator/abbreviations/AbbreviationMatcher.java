@@ -0,0 +1,230 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.abbreviations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.kaartgroup.kaartvalidator.abbreviations.AbbreviationDictionary.Position;
+
+/**
+ * Find abbreviations in a name with a single pass over the name.
+ *
+ * All abbreviations (and their forms without periods) are compiled into one character trie.
+ * Matches may only start at the beginning of a word and may not end in the middle of a word,
+ * so every name is scanned once from each word start.
+ * @author Taylor Smock
+ */
+public final class AbbreviationMatcher {
+    /**
+     * An abbreviation found in a name
+     */
+    public static final class Match {
+        private final String abbreviation;
+        private final Position position;
+        private final int start;
+        private final int end;
+
+        Match(String abbreviation, Position position, int start, int end) {
+            this.abbreviation = abbreviation;
+            this.position = position;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return The abbreviation as it is in the dictionary
+         */
+        public String getAbbreviation() {
+            return abbreviation;
+        }
+
+        /**
+         * @return The position the abbreviation was matched as
+         */
+        public Position getPosition() {
+            return position;
+        }
+
+        /**
+         * @return The index of the first character of the abbreviation in the name
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * @return The index after the last character of the abbreviation (including a trailing period) in the name
+         */
+        public int getEnd() {
+            return end;
+        }
+    }
+
+    private static final class Terminal {
+        final String abbreviation;
+        final Position position;
+        final boolean endsWithPeriod;
+
+        Terminal(String abbreviation, Position position, boolean endsWithPeriod) {
+            this.abbreviation = abbreviation;
+            this.position = position;
+            this.endsWithPeriod = endsWithPeriod;
+        }
+    }
+
+    /** Index of the first edge of a node, the edges of node i are [firstEdge[i], firstEdge[i + 1]) */
+    private final int[] firstEdge;
+    /** Edge labels, sorted for each node */
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    /** Abbreviations ending at a node, null if there are none */
+    private final Terminal[][] terminals;
+
+    private AbbreviationMatcher(int[] firstEdge, char[] edgeChars, int[] edgeTargets, Terminal[][] terminals) {
+        this.firstEdge = firstEdge;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.terminals = terminals;
+    }
+
+    /**
+     * Find the first abbreviation in a name. If several abbreviations start at the same place, the longest is used.
+     * @param name The name to look in
+     * @return The match, or null if there is no abbreviation in the name
+     */
+    public Match find(String name) {
+        int length = name.length();
+        for (int start = 0; start < length; start++) {
+            if (start > 0 && isWordCharacter(name.charAt(start - 1))) continue;
+            Match match = null;
+            int node = 0;
+            for (int i = start; i < length && node >= 0; i++) {
+                node = child(node, name.charAt(i));
+                if (node >= 0 && terminals[node] != null) {
+                    Match tMatch = accept(terminals[node], name, start, i + 1);
+                    if (tMatch != null) match = tMatch;
+                }
+            }
+            if (match != null) return match;
+        }
+        return null;
+    }
+
+    private static Match accept(Terminal[] nodeTerminals, String name, int start, int end) {
+        int length = name.length();
+        boolean wordEnd = end == length || !isWordCharacter(name.charAt(end)) || !isWordCharacter(name.charAt(end - 1));
+        if (!wordEnd) return null;
+        boolean trailingPeriod = end < length && name.charAt(end) == '.';
+        for (Terminal terminal : nodeTerminals) {
+            boolean found;
+            if (terminal.position == Position.PREFIX) {
+                found = start == 0;
+            } else if (terminal.position == Position.SUFFIX) {
+                found = end == length || trailingPeriod && end == length - 1;
+            } else {
+                found = true;
+            }
+            if (found) {
+                int matchEnd = trailingPeriod && !terminal.endsWithPeriod ? end + 1 : end;
+                return new Match(terminal.abbreviation, terminal.position, start, matchEnd);
+            }
+        }
+        return null;
+    }
+
+    private int child(int node, char c) {
+        int low = firstEdge[node];
+        int high = firstEdge[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midChar = edgeChars[mid];
+            if (midChar < c) low = mid + 1;
+            else if (midChar > c) high = mid - 1;
+            else return edgeTargets[mid];
+        }
+        return -1;
+    }
+
+    private static boolean isWordCharacter(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /**
+     * Build a matcher from abbreviations
+     */
+    static final class Builder {
+        private final List<Map<Character, Integer>> children = new ArrayList<>();
+        private final List<List<Terminal>> nodeTerminals = new ArrayList<>();
+
+        Builder() {
+            newNode();
+        }
+
+        private int newNode() {
+            children.add(new TreeMap<>());
+            nodeTerminals.add(null);
+            return children.size() - 1;
+        }
+
+        /**
+         * Add an abbreviation. The abbreviation is matched both as is and without any periods.
+         * @param abbreviation The abbreviation
+         * @param position Where the abbreviation may appear
+         */
+        void add(String abbreviation, Position position) {
+            insert(abbreviation, abbreviation, position);
+            String withoutPeriods = abbreviation.replace(".", "");
+            if (!withoutPeriods.isEmpty() && !withoutPeriods.equals(abbreviation)) {
+                insert(withoutPeriods, abbreviation, position);
+            }
+        }
+
+        private void insert(String surface, String abbreviation, Position position) {
+            int node = 0;
+            for (int i = 0; i < surface.length(); i++) {
+                Integer next = children.get(node).get(surface.charAt(i));
+                if (next == null) {
+                    next = newNode();
+                    children.get(node).put(surface.charAt(i), next);
+                }
+                node = next;
+            }
+            List<Terminal> list = nodeTerminals.get(node);
+            if (list == null) {
+                list = new ArrayList<>(1);
+                nodeTerminals.set(node, list);
+            }
+            for (Terminal terminal : list) {
+                if (terminal.abbreviation.equals(abbreviation) && terminal.position == position) return;
+            }
+            list.add(new Terminal(abbreviation, position, surface.endsWith(".")));
+        }
+
+        AbbreviationMatcher build() {
+            int nodes = children.size();
+            int edges = 0;
+            for (Map<Character, Integer> map : children) {
+                edges += map.size();
+            }
+            int[] firstEdge = new int[nodes + 1];
+            char[] edgeChars = new char[edges];
+            int[] edgeTargets = new int[edges];
+            Terminal[][] terminals = new Terminal[nodes][];
+            int edge = 0;
+            for (int node = 0; node < nodes; node++) {
+                firstEdge[node] = edge;
+                for (Map.Entry<Character, Integer> entry : children.get(node).entrySet()) {
+                    edgeChars[edge] = entry.getKey();
+                    edgeTargets[edge] = entry.getValue();
+                    edge++;
+                }
+                List<Terminal> list = nodeTerminals.get(node);
+                if (list != null) terminals[node] = list.toArray(new Terminal[0]);
+            }
+            firstEdge[nodes] = edge;
+            return new AbbreviationMatcher(firstEdge, edgeChars, edgeTargets, terminals);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.cli;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.preferences.JosmBaseDirectories;
+import org.openstreetmap.josm.data.projection.ProjectionRegistry;
+import org.openstreetmap.josm.data.projection.Projections;
+import org.openstreetmap.josm.data.validation.TestError;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.io.Compression;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.io.OsmReader;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.tools.I18n;
+import org.openstreetmap.josm.tools.JosmRuntimeException;
+import org.openstreetmap.josm.tools.PlatformManager;
+import org.openstreetmap.josm.tools.RightAndLefthandTraffic;
+import org.openstreetmap.josm.tools.Territories;
+
+import com.kaartgroup.kaartvalidator.KaartPlugin;
+import com.kaartgroup.kaartvalidator.index.DataSetIndex;
+import com.kaartgroup.kaartvalidator.validation.KaartTest;
+
+/**
+ * Run the Kaart tests on .osm files without the JOSM user interface.
+ * <pre>
+ * java -cp josm-custom.jar:kaartvalidation-cli.jar com.kaartgroup.kaartvalidator.cli.BatchValidator \
+ *     [--output results.csv|results.geojson] [--threads n] [--tile-size degrees [--halo meters]] \
+ *     file.osm [file.osm.bz2 ...]
+ * </pre>
+ * Files are validated in parallel, and the results are written in the order of the files (CSV on standard output
+ * if there is no --output). Files that are too large to load are validated one at a time with --tile-size, which
+ * splits them into tiles in temporary files, and validates the tiles in parallel (see {@link TiledValidator}).
+ * @author Taylor Smock
+ */
+public final class BatchValidator {
+    private static boolean isInitialized;
+
+    private BatchValidator() {
+        // Use main
+    }
+
+    /**
+     * Validate files
+     * @param args The arguments
+     */
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Validate files
+     * @param args The arguments
+     * @return The exit code: 0 if all files were validated, 1 if a file could not be validated, 2 for bad arguments
+     */
+    static int run(String[] args) {
+        String output = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        double tileSize = 0;
+        double halo = TiledValidator.DEFAULT_HALO;
+        List<File> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if ("--output".equals(args[i]) || "-o".equals(args[i])) {
+                    output = args[++i];
+                } else if ("--threads".equals(args[i]) || "-t".equals(args[i])) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if ("--tile-size".equals(args[i])) {
+                    tileSize = Double.parseDouble(args[++i]);
+                } else if ("--halo".equals(args[i])) {
+                    halo = Double.parseDouble(args[++i]);
+                } else if (args[i].startsWith("-")) {
+                    return usage("Unknown option " + args[i]);
+                } else {
+                    files.add(new File(args[i]));
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            return usage("Bad option value");
+        }
+        if (files.isEmpty() || threads < 1) return usage("No files");
+        if (tileSize < 0 || halo < 0) return usage("Bad tile size or halo");
+
+        initialize();
+        int exitCode = 0;
+        int poolSize = tileSize > 0 ? threads : Math.min(threads, files.size());
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        try (ResultWriter writer = ResultWriter.forFileName(output, open(output))) {
+            List<Future<List<ValidationResult>>> futures = new ArrayList<>();
+            if (tileSize > 0) {
+                // The tiles of one file use all of the threads, so only one file is split at a time
+                TiledValidator tiled = new TiledValidator(tileSize, halo, executor);
+                for (File file : files) {
+                    futures.add(validateTiled(tiled, file));
+                }
+            } else {
+                for (File file : files) {
+                    futures.add(executor.submit(() -> validate(file)));
+                }
+            }
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    List<ValidationResult> results = futures.get(i).get();
+                    writer.write(results);
+                    System.err.printf("%s: %d errors%n", files.get(i), results.size());
+                } catch (ExecutionException e) {
+                    System.err.printf("%s could not be validated: %s%n", files.get(i), e.getCause());
+                    exitCode = 1;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Results could not be written: " + e.getMessage());
+            exitCode = 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exitCode = 1;
+        } finally {
+            executor.shutdownNow();
+        }
+        return exitCode;
+    }
+
+    private static int usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: BatchValidator [--output results.csv|results.geojson] [--threads n]"
+                + " [--tile-size degrees [--halo meters]] file.osm...");
+        return 2;
+    }
+
+    private static Future<List<ValidationResult>> validateTiled(TiledValidator tiled, File file)
+            throws InterruptedException {
+        CompletableFuture<List<ValidationResult>> future = new CompletableFuture<>();
+        try {
+            future.complete(tiled.validate(file));
+        } catch (IOException | XMLStreamException | ExecutionException e) {
+            future.completeExceptionally(e instanceof ExecutionException ? e.getCause() : e);
+        }
+        return future;
+    }
+
+    private static Writer open(String output) throws IOException {
+        if (output == null) {
+            return new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        }
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Initialize JOSM without the user interface, like the unit tests do
+     */
+    public static synchronized void initialize() {
+        if (isInitialized) return;
+        System.setProperty("java.awt.headless", "true");
+        Preferences.main().enableSaveOnPut(false);
+        I18n.init();
+        PlatformManager.getPlatform().preStartupHook();
+        Preferences.main().init(false);
+        Config.setPreferencesInstance(Preferences.main());
+        Config.setBaseDirectoriesProvider(JosmBaseDirectories.getInstance());
+        I18n.set(Config.getPref().get("language", "en"));
+        ProjectionRegistry.setProjection(Projections.getProjectionByCode("EPSG:3857")); // Mercator
+        Territories.initialize();
+        RightAndLefthandTraffic.initialize();
+        isInitialized = true;
+    }
+
+    /**
+     * Read and validate a file
+     * @param file The .osm file, it may be compressed
+     * @return The errors of the file
+     * @throws IOException if the file could not be read
+     * @throws IllegalDataException if the file is not valid OSM data
+     */
+    public static List<ValidationResult> validate(File file) throws IOException, IllegalDataException {
+        DataSet dataSet;
+        try (InputStream in = Compression.getUncompressedFileInputStream(file)) {
+            dataSet = OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+        }
+        return validate(file.getPath(), dataSet);
+    }
+
+    /**
+     * Run all of the Kaart tests on a dataset
+     * @param source The name of the dataset, for the results
+     * @param dataSet The dataset
+     * @return The errors of the dataset
+     */
+    public static List<ValidationResult> validate(String source, DataSet dataSet) {
+        // One selection for all tests, so that they share its candidates
+        List<OsmPrimitive> selection = new ArrayList<>(dataSet.allPrimitives());
+        List<ValidationResult> results = new ArrayList<>();
+        for (Class<? extends KaartTest> testClass : KaartPlugin.getTests()) {
+            KaartTest test;
+            try {
+                test = testClass.getConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new JosmRuntimeException(e);
+            }
+            test.startTest(NullProgressMonitor.INSTANCE);
+            test.visit(selection);
+            test.endTest();
+            for (TestError error : test.getErrors()) {
+                results.add(ValidationResult.of(source, testClass, error));
+            }
+        }
+        // The dataset is not validated again, and tiles are validated one after another
+        DataSetIndex.release(dataSet);
+        return results;
+    }
+}
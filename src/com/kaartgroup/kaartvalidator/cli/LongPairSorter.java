@@ -0,0 +1,259 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sort pairs of longs by their first long, with a fixed amount of memory. The pairs are sorted in chunks that are
+ * written to files, and the files are merged when the pairs are read back.
+ * @author Taylor Smock
+ */
+final class LongPairSorter implements Closeable {
+    /** The number of files that are merged at once, more files are merged into larger files first */
+    private static final int MAX_MERGED_RUNS = 128;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final String name;
+    private final int chunkSize;
+    private long[] keys;
+    private long[] values;
+    private int size;
+    /** The sorted chunks that were written */
+    private final List<Path> runs = new ArrayList<>();
+    private int runCount;
+    private boolean isRead;
+
+    /**
+     * Create a new sorter
+     * @param directory The directory for the sorted chunks
+     * @param name The name of the sorted chunk files
+     * @param chunkSize The number of pairs that are sorted in memory, each pair takes 16 bytes
+     */
+    LongPairSorter(Path directory, String name, int chunkSize) {
+        this.directory = directory;
+        this.name = name;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Add a pair
+     * @param key The key the pairs are sorted by
+     * @param value The value
+     * @throws IOException if a sorted chunk could not be written
+     */
+    void add(long key, long value) throws IOException {
+        if (isRead) throw new IllegalStateException("The pairs were already read");
+        if (keys == null) {
+            keys = new long[chunkSize];
+            values = new long[chunkSize];
+        } else if (size == keys.length) {
+            writeChunk();
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+    }
+
+    private Path nextRun() {
+        return directory.resolve(name + "-" + runCount++ + ".sort");
+    }
+
+    private void writeChunk() throws IOException {
+        sort(keys, values, size);
+        Path run = nextRun();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run),
+                BUFFER_SIZE))) {
+            for (int i = 0; i < size; i++) {
+                out.writeLong(keys[i]);
+                out.writeLong(values[i]);
+            }
+        }
+        runs.add(run);
+        size = 0;
+    }
+
+    /**
+     * Read the pairs in the order of their keys. No more pairs can be added.
+     * @return The pairs, pairs with the same key are in no particular order
+     * @throws IOException if the sorted chunks could not be written or read
+     */
+    Reader read() throws IOException {
+        if (isRead) throw new IllegalStateException("The pairs were already read");
+        isRead = true;
+        if (size > 0) writeChunk();
+        // The memory of the chunk is not needed anymore
+        keys = null;
+        values = null;
+        while (runs.size() > MAX_MERGED_RUNS) {
+            List<Path> merged = new ArrayList<>(runs.subList(0, MAX_MERGED_RUNS));
+            runs.subList(0, MAX_MERGED_RUNS).clear();
+            Path run = nextRun();
+            // The reader deletes the merged files
+            try (Reader reader = new Reader(merged);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run),
+                            BUFFER_SIZE))) {
+                while (reader.next()) {
+                    out.writeLong(reader.key());
+                    out.writeLong(reader.value());
+                }
+            }
+            runs.add(run);
+        }
+        List<Path> read = new ArrayList<>(runs);
+        runs.clear();
+        return new Reader(read);
+    }
+
+    @Override
+    public void close() throws IOException {
+        keys = null;
+        values = null;
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+    }
+
+    /**
+     * Sort the pairs by key (heap sort, so that sorted and reversed chunks are not slower)
+     */
+    static void sort(long[] keys, long[] values, int size) {
+        boolean sorted = true;
+        for (int i = 1; i < size && sorted; i++) {
+            sorted = keys[i - 1] <= keys[i];
+        }
+        if (sorted) return;
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(keys, values, i, size);
+        }
+        for (int end = size - 1; end > 0; end--) {
+            swap(keys, values, 0, end);
+            siftDown(keys, values, 0, end);
+        }
+    }
+
+    private static void siftDown(long[] keys, long[] values, int index, int size) {
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) return;
+            if (child + 1 < size && keys[child + 1] > keys[child]) child++;
+            if (keys[index] >= keys[child]) return;
+            swap(keys, values, index, child);
+            index = child;
+        }
+    }
+
+    private static void swap(long[] keys, long[] values, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    /**
+     * The sorted pairs, read one at a time. The files are deleted when the reader is closed.
+     */
+    static final class Reader implements Closeable {
+        private final List<Path> files;
+        private final PriorityQueue<Run> queue = new PriorityQueue<>(Comparator.comparingLong(run -> run.key));
+        private long key;
+        private long value;
+
+        private Reader(List<Path> files) throws IOException {
+            this.files = files;
+            try {
+                for (Path file : files) {
+                    Run run = new Run(file);
+                    if (run.next()) {
+                        queue.add(run);
+                    } else {
+                        run.in.close();
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * Move to the next pair
+         * @return false if there are no more pairs
+         * @throws IOException if a file could not be read
+         */
+        boolean next() throws IOException {
+            Run run = queue.poll();
+            if (run == null) return false;
+            key = run.key;
+            value = run.value;
+            if (run.next()) {
+                queue.add(run);
+            } else {
+                run.in.close();
+            }
+            return true;
+        }
+
+        /**
+         * @return The key of the current pair
+         */
+        long key() {
+            return key;
+        }
+
+        /**
+         * @return The value of the current pair
+         */
+        long value() {
+            return value;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Run run : queue) {
+                run.in.close();
+            }
+            queue.clear();
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * A sorted chunk that is being read
+     */
+    private static final class Run {
+        final DataInputStream in;
+        long remaining;
+        long key;
+        long value;
+
+        Run(Path file) throws IOException {
+            remaining = Files.size(file) / 16;
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        }
+
+        boolean next() throws IOException {
+            if (remaining == 0) return false;
+            remaining--;
+            key = in.readLong();
+            value = in.readLong();
+            return true;
+        }
+    }
+}
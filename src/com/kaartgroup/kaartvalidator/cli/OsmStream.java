@@ -0,0 +1,153 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.cli;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.openstreetmap.josm.io.Compression;
+
+/**
+ * Read the nodes, ways and relations of an .osm file one at a time, without keeping them.
+ * The same {@link Element} is reused for every element, so it must be copied if it is needed later.
+ * @author Taylor Smock
+ */
+final class OsmStream implements Closeable {
+    enum Type { NODE, WAY, RELATION }
+
+    /**
+     * A node, way or relation
+     */
+    static final class Element {
+        Type type;
+        long id;
+        double lat;
+        double lon;
+        /** The node ids of a way, or the member ids of a relation */
+        long[] refs = new long[16];
+        int refCount;
+        final List<Type> memberTypes = new ArrayList<>();
+        final List<String> memberRoles = new ArrayList<>();
+        final List<String> keys = new ArrayList<>();
+        final List<String> values = new ArrayList<>();
+
+        void clear(Type type) {
+            this.type = type;
+            lat = Double.NaN;
+            lon = Double.NaN;
+            refCount = 0;
+            memberTypes.clear();
+            memberRoles.clear();
+            keys.clear();
+            values.clear();
+        }
+
+        void addRef(long ref) {
+            if (refCount == refs.length) refs = Arrays.copyOf(refs, refCount * 2);
+            refs[refCount++] = ref;
+        }
+
+        /**
+         * Get the value of a tag
+         * @param key The key
+         * @return The value, or null if the element does not have the key
+         */
+        String get(String key) {
+            int index = keys.indexOf(key);
+            return index < 0 ? null : values.get(index);
+        }
+    }
+
+    private final InputStream in;
+    private final XMLStreamReader reader;
+    private final Element element = new Element();
+
+    /**
+     * Open a file
+     * @param file The .osm file, it may be compressed
+     * @throws IOException if the file could not be opened
+     * @throws XMLStreamException if the file is not XML
+     */
+    OsmStream(File file) throws IOException, XMLStreamException {
+        in = Compression.getUncompressedFileInputStream(file);
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        reader = factory.createXMLStreamReader(in);
+    }
+
+    /**
+     * Read the next element
+     * @return The element, or null at the end of the file
+     * @throws XMLStreamException if the file is not valid XML
+     */
+    Element next() throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() != XMLStreamConstants.START_ELEMENT) continue;
+            String name = reader.getLocalName();
+            if ("node".equals(name)) {
+                element.clear(Type.NODE);
+                element.lat = parseDouble(reader.getAttributeValue(null, "lat"));
+                element.lon = parseDouble(reader.getAttributeValue(null, "lon"));
+            } else if ("way".equals(name)) {
+                element.clear(Type.WAY);
+            } else if ("relation".equals(name)) {
+                element.clear(Type.RELATION);
+            } else {
+                continue;
+            }
+            element.id = Long.parseLong(reader.getAttributeValue(null, "id"));
+            readChildren();
+            return element;
+        }
+        return null;
+    }
+
+    private void readChildren() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String name = reader.getLocalName();
+                if ("tag".equals(name)) {
+                    element.keys.add(reader.getAttributeValue(null, "k"));
+                    element.values.add(reader.getAttributeValue(null, "v"));
+                } else if ("nd".equals(name)) {
+                    element.addRef(Long.parseLong(reader.getAttributeValue(null, "ref")));
+                } else if ("member".equals(name)) {
+                    element.addRef(Long.parseLong(reader.getAttributeValue(null, "ref")));
+                    element.memberTypes.add(Type.valueOf(reader.getAttributeValue(null, "type").toUpperCase(Locale.ROOT)));
+                    String role = reader.getAttributeValue(null, "role");
+                    element.memberRoles.add(role == null ? "" : role);
+                }
+            }
+        }
+    }
+
+    private static double parseDouble(String value) {
+        return value == null ? Double.NaN : Double.parseDouble(value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Write validation results as CSV or as a GeoJSON feature collection
+ * @author Taylor Smock
+ */
+public abstract class ResultWriter implements Closeable {
+    protected final Writer writer;
+
+    protected ResultWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Get a writer for a file name
+     * @param fileName The name of the output file, .geojson and .json files get GeoJSON, others CSV
+     * @param writer The writer to write to
+     * @return The result writer
+     * @throws IOException if the header could not be written
+     */
+    public static ResultWriter forFileName(String fileName, Writer writer) throws IOException {
+        String lower = fileName == null ? "" : fileName.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".geojson") || lower.endsWith(".json")) {
+            return new GeoJson(writer);
+        }
+        return new Csv(writer);
+    }
+
+    /**
+     * Write results
+     * @param results The results
+     * @throws IOException if the results could not be written
+     */
+    public abstract void write(List<ValidationResult> results) throws IOException;
+
+    /**
+     * CSV with one row per error, and the primitives separated by spaces
+     */
+    static final class Csv extends ResultWriter {
+        Csv(Writer writer) throws IOException {
+            super(writer);
+            writer.write("file,test,code,code_name,severity,message,primitives\n");
+        }
+
+        @Override
+        public void write(List<ValidationResult> results) throws IOException {
+            for (ValidationResult result : results) {
+                writer.write(escape(result.getSource()));
+                writer.write(',');
+                writer.write(result.getTest());
+                writer.write(',');
+                writer.write(Integer.toString(result.getCode()));
+                writer.write(',');
+                writer.write(result.getCodeName());
+                writer.write(',');
+                writer.write(result.getSeverity());
+                writer.write(',');
+                writer.write(escape(result.getMessage()));
+                writer.write(',');
+                writer.write(String.join(" ", result.getPrimitives()));
+                writer.write('\n');
+            }
+        }
+
+        private static String escape(String value) {
+            if (value == null) return "";
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    /**
+     * A GeoJSON feature collection, with a GeometryCollection of the nodes and ways of each error
+     */
+    static final class GeoJson extends ResultWriter {
+        private boolean first = true;
+
+        GeoJson(Writer writer) throws IOException {
+            super(writer);
+            writer.write("{\"type\":\"FeatureCollection\",\"features\":[");
+        }
+
+        @Override
+        public void write(List<ValidationResult> results) throws IOException {
+            for (ValidationResult result : results) {
+                writer.write(first ? "\n" : ",\n");
+                first = false;
+                writer.write("{\"type\":\"Feature\",\"geometry\":{\"type\":\"GeometryCollection\",\"geometries\":[");
+                boolean firstGeometry = true;
+                for (double[] coordinates : result.getGeometries()) {
+                    if (coordinates.length == 0) continue;
+                    if (!firstGeometry) writer.write(',');
+                    firstGeometry = false;
+                    writeGeometry(coordinates);
+                }
+                writer.write("]},\"properties\":{\"file\":");
+                writer.write(quote(result.getSource()));
+                writer.write(",\"test\":");
+                writer.write(quote(result.getTest()));
+                writer.write(",\"code\":");
+                writer.write(Integer.toString(result.getCode()));
+                writer.write(",\"code_name\":");
+                writer.write(quote(result.getCodeName()));
+                writer.write(",\"severity\":");
+                writer.write(quote(result.getSeverity()));
+                writer.write(",\"message\":");
+                writer.write(quote(result.getMessage()));
+                writer.write(",\"primitives\":[");
+                for (int i = 0; i < result.getPrimitives().size(); i++) {
+                    if (i > 0) writer.write(',');
+                    writer.write(quote(result.getPrimitives().get(i)));
+                }
+                writer.write("]}}");
+            }
+        }
+
+        private void writeGeometry(double[] coordinates) throws IOException {
+            if (coordinates.length == 2) {
+                writer.write("{\"type\":\"Point\",\"coordinates\":");
+                writePosition(coordinates, 0);
+            } else {
+                writer.write("{\"type\":\"LineString\",\"coordinates\":[");
+                for (int i = 0; i < coordinates.length; i += 2) {
+                    if (i > 0) writer.write(',');
+                    writePosition(coordinates, i);
+                }
+                writer.write(']');
+            }
+            writer.write('}');
+        }
+
+        private void writePosition(double[] coordinates, int i) throws IOException {
+            writer.write('[');
+            writer.write(Double.toString(coordinates[i]));
+            writer.write(',');
+            writer.write(Double.toString(coordinates[i + 1]));
+            writer.write(']');
+        }
+
+        private static String quote(String value) {
+            if (value == null) return "null";
+            StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    builder.append('\\').append(c);
+                } else if (c < 0x20) {
+                    builder.append(String.format("\\u%04x", (int) c));
+                } else {
+                    builder.append(c);
+                }
+            }
+            return builder.append('"').toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.write("\n]}\n");
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,573 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.cli;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+
+import com.kaartgroup.kaartvalidator.utils.LongIntMap;
+
+/**
+ * Validate an .osm file that is too large for one dataset, by splitting its highways into square tiles.
+ * <p>
+ * The file is streamed twice. The first time, the node locations and the node refs of the highways and turn
+ * restrictions are sorted by node id in temporary files, and joined into the location of each ref, in the order of the
+ * file. The second time, each highway and turn restriction is read with the locations of its refs, and written to the
+ * tiles it is near. Each tile also gets everything within a halo around it, so that the checks can see past the tile
+ * edge, and the halo is the download area of the tile dataset. The tiles are validated in parallel, and an error is
+ * only kept by the tile that its first node is in, so errors in the halo of several tiles are only reported once.
+ * <p>
+ * Only one tile dataset per thread is in memory. The rest of the memory is the sort buffers (16 bytes for each of
+ * {@value #SORT_SIZE} pairs, for up to two sorts at once), the buffers of at most {@value #MAX_BUFFERED_TILES} tiles
+ * while the file is split, and the bounds of the ways of turn restrictions, about 50 bytes per way. The temporary
+ * files take about 16 bytes per node of the file and 32 bytes per ref, besides the tiles.
+ * @author Taylor Smock
+ */
+public final class TiledValidator {
+    /** The default halo, in meters. The longest checked ways are 30 meters, and this leaves room for a junction. */
+    public static final double DEFAULT_HALO = 100;
+    private static final double METERS_PER_DEGREE = 111_320;
+    /** Coordinates are stored as integers of 1e-7 degrees, like the OSM database */
+    private static final double SCALE = 1e7;
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+    /** The number of bytes buffered for a tile before they are appended to its file */
+    private static final int SPILL_SIZE = 32 * 1024;
+    /** The number of tiles that may have bytes buffered, before all of them are appended to their files */
+    private static final int MAX_BUFFERED_TILES = 256;
+    /** The number of pairs that are sorted in memory */
+    private static final int SORT_SIZE = 1 << 20;
+    private static final byte WAY = 0;
+    private static final byte RELATION = 1;
+
+    private final double tileSize;
+    private final double halo;
+    private final ExecutorService executor;
+
+    /**
+     * Create a new tiled validator
+     * @param tileSize The size of the tiles, in degrees
+     * @param halo The distance around each tile that is also loaded, in meters
+     * @param executor The executor the tiles are validated on
+     */
+    public TiledValidator(double tileSize, double halo, ExecutorService executor) {
+        if (!(tileSize > 0) || !(halo >= 0)) throw new IllegalArgumentException("Bad tile size or halo");
+        this.tileSize = tileSize;
+        this.halo = halo;
+        this.executor = executor;
+    }
+
+    /**
+     * Validate a file
+     * @param file The .osm file, it may be compressed
+     * @return The errors of the file, in tile order
+     * @throws IOException if the file could not be read, or the tiles could not be written
+     * @throws XMLStreamException if the file is not valid XML
+     * @throws ExecutionException if a tile could not be validated
+     * @throws InterruptedException if the validation was interrupted
+     */
+    public List<ValidationResult> validate(File file)
+            throws IOException, XMLStreamException, ExecutionException, InterruptedException {
+        Path directory = Files.createTempDirectory("kaartvalidator-tiles");
+        try {
+            Map<Long, Tile> tiles;
+            try (Locations locations = readLocations(file, directory)) {
+                tiles = split(file, locations, directory);
+            }
+            return validateTiles(file.getPath(), tiles);
+        } finally {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * The locations of the refs of highways and turn restrictions
+     */
+    private static final class Locations implements Closeable {
+        /**
+         * The location of each ref, with the index of the highway or turn restriction in the file and the index of the
+         * ref as key. Refs to nodes that are not in the file do not have a location.
+         */
+        LongPairSorter refs;
+        /** The ways of turn restrictions, with their bounds once they are written */
+        final LongIntMap restrictionWays = new LongIntMap(16);
+        int[] restrictionWayBounds = new int[64];
+
+        void addRestrictionWay(long id) {
+            if (restrictionWays.get(id) >= 0) return;
+            int index = restrictionWays.size();
+            restrictionWays.put(id, index);
+            if (index * 4 == restrictionWayBounds.length) {
+                restrictionWayBounds = Arrays.copyOf(restrictionWayBounds, index * 8);
+            }
+            // Ways that are not written (e.g., they are not in the file) do not have bounds
+            Arrays.fill(restrictionWayBounds, index * 4, index * 4 + 4, UNKNOWN);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (refs != null) refs.close();
+        }
+    }
+
+    private static Locations readLocations(File file, Path directory) throws IOException, XMLStreamException {
+        Locations locations = new Locations();
+        try (LongPairSorter nodes = new LongPairSorter(directory, "nodes", SORT_SIZE);
+                LongPairSorter refs = new LongPairSorter(directory, "refs", SORT_SIZE)) {
+            try (OsmStream stream = new OsmStream(file)) {
+                long index = 0;
+                for (OsmStream.Element element = stream.next(); element != null; element = stream.next()) {
+                    if (element.type == OsmStream.Type.NODE) {
+                        if (Double.isNaN(element.lat) || Double.isNaN(element.lon)) continue;
+                        nodes.add(element.id, location((int) Math.round(element.lat * SCALE),
+                                (int) Math.round(element.lon * SCALE)));
+                    } else if (isSplit(element)) {
+                        for (int i = 0; i < element.refCount; i++) {
+                            if (element.type == OsmStream.Type.WAY
+                                    || element.memberTypes.get(i) == OsmStream.Type.NODE) {
+                                refs.add(element.refs[i], index << 32 | i);
+                            } else if (element.memberTypes.get(i) == OsmStream.Type.WAY) {
+                                locations.addRestrictionWay(element.refs[i]);
+                            }
+                        }
+                        index++;
+                    }
+                }
+            }
+            locations.refs = new LongPairSorter(directory, "locations", SORT_SIZE);
+            try (LongPairSorter.Reader sortedNodes = nodes.read();
+                    LongPairSorter.Reader sortedRefs = refs.read()) {
+                boolean hasNode = sortedNodes.next();
+                while (sortedRefs.next()) {
+                    while (hasNode && sortedNodes.key() < sortedRefs.key()) hasNode = sortedNodes.next();
+                    if (hasNode && sortedNodes.key() == sortedRefs.key()) {
+                        locations.refs.add(sortedRefs.value(), sortedNodes.value());
+                    }
+                }
+            }
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            locations.close();
+            throw e;
+        }
+        return locations;
+    }
+
+    private static long location(int lat, int lon) {
+        return (long) lat << 32 | (lon & 0xFFFF_FFFFL);
+    }
+
+    /**
+     * Check if an element is written to the tiles
+     */
+    private static boolean isSplit(OsmStream.Element element) {
+        return element.type == OsmStream.Type.WAY && element.get("highway") != null
+                || element.type == OsmStream.Type.RELATION && isRestriction(element);
+    }
+
+    private static boolean isRestriction(OsmStream.Element element) {
+        return "restriction".equals(element.get("type"));
+    }
+
+    /**
+     * The highways and turn restrictions near a tile, buffered and then appended to a file
+     */
+    private static final class Tile {
+        final long key;
+        final Path file;
+        /** The bytes that are not in the file yet, null if there are none */
+        private ByteArrayOutputStream buffer;
+        private DataOutputStream out;
+
+        Tile(long key, Path file) {
+            this.key = key;
+            this.file = file;
+        }
+
+        DataOutputStream out() {
+            if (out == null) {
+                buffer = new ByteArrayOutputStream();
+                out = new DataOutputStream(buffer);
+            }
+            return out;
+        }
+
+        boolean isBuffered() {
+            return buffer != null;
+        }
+
+        void spill(boolean force) throws IOException {
+            if (buffer == null || (!force && buffer.size() < SPILL_SIZE)) return;
+            try (OutputStream fileOut = Files.newOutputStream(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND)) {
+                buffer.writeTo(fileOut);
+            }
+            // The buffer has grown to the spill size, keeping it for every tile would keep that much per tile
+            buffer = null;
+            out = null;
+        }
+    }
+
+    /**
+     * Spill a tile that was written to if its buffer is full, and spill every tile if too many of them are buffered
+     */
+    private static void spill(Tile tile, Set<Tile> buffered) throws IOException {
+        tile.spill(false);
+        if (!tile.isBuffered()) {
+            buffered.remove(tile);
+            return;
+        }
+        buffered.add(tile);
+        if (buffered.size() > MAX_BUFFERED_TILES) {
+            for (Tile other : buffered) {
+                other.spill(true);
+            }
+            buffered.clear();
+        }
+    }
+
+    private Map<Long, Tile> split(File file, Locations locations, Path directory)
+            throws IOException, XMLStreamException {
+        Map<Long, Tile> tiles = new HashMap<>();
+        int[] bounds = new int[4];
+        List<Tile> near = new ArrayList<>();
+        Set<Tile> buffered = new HashSet<>();
+        int[] lats = new int[16];
+        int[] lons = new int[16];
+        try (OsmStream stream = new OsmStream(file); LongPairSorter.Reader refs = locations.refs.read()) {
+            boolean hasRef = refs.next();
+            long index = 0;
+            for (OsmStream.Element element = stream.next(); element != null; element = stream.next()) {
+                if (!isSplit(element)) continue;
+                if (lats.length < element.refCount) {
+                    lats = new int[element.refCount];
+                    lons = new int[element.refCount];
+                }
+                Arrays.fill(lats, 0, element.refCount, UNKNOWN);
+                Arrays.fill(lons, 0, element.refCount, UNKNOWN);
+                // The locations are in the same order as the elements
+                while (hasRef && refs.key() >> 32 == index) {
+                    int ref = (int) refs.key();
+                    lats[ref] = (int) (refs.value() >> 32);
+                    lons[ref] = (int) refs.value();
+                    hasRef = refs.next();
+                }
+                index++;
+                Arrays.fill(bounds, UNKNOWN);
+                if (element.type == OsmStream.Type.WAY) {
+                    for (int i = 0; i < element.refCount; i++) {
+                        extend(bounds, lats[i], lons[i]);
+                    }
+                    // A way without any locations is not in any tile
+                    if (bounds[0] == UNKNOWN) continue;
+                    int restrictionWay = locations.restrictionWays.get(element.id);
+                    if (restrictionWay >= 0) {
+                        System.arraycopy(bounds, 0, locations.restrictionWayBounds, restrictionWay * 4, 4);
+                    }
+                    findTiles(bounds, tiles, directory, near);
+                    for (Tile tile : near) {
+                        writeWay(tile.out(), element, lats, lons);
+                        spill(tile, buffered);
+                    }
+                } else {
+                    for (int i = 0; i < element.refCount; i++) {
+                        if (element.memberTypes.get(i) == OsmStream.Type.NODE) {
+                            extend(bounds, lats[i], lons[i]);
+                        } else if (element.memberTypes.get(i) == OsmStream.Type.WAY) {
+                            int way = locations.restrictionWays.get(element.refs[i]) * 4;
+                            extend(bounds, locations.restrictionWayBounds[way],
+                                    locations.restrictionWayBounds[way + 1]);
+                            extend(bounds, locations.restrictionWayBounds[way + 2],
+                                    locations.restrictionWayBounds[way + 3]);
+                        }
+                    }
+                    if (bounds[0] == UNKNOWN) continue;
+                    // The tile with the via node gets all of the member ways, other tiles get an incomplete relation
+                    findTiles(bounds, tiles, directory, near);
+                    for (Tile tile : near) {
+                        writeRelation(tile.out(), element, lats, lons);
+                        spill(tile, buffered);
+                    }
+                }
+            }
+        }
+        for (Tile tile : tiles.values()) {
+            tile.spill(true);
+        }
+        return tiles;
+    }
+
+    /**
+     * Extend min lat, min lon, max lat, max lon bounds
+     */
+    private static void extend(int[] bounds, int lat, int lon) {
+        if (lat == UNKNOWN || lon == UNKNOWN) return;
+        if (bounds[0] == UNKNOWN) {
+            bounds[0] = lat;
+            bounds[1] = lon;
+            bounds[2] = lat;
+            bounds[3] = lon;
+        } else {
+            bounds[0] = Math.min(bounds[0], lat);
+            bounds[1] = Math.min(bounds[1], lon);
+            bounds[2] = Math.max(bounds[2], lat);
+            bounds[3] = Math.max(bounds[3], lon);
+        }
+    }
+
+    /**
+     * Find the tiles whose halo touches some bounds
+     */
+    private void findTiles(int[] bounds, Map<Long, Tile> tiles, Path directory, List<Tile> near) {
+        near.clear();
+        double maxAbsLat = Math.max(Math.abs(bounds[0]), Math.abs(bounds[2])) / SCALE;
+        double haloLat = halo / METERS_PER_DEGREE;
+        double haloLon = halo / (METERS_PER_DEGREE * Math.max(0.01, Math.cos(Math.toRadians(maxAbsLat))));
+        long minRow = Math.max(0, row(bounds[0] / SCALE - haloLat));
+        long maxRow = row(bounds[2] / SCALE + haloLat);
+        long minColumn = Math.max(0, column(bounds[1] / SCALE - haloLon));
+        long maxColumn = column(bounds[3] / SCALE + haloLon);
+        for (long row = minRow; row <= maxRow; row++) {
+            for (long column = minColumn; column <= maxColumn; column++) {
+                long key = key(row, column);
+                near.add(tiles.computeIfAbsent(key, k -> new Tile(k, directory.resolve(k + ".tile"))));
+            }
+        }
+    }
+
+    private long row(double lat) {
+        return (long) Math.floor((lat + 90) / tileSize);
+    }
+
+    private long column(double lon) {
+        return (long) Math.floor((lon + 180) / tileSize);
+    }
+
+    private static long key(long row, long column) {
+        return (row << 32) | column;
+    }
+
+    private static void writeTags(DataOutputStream out, OsmStream.Element element) throws IOException {
+        out.writeInt(element.keys.size());
+        for (int i = 0; i < element.keys.size(); i++) {
+            out.writeUTF(element.keys.get(i));
+            out.writeUTF(element.values.get(i));
+        }
+    }
+
+    private static void writeWay(DataOutputStream out, OsmStream.Element element, int[] lats, int[] lons)
+            throws IOException {
+        out.writeByte(WAY);
+        out.writeLong(element.id);
+        writeTags(out, element);
+        out.writeInt(element.refCount);
+        for (int i = 0; i < element.refCount; i++) {
+            out.writeLong(element.refs[i]);
+            out.writeInt(lats[i]);
+            out.writeInt(lons[i]);
+        }
+    }
+
+    private static void writeRelation(DataOutputStream out, OsmStream.Element element, int[] lats, int[] lons)
+            throws IOException {
+        out.writeByte(RELATION);
+        out.writeLong(element.id);
+        writeTags(out, element);
+        out.writeInt(element.refCount);
+        for (int i = 0; i < element.refCount; i++) {
+            OsmStream.Type type = element.memberTypes.get(i);
+            out.writeByte(type.ordinal());
+            out.writeLong(element.refs[i]);
+            out.writeUTF(element.memberRoles.get(i));
+            if (type == OsmStream.Type.NODE) {
+                out.writeInt(lats[i]);
+                out.writeInt(lons[i]);
+            }
+        }
+    }
+
+    private List<ValidationResult> validateTiles(String source, Map<Long, Tile> tiles)
+            throws ExecutionException, InterruptedException {
+        Map<Long, Future<List<ValidationResult>>> futures = new TreeMap<>();
+        for (Tile tile : tiles.values()) {
+            futures.put(tile.key, executor.submit(() -> validateTile(source, tile)));
+        }
+        List<ValidationResult> results = new ArrayList<>();
+        // Errors without any nodes (e.g., on a relation) cannot be placed in a tile
+        Set<String> unplaced = new HashSet<>();
+        for (Future<List<ValidationResult>> future : futures.values()) {
+            for (ValidationResult result : future.get()) {
+                String key = result.getTest() + result.getCode() + result.getPrimitives();
+                if (anchor(result) != null || unplaced.add(key)) {
+                    results.add(result);
+                }
+            }
+        }
+        return results;
+    }
+
+    private List<ValidationResult> validateTile(String source, Tile tile) throws IOException {
+        DataSet dataSet = readTile(tile);
+        List<ValidationResult> results = new ArrayList<>();
+        for (ValidationResult result : BatchValidator.validate(source, dataSet)) {
+            double[] anchor = anchor(result);
+            if (anchor == null || key(row(anchor[1]), column(anchor[0])) == tile.key) {
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Get the location that decides which tile an error is in
+     * @return The lon/lat of the first node of the error, or null if it does not have any nodes
+     */
+    private static double[] anchor(ValidationResult result) {
+        for (double[] geometry : result.getGeometries()) {
+            if (geometry.length >= 2) return geometry;
+        }
+        return null;
+    }
+
+    private DataSet readTile(Tile tile) throws IOException {
+        Map<Long, Node> nodes = new LinkedHashMap<>();
+        Map<Long, Way> ways = new LinkedHashMap<>();
+        Map<Long, Relation> memberRelations = new HashMap<>();
+        List<Relation> relations = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(tile.file)))) {
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (type == WAY) {
+                    readWay(in, nodes, ways);
+                } else {
+                    relations.add(readRelation(in, nodes, ways, memberRelations));
+                }
+            }
+        }
+        DataSet dataSet = new DataSet();
+        // Ways were written before relations, so incomplete members are only added by relations
+        nodes.values().forEach(dataSet::addPrimitive);
+        ways.values().forEach(dataSet::addPrimitive);
+        memberRelations.values().forEach(dataSet::addPrimitive);
+        relations.forEach(dataSet::addPrimitive);
+        long row = tile.key >> 32;
+        long column = tile.key & 0xFFFF_FFFFL;
+        double minLat = row * tileSize - 90;
+        double minLon = column * tileSize - 180;
+        double maxLat = minLat + tileSize;
+        double haloLat = halo / METERS_PER_DEGREE;
+        double haloLon = halo / (METERS_PER_DEGREE
+                * Math.max(0.01, Math.cos(Math.toRadians(Math.max(Math.abs(minLat), Math.abs(maxLat))))));
+        // Ways that leave the halo are outside the download area, so the checks do not look past them
+        dataSet.addDataSource(new DataSource(new Bounds(Math.max(-90, minLat - haloLat), minLon - haloLon,
+                Math.min(90, maxLat + haloLat), minLon + tileSize + haloLon), "tile " + row + "/" + column));
+        return dataSet;
+    }
+
+    private static Map<String, String> readTags(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, String> tags = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            tags.put(in.readUTF(), in.readUTF());
+        }
+        return tags;
+    }
+
+    private static Node getNode(Map<Long, Node> nodes, long id, int lat, int lon) {
+        Node node = nodes.get(id);
+        if (node == null) {
+            if (id <= 0) {
+                node = new Node();
+            } else if (lat == UNKNOWN || lon == UNKNOWN) {
+                node = new Node(id);
+            } else {
+                node = new Node(id, 1);
+            }
+            if (lat != UNKNOWN && lon != UNKNOWN) node.setCoor(new LatLon(lat / SCALE, lon / SCALE));
+            nodes.put(id, node);
+        }
+        return node;
+    }
+
+    private static void readWay(DataInputStream in, Map<Long, Node> nodes, Map<Long, Way> ways) throws IOException {
+        long id = in.readLong();
+        Map<String, String> tags = readTags(in);
+        int count = in.readInt();
+        List<Node> wayNodes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            wayNodes.add(getNode(nodes, in.readLong(), in.readInt(), in.readInt()));
+        }
+        Way way = id > 0 ? new Way(id, 1) : new Way();
+        way.setNodes(wayNodes);
+        way.setKeys(tags);
+        ways.put(id, way);
+    }
+
+    private static Relation readRelation(DataInputStream in, Map<Long, Node> nodes, Map<Long, Way> ways,
+            Map<Long, Relation> memberRelations) throws IOException {
+        long id = in.readLong();
+        Map<String, String> tags = readTags(in);
+        int count = in.readInt();
+        Relation relation = id > 0 ? new Relation(id, 1) : new Relation();
+        relation.setKeys(tags);
+        for (int i = 0; i < count; i++) {
+            OsmStream.Type type = OsmStream.Type.values()[in.readByte()];
+            long ref = in.readLong();
+            String role = in.readUTF();
+            OsmPrimitive member;
+            if (type == OsmStream.Type.NODE) {
+                member = getNode(nodes, ref, in.readInt(), in.readInt());
+            } else if (type == OsmStream.Type.WAY) {
+                member = ways.get(ref);
+                // Members that are not near the tile are incomplete
+                if (member == null && ref > 0) member = ways.computeIfAbsent(ref, Way::new);
+            } else {
+                // Relations of relations are not used by the tests
+                member = ref > 0 ? memberRelations.computeIfAbsent(ref, Relation::new) : null;
+            }
+            // New primitives that are not in the tile cannot be referred to
+            if (member != null) relation.addMember(new RelationMember(role, member));
+        }
+        return relation;
+    }
+}
@@ -0,0 +1,164 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.cli;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.validation.Test;
+import org.openstreetmap.josm.data.validation.TestError;
+
+/**
+ * An error found by the batch validator, copied out of the dataset so that the dataset can be dropped
+ * @author Taylor Smock
+ */
+public final class ValidationResult {
+    /** The names of the public int constants of each test class, by value */
+    private static final Map<Class<?>, Map<Integer, String>> CODE_NAMES = new ConcurrentHashMap<>();
+
+    private final String source;
+    private final String test;
+    private final int code;
+    private final String codeName;
+    private final String severity;
+    private final String message;
+    private final List<String> primitives;
+    /** The lon/lat coordinates of each primitive, one pair for a node and one pair per node for a way */
+    private final List<double[]> geometries;
+
+    private ValidationResult(String source, String test, int code, String codeName, String severity, String message,
+            List<String> primitives, List<double[]> geometries) {
+        this.source = source;
+        this.test = test;
+        this.code = code;
+        this.codeName = codeName;
+        this.severity = severity;
+        this.message = message;
+        this.primitives = Collections.unmodifiableList(primitives);
+        this.geometries = Collections.unmodifiableList(geometries);
+    }
+
+    /**
+     * Copy an error
+     * @param source The file the error was found in
+     * @param testClass The class of the test that found the error
+     * @param error The error
+     * @return The result
+     */
+    public static ValidationResult of(String source, Class<? extends Test> testClass, TestError error) {
+        List<String> primitives = new ArrayList<>();
+        List<double[]> geometries = new ArrayList<>();
+        for (OsmPrimitive primitive : error.getPrimitives()) {
+            primitives.add(primitive.getType().getAPIName() + "/" + primitive.getUniqueId());
+            if (primitive instanceof Node) {
+                geometries.add(coordinates(Collections.singletonList((Node) primitive)));
+            } else if (primitive instanceof Way) {
+                geometries.add(coordinates(((Way) primitive).getNodes()));
+            }
+        }
+        String message = error.getDescription() == null ? error.getMessage()
+                : error.getMessage() + " - " + error.getDescription();
+        return new ValidationResult(source, testClass.getSimpleName(), error.getCode(),
+                getCodeName(testClass, error.getCode()), error.getSeverity().name(), message, primitives, geometries);
+    }
+
+    private static double[] coordinates(List<Node> nodes) {
+        double[] coordinates = new double[nodes.size() * 2];
+        int count = 0;
+        for (Node node : nodes) {
+            // Incomplete nodes do not have a location
+            if (!node.isLatLonKnown()) continue;
+            coordinates[count++] = node.lon();
+            coordinates[count++] = node.lat();
+        }
+        return count == coordinates.length ? coordinates : Arrays.copyOf(coordinates, count);
+    }
+
+    /**
+     * Get the name of an error code
+     * @param testClass The test class that declares the code
+     * @param code The code
+     * @return The name of the code, such as TurnLanes.UNCLEAR_TURN_LANES, or the number if it is not declared
+     */
+    static String getCodeName(Class<?> testClass, int code) {
+        Map<Integer, String> names = CODE_NAMES.computeIfAbsent(testClass, c -> {
+            Map<Integer, String> map = new HashMap<>();
+            for (Field field : c.getFields()) {
+                int modifiers = field.getModifiers();
+                if (field.getType() != int.class || !Modifier.isStatic(modifiers) || !Modifier.isFinal(modifiers)) continue;
+                try {
+                    map.putIfAbsent(field.getInt(null), c.getSimpleName() + "." + field.getName());
+                } catch (IllegalAccessException e) {
+                    // Only public fields are looked at
+                }
+            }
+            return map;
+        });
+        return names.getOrDefault(code, Integer.toString(code));
+    }
+
+    /**
+     * @return The file the error was found in
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return The simple name of the test class
+     */
+    public String getTest() {
+        return test;
+    }
+
+    /**
+     * @return The error code
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return The name of the error code
+     */
+    public String getCodeName() {
+        return codeName;
+    }
+
+    /**
+     * @return The severity (ERROR, WARNING or OTHER)
+     */
+    public String getSeverity() {
+        return severity;
+    }
+
+    /**
+     * @return The message of the error
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return The primitives of the error, as type/id (e.g., way/123, negative ids are new primitives)
+     */
+    public List<String> getPrimitives() {
+        return primitives;
+    }
+
+    /**
+     * @return The lon/lat coordinates of each node and way of the error
+     */
+    public List<double[]> getGeometries() {
+        return geometries;
+    }
+}
@@ -0,0 +1,121 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.index;
+
+import java.util.Collection;
+
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * The highways whose checks may give different results after some ways changed: the changed ways, and the ways
+ * that are connected to them through a few shared nodes. Connections are followed in the graph from before the
+ * changes as well as in the current graph, so ways that were disconnected by the changes are included.
+ * @author Taylor Smock
+ */
+public final class AffectedWays {
+    private final HighwayGraph graph;
+    /** Whether each way ordinal of the current graph is affected */
+    private final boolean[] affected;
+
+    private AffectedWays(HighwayGraph graph, boolean[] affected) {
+        this.graph = graph;
+        this.affected = affected;
+    }
+
+    /**
+     * Find the affected ways
+     * @param changed The ways that changed, including removed ways
+     * @param previous The graph from before the changes, may be null
+     * @param current The current graph
+     * @param depth The number of shared nodes to go through from the changed ways
+     * @return The affected ways
+     */
+    public static AffectedWays build(Collection<Way> changed, HighwayGraph previous, HighwayGraph current, int depth) {
+        boolean[] inCurrent = new boolean[current.getWayCount()];
+        boolean[] inPrevious = previous == null ? new boolean[0] : new boolean[previous.getWayCount()];
+        for (Way way : changed) {
+            mark(current, inCurrent, way);
+            mark(previous, inPrevious, way);
+        }
+        for (int hop = 0; hop < depth; hop++) {
+            boolean[] nextCurrent = spread(current, inCurrent);
+            boolean[] nextPrevious = spread(previous, inPrevious);
+            // A way that is reached in one graph is a starting point in the other one for the next hop
+            for (int w = 0; w < nextCurrent.length; w++) {
+                if (nextCurrent[w] && !inCurrent[w]) mark(previous, nextPrevious, current.getWay(w));
+            }
+            for (int w = 0; w < nextPrevious.length; w++) {
+                if (nextPrevious[w] && !inPrevious[w]) mark(current, nextCurrent, previous.getWay(w));
+            }
+            inCurrent = nextCurrent;
+            inPrevious = nextPrevious;
+        }
+        return new AffectedWays(current, inCurrent);
+    }
+
+    private static void mark(HighwayGraph graph, boolean[] marks, Way way) {
+        if (graph == null) return;
+        int ordinal = graph.getWayOrdinal(way);
+        if (ordinal >= 0) marks[ordinal] = true;
+    }
+
+    /**
+     * Mark the ways that share a node with a marked way
+     */
+    private static boolean[] spread(HighwayGraph graph, boolean[] marks) {
+        boolean[] next = marks.clone();
+        if (graph == null) return next;
+        for (int n = 0; n < graph.getNodeCount(); n++) {
+            int end = graph.getEndEdge(n);
+            boolean touched = false;
+            for (int edge = graph.getFirstEdge(n); edge < end && !touched; edge++) {
+                touched = marks[graph.getParentOrdinal(edge)];
+            }
+            if (!touched) continue;
+            for (int edge = graph.getFirstEdge(n); edge < end; edge++) {
+                next[graph.getParentOrdinal(edge)] = true;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * @return The current graph
+     */
+    public HighwayGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Check if a way is affected
+     * @param way The way ordinal in the current graph
+     * @return true if the way is affected
+     */
+    public boolean isAffected(int way) {
+        return affected[way];
+    }
+
+    /**
+     * Check if a way is affected
+     * @param way The way
+     * @return true if the way is affected, or if it is not in the current graph
+     */
+    public boolean isAffected(Way way) {
+        int ordinal = graph.getWayOrdinal(way);
+        return ordinal < 0 || affected[ordinal];
+    }
+
+    /**
+     * Check if any of the ways of a node is affected
+     * @param node The node
+     * @return true if one of the parent ways is affected, or if the node is not in the current graph
+     */
+    public boolean isAffected(Node node) {
+        int n = graph.getNodeOrdinal(node);
+        if (n < 0) return true;
+        for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+            if (affected[graph.getParentOrdinal(edge)]) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,157 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * The primitives of a validation selection that the Kaart tests look at, sorted into shared lists in a single pass.
+ * Every test of a run gets the same lists, so the selection is only walked, and each way only classified, once.
+ * The lists are in selection order and must not be modified.
+ * @author Taylor Smock
+ */
+public final class Candidates {
+    private final int selectionSize;
+    private final List<Way> highways;
+    private final List<Way> links;
+    private final List<Way> majorRoads;
+    private final List<Way> turnLaneWays;
+    private final List<Way> waysWithoutTurnLanes;
+    private final List<Way> namedRoads;
+    private final List<Way> nameTagWays;
+    private final List<Relation> restrictions;
+
+    private Candidates(int selectionSize, List<Way> highways, List<Way> links, List<Way> majorRoads,
+            List<Way> turnLaneWays, List<Way> waysWithoutTurnLanes, List<Way> namedRoads, List<Way> nameTagWays,
+            List<Relation> restrictions) {
+        this.selectionSize = selectionSize;
+        this.highways = Collections.unmodifiableList(highways);
+        this.links = Collections.unmodifiableList(links);
+        this.majorRoads = Collections.unmodifiableList(majorRoads);
+        this.turnLaneWays = Collections.unmodifiableList(turnLaneWays);
+        this.waysWithoutTurnLanes = Collections.unmodifiableList(waysWithoutTurnLanes);
+        this.namedRoads = Collections.unmodifiableList(namedRoads);
+        this.nameTagWays = Collections.unmodifiableList(nameTagWays);
+        this.restrictions = Collections.unmodifiableList(restrictions);
+    }
+
+    /**
+     * Sort the primitives of a selection
+     * @param selection The primitives to validate
+     * @return The candidates
+     */
+    public static Candidates build(Collection<? extends OsmPrimitive> selection) {
+        List<Way> highways = new ArrayList<>();
+        List<Way> links = new ArrayList<>();
+        List<Way> majorRoads = new ArrayList<>();
+        List<Way> turnLaneWays = new ArrayList<>();
+        List<Way> waysWithoutTurnLanes = new ArrayList<>();
+        List<Way> namedRoads = new ArrayList<>();
+        List<Way> nameTagWays = new ArrayList<>();
+        List<Relation> restrictions = new ArrayList<>();
+        for (OsmPrimitive primitive : selection) {
+            if (primitive instanceof Way) {
+                Way way = (Way) primitive;
+                // Same as Test#isPrimitiveUsable
+                if (!HighwayGraph.isHighway(way) || way.getNodesCount() < 2) continue;
+                int roadClass = RoadClass.of(way);
+                highways.add(way);
+                if (RoadClass.isAny(roadClass, RoadClass.LINK)) {
+                    links.add(way);
+                } else if (way.hasKey("name") || way.hasKey("ref")) {
+                    namedRoads.add(way);
+                }
+                if (RoadClass.isAny(roadClass, RoadClass.MAJOR)) majorRoads.add(way);
+                if (way.hasKey("turn:lanes") || way.hasKey("turn:lanes:forward") || way.hasKey("turn:lanes:backward")) {
+                    turnLaneWays.add(way);
+                } else {
+                    waysWithoutTurnLanes.add(way);
+                }
+                if (hasNameTag(way)) nameTagWays.add(way);
+            } else if (primitive instanceof Relation) {
+                Relation relation = (Relation) primitive;
+                if (relation.isUsable() && !relation.hasIncompleteMembers() && RestrictionIndex.isRestriction(relation)) {
+                    restrictions.add(relation);
+                }
+            }
+        }
+        return new Candidates(selection.size(), highways, links, majorRoads, turnLaneWays, waysWithoutTurnLanes,
+                namedRoads, nameTagWays, restrictions);
+    }
+
+    private static boolean hasNameTag(Way way) {
+        for (String key : way.keySet()) {
+            if (key.contains("name") && !"int_name".equals(key)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of primitives in the selection that was sorted
+     */
+    public int getSelectionSize() {
+        return selectionSize;
+    }
+
+    /**
+     * @return The highways
+     */
+    public List<Way> getHighways() {
+        return highways;
+    }
+
+    /**
+     * @return The highways that are links
+     */
+    public List<Way> getLinks() {
+        return links;
+    }
+
+    /**
+     * @return The highways with a {@link RoadClass#MAJOR} road class
+     */
+    public List<Way> getMajorRoads() {
+        return majorRoads;
+    }
+
+    /**
+     * @return The highways with turn:lanes, turn:lanes:forward or turn:lanes:backward
+     */
+    public List<Way> getTurnLaneWays() {
+        return turnLaneWays;
+    }
+
+    /**
+     * @return The highways that are not in {@link #getTurnLaneWays()}
+     */
+    public List<Way> getWaysWithoutTurnLanes() {
+        return waysWithoutTurnLanes;
+    }
+
+    /**
+     * @return The highways that are not links, and have a name or a ref
+     */
+    public List<Way> getNamedRoads() {
+        return namedRoads;
+    }
+
+    /**
+     * @return The highways with a key that contains "name" (other than int_name)
+     */
+    public List<Way> getNameTagWays() {
+        return nameTagWays;
+    }
+
+    /**
+     * @return The complete turn restrictions
+     */
+    public List<Relation> getRestrictions() {
+        return restrictions;
+    }
+}
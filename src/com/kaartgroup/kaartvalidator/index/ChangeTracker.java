@@ -0,0 +1,144 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.index;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
+
+/**
+ * The ways of a dataset that changed, numbered by generation, so that a validation run can find the ways that
+ * changed since an earlier run. A change to a node or a relation counts as a change to its parent or member ways.
+ * <p>
+ * Only the listener that the dataset holds keeps a tracker alive, since the changed ways refer to the dataset.
+ * @author Taylor Smock
+ */
+public final class ChangeTracker implements DataSetListenerAdapter.Listener {
+    /** When more ways than this changed, the changes are forgotten and everything counts as changed */
+    public static final int MAX_CHANGED_WAYS = 10_000;
+
+    private static final Map<DataSet, Reference<ChangeTracker>> TRACKERS = new WeakHashMap<>();
+
+    private final DataSetListenerAdapter listener = new DataSetListenerAdapter(this);
+    /** The generation of the last change of each changed way */
+    private final Map<Way, Long> changed = new HashMap<>();
+    private long generation;
+    /** The generation of the last change that could not be traced to ways */
+    private long resetGeneration;
+
+    private ChangeTracker() {
+        // Use of(DataSet)
+    }
+
+    /**
+     * Get the change tracker of a dataset, changes are tracked from the first call for a dataset
+     * @param dataSet The dataset
+     * @return The change tracker
+     */
+    public static ChangeTracker of(DataSet dataSet) {
+        synchronized (TRACKERS) {
+            Reference<ChangeTracker> reference = TRACKERS.get(dataSet);
+            ChangeTracker tracker = reference == null ? null : reference.get();
+            if (tracker == null) {
+                tracker = new ChangeTracker();
+                TRACKERS.put(dataSet, new WeakReference<>(tracker));
+                dataSet.addDataSetListener(tracker.listener);
+            }
+            return tracker;
+        }
+    }
+
+    /**
+     * Stop tracking the changes of a dataset that will not be validated again (e.g., the dataset of a removed layer)
+     * @param dataSet The dataset
+     */
+    public static void release(DataSet dataSet) {
+        if (dataSet == null) return;
+        ChangeTracker tracker;
+        synchronized (TRACKERS) {
+            Reference<ChangeTracker> reference = TRACKERS.remove(dataSet);
+            tracker = reference == null ? null : reference.get();
+        }
+        if (tracker != null) dataSet.removeDataSetListener(tracker.listener);
+    }
+
+    /**
+     * @return The generation of the last change
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Get the ways that changed after a generation
+     * @param since The generation (from {@link #getGeneration()})
+     * @return The changed ways, including removed ways, or null if the changes since the generation are not known
+     */
+    public synchronized List<Way> getChangedSince(long since) {
+        if (resetGeneration > since) return null;
+        List<Way> ways = new ArrayList<>();
+        for (Map.Entry<Way, Long> entry : changed.entrySet()) {
+            if (entry.getValue() > since) ways.add(entry.getKey());
+        }
+        return ways;
+    }
+
+    @Override
+    public synchronized void processDatasetEvent(AbstractDatasetChangedEvent event) {
+        switch (event.getType()) {
+        case PRIMITIVE_FLAGS_CHANGED:
+        case CHANGESET_ID_CHANGED:
+            return;
+        case DATA_CHANGED:
+            reset();
+            return;
+        default:
+            generation++;
+            for (OsmPrimitive primitive : event.getPrimitives()) {
+                if (primitive instanceof Way) {
+                    changed.put((Way) primitive, generation);
+                } else if (primitive instanceof Node) {
+                    markParents((Node) primitive);
+                } else if (primitive instanceof Relation) {
+                    markMembers((Relation) primitive);
+                }
+            }
+            if (changed.size() > MAX_CHANGED_WAYS) reset();
+        }
+    }
+
+    private void markParents(Node node) {
+        for (Way way : node.getParentWays()) {
+            changed.put(way, generation);
+        }
+    }
+
+    private void markMembers(Relation relation) {
+        for (RelationMember member : relation.getMembers()) {
+            if (member.isWay()) {
+                changed.put(member.getWay(), generation);
+            } else if (member.isNode()) {
+                // Turn restrictions apply to the ways at their via nodes
+                markParents(member.getNode());
+            }
+        }
+    }
+
+    private void reset() {
+        generation++;
+        resetGeneration = generation;
+        changed.clear();
+    }
+}
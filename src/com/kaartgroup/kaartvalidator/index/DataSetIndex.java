@@ -0,0 +1,297 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.index;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent.DatasetEventType;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
+
+import com.kaartgroup.kaartvalidator.utils.ValidationEvents;
+
+/**
+ * The indexes of a dataset that are shared by the Kaart tests. Indexes are built on first use, and are kept until
+ * the dataset changes or is {@link #release released}, so every test of a validation run uses the same indexes.
+ * <p>
+ * Only the listener that the dataset holds keeps the indexes alive, and the indexes only refer to the dataset weakly
+ * (the indexed ways still refer to it), so the indexes of a dataset that is no longer used are collected with it.
+ * @author Taylor Smock
+ */
+public final class DataSetIndex implements DataSetListenerAdapter.Listener {
+    private static final Map<DataSet, Reference<DataSetIndex>> INDEXES = new WeakHashMap<>();
+
+    private final Reference<DataSet> dataSet;
+    private final DataSetListenerAdapter listener = new DataSetListenerAdapter(this);
+    private volatile boolean valid = true;
+    private volatile HighwayGraph highwayGraph;
+    private volatile Junctions junctions;
+    private volatile TagColumns tagColumns;
+    private final Map<String, RoadChains> roadChains = new ConcurrentHashMap<>();
+    private volatile LinkChains linkChains;
+    private volatile LinkMotifs linkMotifs;
+    private volatile RestrictionIndex restrictions;
+    private Reference<Collection<? extends OsmPrimitive>> candidatesSelection = new WeakReference<>(null);
+    private Candidates candidates;
+
+    private DataSetIndex(DataSet dataSet) {
+        this.dataSet = new WeakReference<>(dataSet);
+    }
+
+    /**
+     * Get the indexes for a dataset
+     * @param dataSet The dataset, may be null
+     * @return The indexes of the dataset (empty indexes if the dataset is null)
+     */
+    public static DataSetIndex of(DataSet dataSet) {
+        if (dataSet == null) return new DataSetIndex(null);
+        synchronized (INDEXES) {
+            Reference<DataSetIndex> reference = INDEXES.get(dataSet);
+            DataSetIndex index = reference == null ? null : reference.get();
+            if (index == null || !index.isValid()) {
+                index = new DataSetIndex(dataSet);
+                INDEXES.put(dataSet, new WeakReference<>(index));
+                dataSet.addDataSetListener(index.listener);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Drop the indexes of a dataset that will not be validated again (e.g., the dataset of a removed layer)
+     * @param dataSet The dataset
+     */
+    public static void release(DataSet dataSet) {
+        if (dataSet == null) return;
+        DataSetIndex index;
+        synchronized (INDEXES) {
+            Reference<DataSetIndex> reference = INDEXES.remove(dataSet);
+            index = reference == null ? null : reference.get();
+        }
+        if (index != null) index.invalidate();
+    }
+
+    /**
+     * Check if these indexes are for a dataset, and still match its data
+     * @param dataSet The dataset
+     * @return true if the indexes can be used for the dataset
+     */
+    public boolean isFor(DataSet dataSet) {
+        return dataSet != null && this.dataSet.get() == dataSet && isValid();
+    }
+
+    /**
+     * @return false if the dataset has changed since the indexes were created
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * @return The highway graph of the dataset
+     */
+    public HighwayGraph getHighwayGraph() {
+        HighwayGraph graph = highwayGraph;
+        if (graph == null) {
+            synchronized (this) {
+                graph = highwayGraph;
+                if (graph == null) {
+                    Object event = ValidationEvents.beginIndexBuild();
+                    graph = HighwayGraph.build(readWays());
+                    ValidationEvents.commit(event, "HighwayGraph", graph.getWayCount());
+                    highwayGraph = graph;
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * @return The junctions of the highway graph of the dataset
+     */
+    public Junctions getJunctions() {
+        Junctions current = junctions;
+        if (current == null) {
+            synchronized (this) {
+                current = junctions;
+                if (current == null) {
+                    HighwayGraph graph = getHighwayGraph();
+                    Object event = ValidationEvents.beginIndexBuild();
+                    current = Junctions.build(graph);
+                    ValidationEvents.commit(event, "Junctions", graph.getWayCount());
+                    junctions = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return The tag values of the highway graph of the dataset
+     */
+    public TagColumns getTagColumns() {
+        TagColumns current = tagColumns;
+        if (current == null) {
+            synchronized (this) {
+                current = tagColumns;
+                if (current == null) {
+                    HighwayGraph graph = getHighwayGraph();
+                    Object event = ValidationEvents.beginIndexBuild();
+                    current = TagColumns.build(graph);
+                    ValidationEvents.commit(event, "TagColumns", graph.getWayCount());
+                    tagColumns = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Get the road chains for a key
+     * @param key The key that chained ways share a value for (e.g., name or ref)
+     * @return The chains of the highway graph of the dataset
+     */
+    public RoadChains getRoadChains(String key) {
+        return roadChains.computeIfAbsent(key, k -> {
+            Junctions currentJunctions = getJunctions();
+            TagColumns columns = getTagColumns();
+            Object event = ValidationEvents.beginIndexBuild();
+            RoadChains chains = RoadChains.build(currentJunctions, columns, k);
+            ValidationEvents.commit(event, "RoadChains " + k, columns.getGraph().getWayCount());
+            return chains;
+        });
+    }
+
+    /**
+     * @return The link chains of the highway graph of the dataset
+     */
+    public LinkChains getLinkChains() {
+        LinkChains current = linkChains;
+        if (current == null) {
+            synchronized (this) {
+                current = linkChains;
+                if (current == null) {
+                    HighwayGraph graph = getHighwayGraph();
+                    Object event = ValidationEvents.beginIndexBuild();
+                    current = LinkChains.build(graph);
+                    ValidationEvents.commit(event, "LinkChains", graph.getWayCount());
+                    linkChains = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return The link motifs of the highway graph of the dataset
+     */
+    public LinkMotifs getLinkMotifs() {
+        LinkMotifs current = linkMotifs;
+        if (current == null) {
+            synchronized (this) {
+                current = linkMotifs;
+                if (current == null) {
+                    Junctions currentJunctions = getJunctions();
+                    Object event = ValidationEvents.beginIndexBuild();
+                    current = LinkMotifs.build(currentJunctions);
+                    ValidationEvents.commit(event, "LinkMotifs", getHighwayGraph().getWayCount());
+                    linkMotifs = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return The turn restrictions of the dataset
+     */
+    public RestrictionIndex getRestrictions() {
+        RestrictionIndex current = restrictions;
+        if (current == null) {
+            synchronized (this) {
+                current = restrictions;
+                if (current == null) {
+                    Object event = ValidationEvents.beginIndexBuild();
+                    Collection<Relation> relations = readRelations();
+                    current = RestrictionIndex.build(relations);
+                    ValidationEvents.commit(event, "RestrictionIndex", relations.size());
+                    restrictions = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Get the candidates of a selection, the candidates are shared by every test that validates the same selection
+     * @param selection The primitives to validate
+     * @return The candidates of the selection
+     */
+    public synchronized Candidates getCandidates(Collection<? extends OsmPrimitive> selection) {
+        if (candidates == null || candidatesSelection.get() != selection
+                || candidates.getSelectionSize() != selection.size()) {
+            Object event = ValidationEvents.beginIndexBuild();
+            candidates = Candidates.build(selection);
+            ValidationEvents.commit(event, "Candidates", selection.size());
+            candidatesSelection = new WeakReference<>(selection);
+        }
+        return candidates;
+    }
+
+    private Collection<Relation> readRelations() {
+        DataSet current = dataSet.get();
+        if (current == null) return Collections.emptyList();
+        Lock lock = current.getReadLock();
+        lock.lock();
+        try {
+            return new ArrayList<>(current.getRelations());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Collection<Way> readWays() {
+        DataSet current = dataSet.get();
+        if (current == null) return Collections.emptyList();
+        Lock lock = current.getReadLock();
+        lock.lock();
+        try {
+            return new ArrayList<>(current.getWays());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void processDatasetEvent(AbstractDatasetChangedEvent event) {
+        if (event.getType() == DatasetEventType.PRIMITIVE_FLAGS_CHANGED
+                || event.getType() == DatasetEventType.CHANGESET_ID_CHANGED) {
+            return;
+        }
+        DataSet current = dataSet.get();
+        if (current != null) {
+            synchronized (INDEXES) {
+                Reference<DataSetIndex> reference = INDEXES.get(current);
+                if (reference != null && reference.get() == this) INDEXES.remove(current);
+            }
+        }
+        invalidate();
+    }
+
+    private void invalidate() {
+        valid = false;
+        DataSet current = dataSet.get();
+        if (current != null) current.removeDataSetListener(listener);
+    }
+}
@@ -0,0 +1,271 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+
+import com.kaartgroup.kaartvalidator.utils.LongIntMap;
+
+/**
+ * The highway ways of a dataset, and the highway ways each node is part of, stored in compressed sparse row arrays.
+ *
+ * Ways and nodes are numbered with ordinals. The parent ways of node n are the edges
+ * [{@link #getFirstEdge(int)}, {@link #getEndEdge(int)}), so they can be iterated without allocating:
+ * <pre>
+ * int n = graph.getNodeOrdinal(node);
+ * for (int edge = graph.getFirstEdge(n); edge &lt; graph.getEndEdge(n); edge++) {
+ *     Way parent = graph.getParentWay(edge);
+ *     if (parent == way) continue;
+ *     ...
+ * }
+ * </pre>
+ * @author Taylor Smock
+ */
+public final class HighwayGraph {
+    private final Way[] ways;
+    private final LongIntMap wayOrdinals;
+    private final Node[] nodes;
+    private final LongIntMap nodeOrdinals;
+    /** The first edge of each node, with one extra entry for the end of the last node */
+    private final int[] offsets;
+    /** The way ordinal of each edge */
+    private final int[] parents;
+    /** The {@link RoadClass} of each way */
+    private final int[] classes;
+
+    private HighwayGraph(Way[] ways, LongIntMap wayOrdinals, Node[] nodes, LongIntMap nodeOrdinals, int[] offsets,
+            int[] parents, int[] classes) {
+        this.ways = ways;
+        this.wayOrdinals = wayOrdinals;
+        this.nodes = nodes;
+        this.nodeOrdinals = nodeOrdinals;
+        this.offsets = offsets;
+        this.parents = parents;
+        this.classes = classes;
+    }
+
+    /**
+     * Check if a way is indexed as a highway
+     * @param way The way to check
+     * @return true if the way is usable and has a highway tag
+     */
+    public static boolean isHighway(Way way) {
+        return way.isUsable() && way.hasKey("highway");
+    }
+
+    /**
+     * Build the graph
+     * @param allWays The ways of the dataset, non-highway ways are ignored
+     * @return The graph
+     */
+    public static HighwayGraph build(Collection<Way> allWays) {
+        List<Way> highways = new ArrayList<>();
+        for (Way way : allWays) {
+            if (isHighway(way)) highways.add(way);
+        }
+        Way[] ways = highways.toArray(new Way[0]);
+        LongIntMap wayOrdinals = new LongIntMap(ways.length);
+        int[] classes = new int[ways.length];
+        LongIntMap nodeOrdinals = new LongIntMap(ways.length * 4);
+        List<Node> nodeList = new ArrayList<>();
+        for (int w = 0; w < ways.length; w++) {
+            wayOrdinals.put(ways[w].getUniqueId(), w);
+            classes[w] = RoadClass.of(ways[w]);
+            for (int i = 0; i < ways[w].getNodesCount(); i++) {
+                Node node = ways[w].getNode(i);
+                if (nodeOrdinals.get(node.getUniqueId()) < 0) {
+                    nodeOrdinals.put(node.getUniqueId(), nodeList.size());
+                    nodeList.add(node);
+                }
+            }
+        }
+        Node[] nodes = nodeList.toArray(new Node[0]);
+        // Count the parents of each node, a way that visits a node more than once is only counted once
+        int[] lastWay = new int[nodes.length];
+        Arrays.fill(lastWay, -1);
+        int[] offsets = new int[nodes.length + 1];
+        for (int w = 0; w < ways.length; w++) {
+            for (int i = 0; i < ways[w].getNodesCount(); i++) {
+                int n = nodeOrdinals.get(ways[w].getNode(i).getUniqueId());
+                if (lastWay[n] == w) continue;
+                lastWay[n] = w;
+                offsets[n + 1]++;
+            }
+        }
+        for (int n = 0; n < nodes.length; n++) {
+            offsets[n + 1] += offsets[n];
+        }
+        int[] parents = new int[offsets[nodes.length]];
+        int[] fill = Arrays.copyOf(offsets, nodes.length);
+        Arrays.fill(lastWay, -1);
+        for (int w = 0; w < ways.length; w++) {
+            for (int i = 0; i < ways[w].getNodesCount(); i++) {
+                int n = nodeOrdinals.get(ways[w].getNode(i).getUniqueId());
+                if (lastWay[n] == w) continue;
+                lastWay[n] = w;
+                parents[fill[n]++] = w;
+            }
+        }
+        return new HighwayGraph(ways, wayOrdinals, nodes, nodeOrdinals, offsets, parents, classes);
+    }
+
+    /**
+     * @return The number of highway ways
+     */
+    public int getWayCount() {
+        return ways.length;
+    }
+
+    /**
+     * Get a way
+     * @param ordinal The way ordinal
+     * @return The way
+     */
+    public Way getWay(int ordinal) {
+        return ways[ordinal];
+    }
+
+    /**
+     * Get the ordinal of a way
+     * @param way The way
+     * @return The ordinal, or -1 if the way is not a highway in this graph
+     */
+    public int getWayOrdinal(Way way) {
+        int ordinal = wayOrdinals.get(way.getUniqueId());
+        return ordinal >= 0 && ways[ordinal] == way ? ordinal : -1;
+    }
+
+    /**
+     * Get the road classes of a way
+     * @param ordinal The way ordinal
+     * @return The {@link RoadClass} bits of the way
+     */
+    public int getRoadClass(int ordinal) {
+        return classes[ordinal];
+    }
+
+    /**
+     * Get the road classes of a way
+     * @param way The way, it does not need to be in the graph
+     * @return The {@link RoadClass} bits of the way
+     */
+    public int getRoadClass(Way way) {
+        int ordinal = getWayOrdinal(way);
+        return ordinal >= 0 ? classes[ordinal] : RoadClass.of(way);
+    }
+
+    /**
+     * Get the road classes of the parent way of an edge
+     * @param edge The edge
+     * @return The {@link RoadClass} bits of the parent way
+     */
+    public int getParentRoadClass(int edge) {
+        return classes[parents[edge]];
+    }
+
+    /**
+     * @return The number of nodes that are part of a highway
+     */
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    /**
+     * Get a node
+     * @param ordinal The node ordinal
+     * @return The node
+     */
+    public Node getNode(int ordinal) {
+        return nodes[ordinal];
+    }
+
+    /**
+     * Get the ordinal of a node
+     * @param node The node
+     * @return The ordinal, or -1 if the node is not part of a highway in this graph
+     */
+    public int getNodeOrdinal(Node node) {
+        int ordinal = nodeOrdinals.get(node.getUniqueId());
+        return ordinal >= 0 && nodes[ordinal] == node ? ordinal : -1;
+    }
+
+    /**
+     * Get the first parent edge of a node
+     * @param node The node ordinal, may be -1
+     * @return The first edge
+     */
+    public int getFirstEdge(int node) {
+        return node < 0 ? 0 : offsets[node];
+    }
+
+    /**
+     * Get the end of the parent edges of a node
+     * @param node The node ordinal, may be -1
+     * @return The edge after the last edge
+     */
+    public int getEndEdge(int node) {
+        return node < 0 ? 0 : offsets[node + 1];
+    }
+
+    /**
+     * Get the parent way of an edge
+     * @param edge The edge
+     * @return The parent way
+     */
+    public Way getParentWay(int edge) {
+        return ways[parents[edge]];
+    }
+
+    /**
+     * Get the parent way ordinal of an edge
+     * @param edge The edge
+     * @return The parent way ordinal
+     */
+    public int getParentOrdinal(int edge) {
+        return parents[edge];
+    }
+
+    /**
+     * Get the number of highways a node is part of
+     * @param node The node
+     * @return The number of highways with the node
+     */
+    public int getDegree(Node node) {
+        int n = getNodeOrdinal(node);
+        return getEndEdge(n) - getFirstEdge(n);
+    }
+
+    /**
+     * Get the number of highways a node is part of, not counting a way
+     * @param node The node
+     * @param exclude The way not to count
+     * @return The number of other highways with the node
+     */
+    public int getDegree(Node node, Way exclude) {
+        int n = getNodeOrdinal(node);
+        int degree = 0;
+        for (int edge = getFirstEdge(n); edge < getEndEdge(n); edge++) {
+            if (getParentWay(edge) != exclude) degree++;
+        }
+        return degree;
+    }
+
+    /**
+     * Check if a way is a parent of a node
+     * @param node The node
+     * @param way The way
+     * @return true if the way is a highway with the node
+     */
+    public boolean isParent(Node node, Way way) {
+        int n = getNodeOrdinal(node);
+        for (int edge = getFirstEdge(n); edge < getEndEdge(n); edge++) {
+            if (getParentWay(edge) == way) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,317 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.index;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * The junctions of a {@link HighwayGraph}. For each node where highways meet, the approaches (a way leaving the
+ * node towards one of its neighbouring nodes) are sorted by bearing, and the turn from every approach to every
+ * other approach is classified once.
+ * @author Taylor Smock
+ */
+public final class Junctions {
+    /** The ways do not meet at the node */
+    public static final byte NOT_CONNECTED = 0;
+    public static final byte LEFT = 1;
+    public static final byte RIGHT = 2;
+    public static final byte THROUGH = 3;
+
+    /** The way starts at the node */
+    public static final byte START = 1;
+    /** The way ends at the node */
+    public static final byte END = 2;
+    /** The way passes through the node */
+    public static final byte MIDDLE = 3;
+    /** The way is closed, and starts and ends at the node */
+    public static final byte CLOSED = 4;
+
+    private final HighwayGraph graph;
+    /** The role of the parent way of each edge of the graph */
+    private final byte[] roles;
+    /** The first approach of each node, with one extra entry for the end of the last node */
+    private final int[] approachOffsets;
+    private final int[] approachWays;
+    /** 1 if the approach goes to the next node of the way, -1 if it goes to the previous node */
+    private final byte[] approachSides;
+    /** The bearing from the junction to the neighbouring node, in radians */
+    private final double[] approachBearings;
+    /** Whether traffic may leave the junction along the approach */
+    private final boolean[] approachLeaves;
+    /** Whether traffic may arrive at the junction along the approach */
+    private final boolean[] approachArrives;
+    /** The first turn of each node, turns are stored as a matrix of from approach by to approach */
+    private final int[] turnOffsets;
+    private final byte[] turns;
+
+    private Junctions(HighwayGraph graph, byte[] roles, int[] approachOffsets, int[] approachWays, byte[] approachSides,
+            double[] approachBearings, boolean[] approachLeaves, boolean[] approachArrives, int[] turnOffsets,
+            byte[] turns) {
+        this.graph = graph;
+        this.roles = roles;
+        this.approachOffsets = approachOffsets;
+        this.approachWays = approachWays;
+        this.approachSides = approachSides;
+        this.approachBearings = approachBearings;
+        this.approachLeaves = approachLeaves;
+        this.approachArrives = approachArrives;
+        this.turnOffsets = turnOffsets;
+        this.turns = turns;
+    }
+
+    /**
+     * Build the junctions of a graph
+     * @param graph The highway graph
+     * @return The junctions
+     */
+    public static Junctions build(HighwayGraph graph) {
+        int nodeCount = graph.getNodeCount();
+        int edgeCount = graph.getEndEdge(nodeCount - 1);
+        byte[] roles = new byte[edgeCount];
+        int[] approachOffsets = new int[nodeCount + 1];
+        for (int n = 0; n < nodeCount; n++) {
+            Node node = graph.getNode(n);
+            int approaches = 0;
+            for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+                Way way = graph.getParentWay(edge);
+                boolean first = way.firstNode() == node;
+                boolean last = way.lastNode() == node;
+                roles[edge] = first && last ? CLOSED : first ? START : last ? END : MIDDLE;
+                int index = indexOf(way, node);
+                if (index < way.getNodesCount() - 1) approaches++;
+                if (index > 0 || roles[edge] == CLOSED) approaches++;
+            }
+            approachOffsets[n + 1] = approachOffsets[n] + (graph.getEndEdge(n) - graph.getFirstEdge(n) > 1 ? approaches : 0);
+        }
+        int approachCount = approachOffsets[nodeCount];
+        int[] approachWays = new int[approachCount];
+        byte[] approachSides = new byte[approachCount];
+        double[] approachBearings = new double[approachCount];
+        boolean[] approachLeaves = new boolean[approachCount];
+        boolean[] approachArrives = new boolean[approachCount];
+        int[] turnOffsets = new int[nodeCount + 1];
+        for (int n = 0; n < nodeCount; n++) {
+            int size = approachOffsets[n + 1] - approachOffsets[n];
+            turnOffsets[n + 1] = turnOffsets[n] + size * size;
+        }
+        byte[] turns = new byte[turnOffsets[nodeCount]];
+        for (int n = 0; n < nodeCount; n++) {
+            int start = approachOffsets[n];
+            if (approachOffsets[n + 1] == start) continue;
+            Node node = graph.getNode(n);
+            LatLon coor = node.getCoor();
+            int a = start;
+            for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+                Way way = graph.getParentWay(edge);
+                int index = indexOf(way, node);
+                int count = way.getNodesCount();
+                if (index < count - 1) {
+                    a = addApproach(graph, edge, way, coor, way.getNode(index + 1), (byte) 1,
+                            approachWays, approachSides, approachBearings, approachLeaves, approachArrives, a);
+                }
+                if (index > 0 || roles[edge] == CLOSED) {
+                    Node previous = index > 0 ? way.getNode(index - 1) : way.getNode(count - 2);
+                    a = addApproach(graph, edge, way, coor, previous, (byte) -1,
+                            approachWays, approachSides, approachBearings, approachLeaves, approachArrives, a);
+                }
+            }
+            sortByBearing(start, a, approachWays, approachSides, approachBearings, approachLeaves, approachArrives);
+            int size = a - start;
+            for (int from = 0; from < size; from++) {
+                for (int to = 0; to < size; to++) {
+                    turns[turnOffsets[n] + from * size + to] = classify(
+                            relativeBearing(approachBearings[start + from], approachBearings[start + to]));
+                }
+            }
+        }
+        return new Junctions(graph, roles, approachOffsets, approachWays, approachSides, approachBearings,
+                approachLeaves, approachArrives, turnOffsets, turns);
+    }
+
+    private static int addApproach(HighwayGraph graph, int edge, Way way, LatLon coor, Node neighbour, byte side,
+            int[] ways, byte[] sides, double[] bearings, boolean[] leaves, boolean[] arrives, int a) {
+        ways[a] = graph.getParentOrdinal(edge);
+        sides[a] = side;
+        LatLon neighbourCoor = neighbour.getCoor();
+        bearings[a] = coor == null || neighbourCoor == null ? Double.NaN : coor.bearing(neighbourCoor);
+        int oneway = way.isOneway();
+        leaves[a] = oneway == 0 || oneway == side;
+        arrives[a] = oneway == 0 || oneway == -side;
+        return a + 1;
+    }
+
+    private static int indexOf(Way way, Node node) {
+        for (int i = 0; i < way.getNodesCount(); i++) {
+            if (way.getNode(i) == node) return i;
+        }
+        return -1;
+    }
+
+    private static void sortByBearing(int start, int end, int[] ways, byte[] sides, double[] bearings, boolean[] leaves,
+            boolean[] arrives) {
+        // Junctions rarely have more than a handful of approaches, so an insertion sort is enough
+        for (int i = start + 1; i < end; i++) {
+            int way = ways[i];
+            byte side = sides[i];
+            double bearing = bearings[i];
+            boolean leave = leaves[i];
+            boolean arrive = arrives[i];
+            int j = i - 1;
+            while (j >= start && bearings[j] > bearing) {
+                ways[j + 1] = ways[j];
+                sides[j + 1] = sides[j];
+                bearings[j + 1] = bearings[j];
+                leaves[j + 1] = leaves[j];
+                arrives[j + 1] = arrives[j];
+                j--;
+            }
+            ways[j + 1] = way;
+            sides[j + 1] = side;
+            bearings[j + 1] = bearing;
+            leaves[j + 1] = leave;
+            arrives[j + 1] = arrive;
+        }
+    }
+
+    private static double relativeBearing(double fromBearing, double toBearing) {
+        double bearing = fromBearing - toBearing;
+        while (bearing < 0) {
+            // Convert to positive radians
+            bearing = bearing + 2 * Math.PI;
+        }
+        return bearing;
+    }
+
+    private static byte classify(double bearing) {
+        if (bearing > 0 && bearing < Math.PI) return RIGHT;
+        else if (bearing > Math.PI && bearing < 2 * Math.PI) return LEFT;
+        else if (Double.isNaN(bearing)) return NOT_CONNECTED;
+        return THROUGH;
+    }
+
+    /**
+     * @return The graph these junctions are for
+     */
+    public HighwayGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Get the role of a way at a node
+     * @param node The node
+     * @param way The way
+     * @return {@link #START}, {@link #END}, {@link #MIDDLE}, {@link #CLOSED}, or 0 if the way does not have the node
+     */
+    public byte getRole(Node node, Way way) {
+        int n = graph.getNodeOrdinal(node);
+        for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+            if (graph.getParentWay(edge) == way) return roles[edge];
+        }
+        return 0;
+    }
+
+    /**
+     * Get the role of the parent way of an edge of the graph
+     * @param edge The edge
+     * @return {@link #START}, {@link #END}, {@link #MIDDLE}, or {@link #CLOSED}
+     */
+    public byte getRole(int edge) {
+        return roles[edge];
+    }
+
+    private int findApproach(int node, int way, int side) {
+        for (int a = approachOffsets[node]; a < approachOffsets[node + 1]; a++) {
+            if (approachWays[a] == way && approachSides[a] == side) return a;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the approach that traffic arrives on when coming from a way that ends at a node
+     */
+    private int findFromApproach(int node, Way from, Node via) {
+        int way = graph.getWayOrdinal(from);
+        if (way < 0) return -1;
+        if (from.firstNode() == via) return findApproach(node, way, 1);
+        else if (from.lastNode() == via) return findApproach(node, way, -1);
+        return -1;
+    }
+
+    /**
+     * Find the approach that traffic leaves on when going onto a way at a node
+     */
+    private int findToApproach(int node, Way to, Node via) {
+        int way = graph.getWayOrdinal(to);
+        if (way < 0) return -1;
+        int a = findApproach(node, way, 1);
+        if (a < 0 && !"yes".equals(to.get("oneway"))) a = findApproach(node, way, -1);
+        return a;
+    }
+
+    /**
+     * Get the relative bearing of a turn
+     * @param from The way that we are coming from, it must start or end at via
+     * @param via The node that we are traversing
+     * @param to The way that we are going to
+     * @return The relative bearing in radians [0, 2&pi;), or NaN if the ways are not connected
+     */
+    public double getBearing(Way from, Node via, Way to) {
+        int node = graph.getNodeOrdinal(via);
+        if (node < 0) return Double.NaN;
+        int fromApproach = findFromApproach(node, from, via);
+        int toApproach = findToApproach(node, to, via);
+        if (fromApproach < 0 || toApproach < 0) return Double.NaN;
+        return relativeBearing(approachBearings[fromApproach], approachBearings[toApproach]);
+    }
+
+    /**
+     * Get the direction of a turn
+     * @param from The way that we are coming from, it must start or end at via
+     * @param via The node that we are traversing
+     * @param to The way that we are going to
+     * @return {@link #LEFT}, {@link #RIGHT}, {@link #THROUGH}, or {@link #NOT_CONNECTED}
+     */
+    public byte getTurn(Way from, Node via, Way to) {
+        int node = graph.getNodeOrdinal(via);
+        if (node < 0) return NOT_CONNECTED;
+        int fromApproach = findFromApproach(node, from, via);
+        int toApproach = findToApproach(node, to, via);
+        if (fromApproach < 0 || toApproach < 0) return NOT_CONNECTED;
+        int start = approachOffsets[node];
+        int size = approachOffsets[node + 1] - start;
+        return turns[turnOffsets[node] + (fromApproach - start) * size + toApproach - start];
+    }
+
+    /**
+     * Check if traffic may leave a node along a way
+     * @param via The node
+     * @param way The way
+     * @return true if the way has the node, and its oneway tags allow leaving the node along it
+     */
+    public boolean canLeave(Node via, Way way) {
+        int node = graph.getNodeOrdinal(via);
+        int ordinal = graph.getWayOrdinal(way);
+        if (node < 0 || ordinal < 0) return false;
+        for (int a = approachOffsets[node]; a < approachOffsets[node + 1]; a++) {
+            if (approachWays[a] == ordinal && approachLeaves[a]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check if traffic may arrive at a node along a way
+     * @param via The node
+     * @param way The way
+     * @return true if the way has the node, and its oneway tags allow arriving at the node along it
+     */
+    public boolean canArrive(Node via, Way way) {
+        int node = graph.getNodeOrdinal(via);
+        int ordinal = graph.getWayOrdinal(way);
+        if (node < 0 || ordinal < 0) return false;
+        for (int a = approachOffsets[node]; a < approachOffsets[node + 1]; a++) {
+            if (approachWays[a] == ordinal && approachArrives[a]) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,122 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * Chains of link ways (highway=*_link) that are joined end to start, where no other highway meets the join.
+ * Each link is in exactly one chain, and the members of a chain are stored in the direction of the ways.
+ * @author Taylor Smock
+ */
+public final class LinkChains {
+    private final HighwayGraph graph;
+    /** The chain of each way ordinal, -1 if the way is not a link */
+    private final int[] chains;
+    /** The first member of each chain, with one extra entry for the end of the last chain */
+    private final int[] offsets;
+    /** The way ordinals of the members of the chains */
+    private final int[] members;
+
+    private LinkChains(HighwayGraph graph, int[] chains, int[] offsets, int[] members) {
+        this.graph = graph;
+        this.chains = chains;
+        this.offsets = offsets;
+        this.members = members;
+    }
+
+    /**
+     * Build the link chains of a graph
+     * @param graph The highway graph
+     * @return The link chains
+     */
+    public static LinkChains build(HighwayGraph graph) {
+        int wayCount = graph.getWayCount();
+        int[] previous = new int[wayCount];
+        int[] next = new int[wayCount];
+        Arrays.fill(previous, -1);
+        Arrays.fill(next, -1);
+        for (int w = 0; w < wayCount; w++) {
+            if (!isLink(graph, w)) continue;
+            Way way = graph.getWay(w);
+            int n = graph.getNodeOrdinal(way.firstNode());
+            if (graph.getEndEdge(n) - graph.getFirstEdge(n) != 2) continue;
+            for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+                int other = graph.getParentOrdinal(edge);
+                if (other != w && isLink(graph, other) && graph.getWay(other).lastNode() == way.firstNode()) {
+                    previous[w] = other;
+                    next[other] = w;
+                }
+            }
+        }
+        int[] chains = new int[wayCount];
+        Arrays.fill(chains, -1);
+        int[] members = new int[wayCount];
+        List<Integer> offsets = new ArrayList<>();
+        int count = 0;
+        // Start at the first way of each chain, then pick up the chains that are loops
+        for (int pass = 0; pass < 2; pass++) {
+            for (int w = 0; w < wayCount; w++) {
+                if (chains[w] >= 0 || !isLink(graph, w) || pass == 0 && previous[w] >= 0) continue;
+                int chain = offsets.size();
+                offsets.add(count);
+                for (int member = w; member >= 0 && chains[member] < 0; member = next[member]) {
+                    chains[member] = chain;
+                    members[count++] = member;
+                }
+            }
+        }
+        int[] offsetArray = new int[offsets.size() + 1];
+        for (int i = 0; i < offsets.size(); i++) {
+            offsetArray[i] = offsets.get(i);
+        }
+        offsetArray[offsets.size()] = count;
+        return new LinkChains(graph, chains, offsetArray, Arrays.copyOf(members, count));
+    }
+
+    private static boolean isLink(HighwayGraph graph, int way) {
+        return RoadClass.isAny(graph.getRoadClass(way), RoadClass.LINK);
+    }
+
+    /**
+     * @return The number of chains
+     */
+    public int getChainCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Get the chain of a way
+     * @param way The way
+     * @return The chain, or -1 if the way is not a link
+     */
+    public int getChain(Way way) {
+        int ordinal = graph.getWayOrdinal(way);
+        return ordinal < 0 ? -1 : chains[ordinal];
+    }
+
+    /**
+     * Get the members of a chain
+     * @param chain The chain
+     * @return The ways of the chain, in the direction of the ways
+     */
+    public List<Way> getMembers(int chain) {
+        List<Way> ways = new ArrayList<>(offsets[chain + 1] - offsets[chain]);
+        for (int i = offsets[chain]; i < offsets[chain + 1]; i++) {
+            ways.add(graph.getWay(members[i]));
+        }
+        return ways;
+    }
+
+    /**
+     * Get the last way of a chain, where the chain leaves to other roads
+     * @param chain The chain
+     * @return The last way of the chain
+     */
+    public Way getLast(int chain) {
+        return graph.getWay(members[offsets[chain + 1] - 1]);
+    }
+}
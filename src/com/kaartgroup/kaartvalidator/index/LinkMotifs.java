@@ -0,0 +1,212 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * The shapes that links (highway=*_link) make with the roads around them, found in one pass over the links:
+ * <ul>
+ * <li>triangles, where a link joins two major roads that also meet each other (slip lanes)</li>
+ * <li>links that start or end at a node, for roads that end in a Y of links</li>
+ * <li>links that pass through a node</li>
+ * </ul>
+ * @author Taylor Smock
+ */
+public final class LinkMotifs {
+    /**
+     * A link that joins two major roads that meet each other
+     */
+    public static final class Triangle {
+        private final Way link;
+        private final Way from;
+        private final Way to;
+        private final Node corner;
+
+        Triangle(Way link, Way from, Way to, Node corner) {
+            this.link = link;
+            this.from = from;
+            this.to = to;
+            this.corner = corner;
+        }
+
+        /**
+         * @return The link
+         */
+        public Way getLink() {
+            return link;
+        }
+
+        /**
+         * @return The major road at the first node of the link
+         */
+        public Way getFrom() {
+            return from;
+        }
+
+        /**
+         * @return The major road that the first road meets, and that the link also connects to
+         */
+        public Way getTo() {
+            return to;
+        }
+
+        /**
+         * @return The node where the two roads meet
+         */
+        public Node getCorner() {
+            return corner;
+        }
+    }
+
+    private final HighwayGraph graph;
+    /** The triangle of each way ordinal, null if the way is not a link of a triangle */
+    private final Triangle[] triangles;
+    /** The first link of each node, with one extra entry for the end of the last node */
+    private final int[] linkOffsets;
+    /** The way ordinals of the links at each node, links that end at the node come first */
+    private final int[] links;
+    /** The number of links that end (or start) at each node */
+    private final int[] endingLinks;
+
+    private LinkMotifs(HighwayGraph graph, Triangle[] triangles, int[] linkOffsets, int[] links, int[] endingLinks) {
+        this.graph = graph;
+        this.triangles = triangles;
+        this.linkOffsets = linkOffsets;
+        this.links = links;
+        this.endingLinks = endingLinks;
+    }
+
+    /**
+     * Find the link motifs of a graph
+     * @param junctions The junctions of the highway graph
+     * @return The link motifs
+     */
+    public static LinkMotifs build(Junctions junctions) {
+        HighwayGraph graph = junctions.getGraph();
+        int nodeCount = graph.getNodeCount();
+        int[] linkOffsets = new int[nodeCount + 1];
+        for (int n = 0; n < nodeCount; n++) {
+            int count = 0;
+            for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+                if (RoadClass.isAny(graph.getParentRoadClass(edge), RoadClass.LINK)) count++;
+            }
+            linkOffsets[n + 1] = linkOffsets[n] + count;
+        }
+        int[] links = new int[linkOffsets[nodeCount]];
+        int[] endingLinks = new int[nodeCount];
+        for (int n = 0; n < nodeCount; n++) {
+            int fill = linkOffsets[n];
+            for (int pass = 0; pass < 2; pass++) {
+                for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+                    if (!RoadClass.isAny(graph.getParentRoadClass(edge), RoadClass.LINK)) continue;
+                    boolean ending = junctions.getRole(edge) != Junctions.MIDDLE;
+                    if (ending != (pass == 0)) continue;
+                    links[fill++] = graph.getParentOrdinal(edge);
+                    if (ending) endingLinks[n]++;
+                }
+            }
+        }
+        return new LinkMotifs(graph, findTriangles(graph), linkOffsets, links, endingLinks);
+    }
+
+    private static Triangle[] findTriangles(HighwayGraph graph) {
+        int wayCount = graph.getWayCount();
+        Triangle[] triangles = new Triangle[wayCount];
+        // The major roads touching the current link, and the (first) node of the link where they touch it
+        int[] touching = new int[wayCount];
+        int[] touchNode = new int[wayCount];
+        int[] touchCount = new int[wayCount];
+        for (int l = 0; l < wayCount; l++) {
+            if (!RoadClass.isAny(graph.getRoadClass(l), RoadClass.LINK)) continue;
+            Way link = graph.getWay(l);
+            int stamp = l + 1;
+            for (int i = 0; i < link.getNodesCount(); i++) {
+                int n = graph.getNodeOrdinal(link.getNode(i));
+                for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+                    int road = graph.getParentOrdinal(edge);
+                    if (!RoadClass.isAny(graph.getRoadClass(road), RoadClass.MAJOR)) continue;
+                    if (touching[road] != stamp) {
+                        touching[road] = stamp;
+                        touchNode[road] = n;
+                        touchCount[road] = 1;
+                    } else if (touchNode[road] != n) {
+                        touchCount[road]++;
+                    }
+                }
+            }
+            triangles[l] = findTriangle(graph, link, stamp, touching, touchNode, touchCount);
+        }
+        return triangles;
+    }
+
+    private static Triangle findTriangle(HighwayGraph graph, Way link, int stamp, int[] touching, int[] touchNode,
+            int[] touchCount) {
+        Node first = link.firstNode();
+        int f = graph.getNodeOrdinal(first);
+        for (int edge = graph.getFirstEdge(f); edge < graph.getEndEdge(f); edge++) {
+            int road = graph.getParentOrdinal(edge);
+            if (!RoadClass.isAny(graph.getRoadClass(road), RoadClass.MAJOR)) continue;
+            Way from = graph.getWay(road);
+            for (int i = 0; i < from.getNodesCount(); i++) {
+                Node corner = from.getNode(i);
+                if (corner == first) continue;
+                int n = graph.getNodeOrdinal(corner);
+                for (int edge2 = graph.getFirstEdge(n); edge2 < graph.getEndEdge(n); edge2++) {
+                    int other = graph.getParentOrdinal(edge2);
+                    if (other == road || touching[other] != stamp) continue;
+                    // The other road has to reach the link somewhere other than the corner
+                    if (touchCount[other] > 1 || touchNode[other] != n) {
+                        return new Triangle(link, from, graph.getWay(other), corner);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the triangle of a link
+     * @param link The link
+     * @return The triangle the link is part of, or null if it does not join two roads that meet each other
+     */
+    public Triangle getTriangle(Way link) {
+        int ordinal = graph.getWayOrdinal(link);
+        return ordinal < 0 ? null : triangles[ordinal];
+    }
+
+    /**
+     * Get the links that start or end at a node
+     * @param node The node
+     * @return The links, in the order of the parent ways of the node
+     */
+    public List<Way> getEndingLinks(Node node) {
+        int n = graph.getNodeOrdinal(node);
+        if (n < 0) return Collections.emptyList();
+        return getLinks(linkOffsets[n], linkOffsets[n] + endingLinks[n]);
+    }
+
+    /**
+     * Get the links that pass through a node
+     * @param node The node
+     * @return The links, in the order of the parent ways of the node
+     */
+    public List<Way> getPassingLinks(Node node) {
+        int n = graph.getNodeOrdinal(node);
+        if (n < 0) return Collections.emptyList();
+        return getLinks(linkOffsets[n] + endingLinks[n], linkOffsets[n + 1]);
+    }
+
+    private List<Way> getLinks(int from, int to) {
+        if (from == to) return Collections.emptyList();
+        List<Way> ways = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            ways.add(graph.getWay(links[i]));
+        }
+        return ways;
+    }
+}
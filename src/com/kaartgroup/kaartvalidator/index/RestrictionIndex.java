@@ -0,0 +1,217 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * The turn restrictions (type=restriction) of a dataset, by from way, via node (or first via way), and to way.
+ * @author Taylor Smock
+ */
+public final class RestrictionIndex {
+    /**
+     * The values of the restriction tag
+     */
+    public enum Restriction {
+        NO_RIGHT_TURN, NO_LEFT_TURN, NO_U_TURN, NO_STRAIGHT_ON, NO_ENTRY, NO_EXIT,
+        ONLY_RIGHT_TURN, ONLY_LEFT_TURN, ONLY_U_TURN, ONLY_STRAIGHT_ON,
+        /** A value that is not known, or no value */
+        OTHER;
+
+        /**
+         * Get the restriction for a tag value
+         * @param value The value of the restriction tag
+         * @return The restriction, {@link #OTHER} if the value is not known
+         */
+        public static Restriction fromValue(String value) {
+            if (value == null) return OTHER;
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return OTHER;
+            }
+        }
+
+        /**
+         * @return true if this only allows one turn (only_*)
+         */
+        public boolean isOnly() {
+            return this == ONLY_RIGHT_TURN || this == ONLY_LEFT_TURN || this == ONLY_U_TURN || this == ONLY_STRAIGHT_ON;
+        }
+    }
+
+    /**
+     * A turn from one way to another, restricted by a relation
+     */
+    public static final class Entry {
+        private final Relation relation;
+        private final Restriction restriction;
+        private final Way from;
+        private final List<OsmPrimitive> via;
+        private final Way to;
+
+        Entry(Relation relation, Restriction restriction, Way from, List<OsmPrimitive> via, Way to) {
+            this.relation = relation;
+            this.restriction = restriction;
+            this.from = from;
+            this.via = via;
+            this.to = to;
+        }
+
+        /**
+         * @return The restriction relation
+         */
+        public Relation getRelation() {
+            return relation;
+        }
+
+        /**
+         * @return The restriction
+         */
+        public Restriction getRestriction() {
+            return restriction;
+        }
+
+        /**
+         * @return The from way
+         */
+        public Way getFrom() {
+            return from;
+        }
+
+        /**
+         * @return The via node, or the via ways in the order of the relation
+         */
+        public List<OsmPrimitive> getVia() {
+            return via;
+        }
+
+        /**
+         * @return The to way
+         */
+        public Way getTo() {
+            return to;
+        }
+    }
+
+    private static final class Key {
+        private final Way from;
+        private final OsmPrimitive via;
+        private final Way to;
+
+        Key(Way from, OsmPrimitive via, Way to) {
+            this.from = from;
+            this.via = via;
+            this.to = to;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * Long.hashCode(from.getUniqueId()) + Long.hashCode(via.getUniqueId()))
+                    + Long.hashCode(to.getUniqueId());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return from == other.from && via == other.via && to == other.to;
+        }
+    }
+
+    private final Map<Key, List<Entry>> entries;
+    private final List<Entry> allEntries;
+
+    private RestrictionIndex(Map<Key, List<Entry>> entries, List<Entry> allEntries) {
+        this.entries = entries;
+        this.allEntries = allEntries;
+    }
+
+    /**
+     * Check if a relation is a turn restriction
+     * @param relation The relation
+     * @return true if the relation has type=restriction
+     */
+    public static boolean isRestriction(Relation relation) {
+        return "restriction".equals(relation.get("type"));
+    }
+
+    /**
+     * Build the index
+     * @param relations The relations of the dataset, other relations are ignored
+     * @return The index
+     */
+    public static RestrictionIndex build(Collection<Relation> relations) {
+        Map<Key, List<Entry>> entries = new HashMap<>();
+        List<Entry> allEntries = new ArrayList<>();
+        for (Relation relation : relations) {
+            if (!relation.isUsable() || !isRestriction(relation)) continue;
+            List<Way> from = new ArrayList<>();
+            List<OsmPrimitive> via = new ArrayList<>();
+            List<Way> to = new ArrayList<>();
+            for (RelationMember member : relation.getMembers()) {
+                if ("from".equals(member.getRole()) && member.isWay()) from.add(member.getWay());
+                else if ("to".equals(member.getRole()) && member.isWay()) to.add(member.getWay());
+                else if ("via".equals(member.getRole())) via.add(member.getMember());
+            }
+            if (via.isEmpty()) continue;
+            Restriction restriction = Restriction.fromValue(relation.get("restriction"));
+            List<OsmPrimitive> fixedVia = Collections.unmodifiableList(via);
+            for (Way fromWay : from) {
+                for (Way toWay : to) {
+                    Entry entry = new Entry(relation, restriction, fromWay, fixedVia, toWay);
+                    allEntries.add(entry);
+                    entries.computeIfAbsent(new Key(fromWay, via.get(0), toWay), k -> new ArrayList<>(1)).add(entry);
+                }
+            }
+        }
+        return new RestrictionIndex(entries, Collections.unmodifiableList(allEntries));
+    }
+
+    /**
+     * Get the restrictions of a turn
+     * @param from The way the turn is from
+     * @param via The via node (or first via way)
+     * @param to The way the turn is to
+     * @return The restrictions of the turn
+     */
+    public List<Entry> get(Way from, OsmPrimitive via, Way to) {
+        List<Entry> list = entries.get(new Key(from, via, to));
+        return list == null ? Collections.emptyList() : list;
+    }
+
+    /**
+     * Get the restrictions of a turn in either direction
+     * @param first One of the ways
+     * @param via The via node (or first via way)
+     * @param second The other way
+     * @return The restrictions from the first way to the second, then from the second way to the first
+     */
+    public List<Entry> getEither(Way first, OsmPrimitive via, Way second) {
+        List<Entry> forward = get(first, via, second);
+        List<Entry> backward = get(second, via, first);
+        if (backward.isEmpty()) return forward;
+        if (forward.isEmpty()) return backward;
+        List<Entry> both = new ArrayList<>(forward);
+        both.addAll(backward);
+        return both;
+    }
+
+    /**
+     * @return All of the restricted turns, in the order of the relations
+     */
+    public List<Entry> getEntries() {
+        return allEntries;
+    }
+}
@@ -0,0 +1,191 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.index;
+
+import java.util.Arrays;
+
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * Highway ways grouped into chains of ways that continue each other with the same value for a key (e.g., name or
+ * ref). Ways are in the same chain when they are connected through shared endpoints with equal values.
+ * Roundabouts are only chained with other roundabouts.
+ * @author Taylor Smock
+ */
+public final class RoadChains {
+    private final Junctions junctions;
+    private final String key;
+    /** The chain of each way ordinal, -1 if the way does not have the key */
+    private final int[] chains;
+    /** The first member of each chain (indexed by chain), with one extra entry for the end of the last chain */
+    private final int[] memberOffsets;
+    /** The way ordinals of the members of the chains */
+    private final int[] members;
+
+    private RoadChains(Junctions junctions, String key, int[] chains, int[] memberOffsets, int[] members) {
+        this.junctions = junctions;
+        this.key = key;
+        this.chains = chains;
+        this.memberOffsets = memberOffsets;
+        this.members = members;
+    }
+
+    /**
+     * Build the chains for a key
+     * @param junctions The junctions of the highway graph
+     * @param columns The tag values of the highway graph, used when they have the key
+     * @param key The key that chained ways share a value for
+     * @return The chains
+     */
+    public static RoadChains build(Junctions junctions, TagColumns columns, String key) {
+        HighwayGraph graph = junctions.getGraph();
+        int wayCount = graph.getWayCount();
+        int column = TagColumns.getColumn(key);
+        SymbolTable symbols = column < 0 ? new SymbolTable() : null;
+        int[] values = new int[wayCount];
+        int[] parents = new int[wayCount];
+        int[] sizes = new int[wayCount];
+        for (int w = 0; w < wayCount; w++) {
+            values[w] = column < 0 ? symbols.intern(graph.getWay(w).get(key)) : columns.get(column, w);
+            parents[w] = w;
+            sizes[w] = 1;
+        }
+        for (int n = 0; n < graph.getNodeCount(); n++) {
+            int end = graph.getEndEdge(n);
+            for (int edge = graph.getFirstEdge(n); edge < end; edge++) {
+                if (junctions.getRole(edge) == Junctions.MIDDLE) continue;
+                int way = graph.getParentOrdinal(edge);
+                if (values[way] == SymbolTable.NONE) continue;
+                boolean roundabout = RoadClass.isAny(graph.getRoadClass(way), RoadClass.ROUNDABOUT);
+                for (int other = edge + 1; other < end; other++) {
+                    if (junctions.getRole(other) == Junctions.MIDDLE) continue;
+                    int otherWay = graph.getParentOrdinal(other);
+                    if (values[way] == values[otherWay]
+                            && roundabout == RoadClass.isAny(graph.getRoadClass(otherWay), RoadClass.ROUNDABOUT)) {
+                        union(parents, sizes, way, otherWay);
+                    }
+                }
+            }
+        }
+        int[] chains = new int[wayCount];
+        Arrays.fill(chains, -1);
+        int[] memberOffsets = new int[wayCount + 1];
+        for (int w = 0; w < wayCount; w++) {
+            if (values[w] != SymbolTable.NONE) {
+                chains[w] = find(parents, w);
+                memberOffsets[chains[w] + 1]++;
+            }
+        }
+        for (int w = 0; w < wayCount; w++) {
+            memberOffsets[w + 1] += memberOffsets[w];
+        }
+        int[] members = new int[memberOffsets[wayCount]];
+        int[] fill = Arrays.copyOf(memberOffsets, wayCount);
+        for (int w = 0; w < wayCount; w++) {
+            if (chains[w] >= 0) members[fill[chains[w]]++] = w;
+        }
+        return new RoadChains(junctions, key, chains, memberOffsets, members);
+    }
+
+    private static int find(int[] parents, int way) {
+        int current = way;
+        while (parents[current] != current) {
+            // Path halving
+            parents[current] = parents[parents[current]];
+            current = parents[current];
+        }
+        return current;
+    }
+
+    private static void union(int[] parents, int[] sizes, int first, int second) {
+        int firstRoot = find(parents, first);
+        int secondRoot = find(parents, second);
+        if (firstRoot == secondRoot) return;
+        if (sizes[firstRoot] < sizes[secondRoot]) {
+            int tmp = firstRoot;
+            firstRoot = secondRoot;
+            secondRoot = tmp;
+        }
+        parents[secondRoot] = firstRoot;
+        sizes[firstRoot] += sizes[secondRoot];
+    }
+
+    /**
+     * @return The key the ways are chained by
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return The junctions the chains were built from
+     */
+    public Junctions getJunctions() {
+        return junctions;
+    }
+
+    /**
+     * Get the chain of a way
+     * @param way The way ordinal
+     * @return The chain, or -1 if the way does not have the key
+     */
+    public int getChain(int way) {
+        return chains[way];
+    }
+
+    /**
+     * Get the chain of a way
+     * @param way The way
+     * @return The chain, or -1 if the way is not a highway or does not have the key
+     */
+    public int getChain(Way way) {
+        int ordinal = junctions.getGraph().getWayOrdinal(way);
+        return ordinal < 0 ? -1 : chains[ordinal];
+    }
+
+    /**
+     * Get the first member of a chain
+     * @param chain The chain
+     * @return The first member, for use with {@link #getMember(int)}
+     */
+    public int getFirstMember(int chain) {
+        return memberOffsets[chain];
+    }
+
+    /**
+     * Get the end of the members of a chain
+     * @param chain The chain
+     * @return The member after the last member of the chain
+     */
+    public int getEndMember(int chain) {
+        return memberOffsets[chain + 1];
+    }
+
+    /**
+     * Get a member of a chain
+     * @param member The member, between {@link #getFirstMember(int)} and {@link #getEndMember(int)}
+     * @return The way ordinal of the member
+     */
+    public int getMember(int member) {
+        return members[member];
+    }
+
+    /**
+     * Count the ends of the ways of a chain at a node. The chain ends at the node if there is only one, and it
+     * continues through the node if there are more.
+     * @param node The node ordinal
+     * @param chain The chain
+     * @return The number of way ends of the chain at the node, a closed way counts twice
+     */
+    public int getEndCount(int node, int chain) {
+        if (chain < 0) return 0;
+        HighwayGraph graph = junctions.getGraph();
+        int count = 0;
+        for (int edge = graph.getFirstEdge(node); edge < graph.getEndEdge(node); edge++) {
+            if (chains[graph.getParentOrdinal(edge)] != chain) continue;
+            byte role = junctions.getRole(edge);
+            if (role == Junctions.CLOSED) count += 2;
+            else if (role != Junctions.MIDDLE) count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,78 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.index;
+
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * The classes of a highway, as bits of an int. The classes of the ways of a {@link HighwayGraph} are computed once
+ * when the graph is built, so tests can filter ways with a mask instead of matching tags.
+ * @author Taylor Smock
+ */
+public final class RoadClass {
+    /** highway=motorway|trunk|primary|secondary|tertiary|unclassified|residential */
+    public static final int MAJOR = 1;
+    /** highway=service */
+    public static final int SERVICE = 1 << 1;
+    /** highway=*_link */
+    public static final int LINK = 1 << 2;
+    /** highway=pedestrian|footway */
+    public static final int PEDESTRIAN = 1 << 3;
+    /** junction=roundabout */
+    public static final int ROUNDABOUT = 1 << 4;
+    /** oneway=yes */
+    public static final int ONEWAY_FORWARD = 1 << 5;
+    /** oneway=-1 */
+    public static final int ONEWAY_BACKWARD = 1 << 6;
+    /** Any highway=* */
+    public static final int HIGHWAY = 1 << 7;
+
+    private RoadClass() {
+        // Hide the constructor
+    }
+
+    /**
+     * Classify a way
+     * @param way The way
+     * @return The classes of the way, 0 if it is not a highway
+     */
+    public static int of(Way way) {
+        String highway = way.get("highway");
+        if (highway == null) return 0;
+        int classes = HIGHWAY;
+        switch (highway) {
+        case "motorway":
+        case "trunk":
+        case "primary":
+        case "secondary":
+        case "tertiary":
+        case "unclassified":
+        case "residential":
+            classes |= MAJOR;
+            break;
+        case "service":
+            classes |= SERVICE;
+            break;
+        case "pedestrian":
+        case "footway":
+            classes |= PEDESTRIAN;
+            break;
+        default:
+            if (highway.endsWith("_link")) classes |= LINK;
+        }
+        if ("roundabout".equals(way.get("junction"))) classes |= ROUNDABOUT;
+        String oneway = way.get("oneway");
+        if ("yes".equals(oneway)) classes |= ONEWAY_FORWARD;
+        else if ("-1".equals(oneway)) classes |= ONEWAY_BACKWARD;
+        return classes;
+    }
+
+    /**
+     * Check if classes include any of a mask
+     * @param classes The classes of a way
+     * @param mask The classes to look for
+     * @return true if any of the classes in the mask are set
+     */
+    public static boolean isAny(int classes, int mask) {
+        return (classes & mask) != 0;
+    }
+}
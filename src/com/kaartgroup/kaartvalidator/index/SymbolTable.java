@@ -0,0 +1,77 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interned tag values, numbered with int symbols so that values can be compared with ==.
+ * Symbols are only added while the table is built, after that the table is read only and may be shared between
+ * threads.
+ * @author Taylor Smock
+ */
+public final class SymbolTable {
+    /** The symbol of a missing value */
+    public static final int NONE = 0;
+    /** The symbol of a value that is not in the table */
+    public static final int UNKNOWN = -1;
+
+    private final Map<String, Integer> symbols = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    /**
+     * Create a table
+     * @param predefined Values that get the symbols 1, 2, ... in order
+     */
+    SymbolTable(String... predefined) {
+        values.add(null);
+        for (String value : predefined) {
+            intern(value);
+        }
+    }
+
+    /**
+     * Get the symbol of a value, adding it if it is not in the table yet
+     * @param value The value
+     * @return The symbol, {@link #NONE} for null
+     */
+    int intern(String value) {
+        if (value == null) return NONE;
+        Integer symbol = symbols.get(value);
+        if (symbol == null) {
+            symbol = values.size();
+            symbols.put(value, symbol);
+            values.add(value);
+        }
+        return symbol;
+    }
+
+    /**
+     * Get the symbol of a value
+     * @param value The value
+     * @return The symbol, {@link #NONE} for null, or {@link #UNKNOWN} if the value is not in the table
+     */
+    public int find(String value) {
+        if (value == null) return NONE;
+        Integer symbol = symbols.get(value);
+        return symbol == null ? UNKNOWN : symbol;
+    }
+
+    /**
+     * Get the value of a symbol
+     * @param symbol The symbol
+     * @return The value, or null for {@link #NONE} and {@link #UNKNOWN}
+     */
+    public String getString(int symbol) {
+        return symbol <= NONE ? null : values.get(symbol);
+    }
+
+    /**
+     * @return The number of values in the table
+     */
+    public int size() {
+        return values.size() - 1;
+    }
+}
@@ -0,0 +1,190 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.index;
+
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * The values of the tags that the Kaart tests compare, copied out of the ways of a {@link HighwayGraph} into one
+ * array per key, indexed by way ordinal. Values are stored as {@link SymbolTable} symbols, so two ways have the
+ * same value when their symbols are ==.
+ * @author Taylor Smock
+ */
+public final class TagColumns {
+    public static final int NAME = 0;
+    public static final int REF = 1;
+    public static final int HIGHWAY = 2;
+    public static final int ONEWAY = 3;
+    public static final int LANES = 4;
+    public static final int LANES_FORWARD = 5;
+    public static final int LANES_BACKWARD = 6;
+    public static final int TURN_LANES = 7;
+    public static final int TURN_LANES_FORWARD = 8;
+    public static final int TURN_LANES_BACKWARD = 9;
+    public static final int DESTINATION = 10;
+    public static final int DESTINATION_REF = 11;
+    public static final int DESTINATION_STREET = 12;
+    public static final int MAXSPEED = 13;
+    public static final int MAXSPEED_FORWARD = 14;
+    public static final int MAXSPEED_BACKWARD = 15;
+
+    private static final String[] KEYS = {"name", "ref", "highway", "oneway", "lanes", "lanes:forward",
+            "lanes:backward", "turn:lanes", "turn:lanes:forward", "turn:lanes:backward", "destination",
+            "destination:ref", "destination:street", "maxspeed", "maxspeed:forward", "maxspeed:backward"};
+
+    /** The symbol of "yes" */
+    public static final int YES = 1;
+    /** The symbol of "no" */
+    public static final int NO = 2;
+    /** The symbol of "-1" */
+    public static final int REVERSE = 3;
+
+    private final HighwayGraph graph;
+    private final SymbolTable symbols;
+    /** The symbols of each column, indexed by way ordinal */
+    private final int[][] columns;
+
+    private TagColumns(HighwayGraph graph, SymbolTable symbols, int[][] columns) {
+        this.graph = graph;
+        this.symbols = symbols;
+        this.columns = columns;
+    }
+
+    /**
+     * Copy the values of the ways of a graph
+     * @param graph The highway graph
+     * @return The columns
+     */
+    public static TagColumns build(HighwayGraph graph) {
+        SymbolTable symbols = new SymbolTable("yes", "no", "-1");
+        int wayCount = graph.getWayCount();
+        int[][] columns = new int[KEYS.length][wayCount];
+        for (int w = 0; w < wayCount; w++) {
+            Way way = graph.getWay(w);
+            if (!way.hasKeys()) continue;
+            for (int column = 0; column < KEYS.length; column++) {
+                columns[column][w] = symbols.intern(way.get(KEYS[column]));
+            }
+        }
+        return new TagColumns(graph, symbols, columns);
+    }
+
+    /**
+     * Get the column of a key
+     * @param key The key
+     * @return The column, or -1 if the key is not copied
+     */
+    public static int getColumn(String key) {
+        for (int column = 0; column < KEYS.length; column++) {
+            if (KEYS[column].equals(key)) return column;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the key of a column
+     * @param column The column
+     * @return The key
+     */
+    public static String getKey(int column) {
+        return KEYS[column];
+    }
+
+    /**
+     * @return The graph the values were copied from
+     */
+    public HighwayGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return The symbols of the values
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Get the value of a way
+     * @param column The column
+     * @param way The way ordinal
+     * @return The symbol of the value, {@link SymbolTable#NONE} if the way does not have the key
+     */
+    public int get(int column, int way) {
+        return columns[column][way];
+    }
+
+    /**
+     * Get the value of a way
+     * @param column The column
+     * @param way The way
+     * @return The symbol of the value, {@link SymbolTable#NONE} if the way does not have the key or is not a highway
+     */
+    public int get(int column, Way way) {
+        int ordinal = graph.getWayOrdinal(way);
+        return ordinal < 0 ? SymbolTable.NONE : columns[column][ordinal];
+    }
+
+    /**
+     * Check if a way has a key
+     * @param column The column
+     * @param way The way ordinal
+     * @return true if the way has a value for the key of the column
+     */
+    public boolean has(int column, int way) {
+        return columns[column][way] != SymbolTable.NONE;
+    }
+
+    /**
+     * Check if a way has a key
+     * @param column The column
+     * @param way The way
+     * @return true if the way is a highway and has a value for the key of the column
+     */
+    public boolean has(int column, Way way) {
+        return get(column, way) != SymbolTable.NONE;
+    }
+
+    /**
+     * Check if two ways have the same value
+     * @param column The column
+     * @param first The first way ordinal
+     * @param second The second way ordinal
+     * @return true if both ways have the key, with the same value
+     */
+    public boolean isSame(int column, int first, int second) {
+        int value = columns[column][first];
+        return value != SymbolTable.NONE && value == columns[column][second];
+    }
+
+    /**
+     * Check if two ways have the same value
+     * @param column The column
+     * @param first The first way
+     * @param second The second way
+     * @return true if both ways are highways and have the key, with the same value
+     */
+    public boolean isSame(int column, Way first, Way second) {
+        int value = get(column, first);
+        return value != SymbolTable.NONE && value == get(column, second);
+    }
+
+    /**
+     * Get the value of a way
+     * @param column The column
+     * @param way The way ordinal
+     * @return The value, or null if the way does not have the key
+     */
+    public String getString(int column, int way) {
+        return symbols.getString(columns[column][way]);
+    }
+
+    /**
+     * Get the value of a way
+     * @param column The column
+     * @param way The way
+     * @return The value, or null if the way does not have the key or is not a highway
+     */
+    public String getString(int column, Way way) {
+        return symbols.getString(get(column, way));
+    }
+}
@@ -0,0 +1,140 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.utils;
+
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The Java Flight Recorder events of {@link ValidationEvents}. Only {@link ValidationEvents} refers to this class, by
+ * name, so that nothing else links against jdk.jfr.
+ * @author Taylor Smock
+ */
+final class FlightRecorderEvents implements ValidationEvents.Recorder {
+    private static final String CATEGORY = "Kaart Validator";
+    private final EventType testPhase = EventType.getEventType(TestPhase.class);
+    private final EventType primitiveCheck = EventType.getEventType(PrimitiveCheck.class);
+    private final EventType indexBuild = EventType.getEventType(IndexBuild.class);
+
+    /**
+     * A phase of a test run: startTest (up to the first visit), visit, or endTest (after the last visit)
+     */
+    @Name("com.kaartgroup.kaartvalidator.TestPhase")
+    @Label("Kaart Test Phase")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class TestPhase extends Event {
+        @Label("Test")
+        String test;
+        @Label("Phase")
+        String phase;
+        @Label("Primitives")
+        @Description("The primitives visited, or the units checked for endTest")
+        int primitives;
+        @Label("Errors")
+        int errors;
+    }
+
+    /**
+     * The check of a single unit (usually a way) by {@code KaartTest#checkAll}. Only slow checks are recorded by
+     * default.
+     */
+    @Name("com.kaartgroup.kaartvalidator.PrimitiveCheck")
+    @Label("Kaart Primitive Check")
+    @Category(CATEGORY)
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class PrimitiveCheck extends Event {
+        @Label("Test")
+        String test;
+        @Label("Primitive")
+        @Description("The type and id of the primitive, e.g. way/123")
+        String primitive;
+        @Label("Errors")
+        int errors;
+        @Label("Failed")
+        @Description("The check threw an exception")
+        boolean failed;
+    }
+
+    /**
+     * The build of a dataset index or a cache
+     */
+    @Name("com.kaartgroup.kaartvalidator.IndexBuild")
+    @Label("Kaart Index Build")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class IndexBuild extends Event {
+        @Label("Index")
+        String index;
+        @Label("Size")
+        @Description("The number of ways, relations, primitives or entries the index was built from")
+        int size;
+    }
+
+    @Override
+    public Object beginTestPhase() {
+        if (!testPhase.isEnabled()) return null;
+        TestPhase event = new TestPhase();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void commitTestPhase(Object started, String test, String phase, int primitives, int errors) {
+        TestPhase event = (TestPhase) started;
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.test = test;
+        event.phase = phase;
+        event.primitives = primitives;
+        event.errors = errors;
+        event.commit();
+    }
+
+    @Override
+    public Object beginPrimitiveCheck() {
+        if (!primitiveCheck.isEnabled()) return null;
+        PrimitiveCheck event = new PrimitiveCheck();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void commitPrimitiveCheck(Object started, String test, OsmPrimitive primitive, int errors, boolean failed) {
+        PrimitiveCheck event = (PrimitiveCheck) started;
+        event.end();
+        // Below the threshold, the primitive is not even formatted
+        if (!event.shouldCommit()) return;
+        event.test = test;
+        event.primitive = primitive.getType().getAPIName() + "/" + primitive.getUniqueId();
+        event.errors = errors;
+        event.failed = failed;
+        event.commit();
+    }
+
+    @Override
+    public Object beginIndexBuild() {
+        if (!indexBuild.isEnabled()) return null;
+        IndexBuild event = new IndexBuild();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void commitIndexBuild(Object started, String index, int size) {
+        IndexBuild event = (IndexBuild) started;
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.index = index;
+        event.size = size;
+        event.commit();
+    }
+}
@@ -2,9 +2,16 @@
 package com.kaartgroup.kaartvalidator.utils;
 
 import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.data.preferences.IntegerProperty;
 
 public final class KaartProperties {
 	public static final BooleanProperty CHECK_TURN_LANES_AT_INTERSECTIONS = new BooleanProperty("kaartvalidator.check_turn_lanes_at_intersections", false);
+	/** Only check again what changed since the last validation run */
+	public static final BooleanProperty INCREMENTAL_VALIDATION = new BooleanProperty("kaartvalidator.incremental_validation", false);
+	/** The number of test runs whose timings are kept for the preferences */
+	public static final IntegerProperty TIMING_HISTORY = new IntegerProperty("kaartvalidator.timing_history", 100);
+	/** Time the check of every unit, and keep the slowest of each test */
+	public static final BooleanProperty PROFILE_CHECKS = new BooleanProperty("kaartvalidator.profile_checks", false);
 	private KaartProperties() {
 		// Empty
 	}
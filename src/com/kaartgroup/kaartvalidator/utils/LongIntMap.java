@@ -0,0 +1,83 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.utils;
+
+/**
+ * An open addressing map from long keys to int values that does not box
+ * @author Taylor Smock
+ */
+public final class LongIntMap {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    /**
+     * Create a new map
+     * @param expectedSize The expected number of entries
+     */
+    public LongIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        java.util.Arrays.fill(keys, EMPTY);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Get the value for a key
+     * @param key The key, not {@link Long#MIN_VALUE}
+     * @return The value, or -1 if there is no value for the key
+     */
+    public int get(long key) {
+        int slot = hash(key) & mask;
+        while (true) {
+            long current = keys[slot];
+            if (current == key) return values[slot];
+            if (current == EMPTY) return -1;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Set the value for a key
+     * @param key The key, not {@link Long#MIN_VALUE}
+     * @param value The value
+     */
+    public void put(long key, int value) {
+        if ((size + 1) * 2 > keys.length) resize();
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == EMPTY) size++;
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    /**
+     * @return The number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        mask = keys.length - 1;
+        size = 0;
+        java.util.Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) put(oldKeys[i], oldValues[i]);
+        }
+    }
+}
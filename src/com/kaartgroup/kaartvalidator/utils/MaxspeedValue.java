@@ -0,0 +1,177 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openstreetmap.josm.tools.Logging;
+
+/**
+ * A normalized maxspeed value. Each distinct tag value is parsed once per JVM, and values that mean the same speed
+ * (e.g., "50", "50 km/h", "31 mph" and "ZA:urban" when it is 50) have the same {@link #getKey() key}.
+ * @author Taylor Smock
+ */
+public final class MaxspeedValue {
+    private static final String IMPLICIT_VALUES = "/data/maxspeed/implicit.txt";
+    private static final double KMH_PER_MPH = 1.609344;
+    private static final double KMH_PER_KNOT = 1.852;
+    /** The key of maxspeed=none */
+    private static final int NONE = Short.MAX_VALUE + 1;
+    /** The key of maxspeed=walk */
+    private static final int WALK = NONE + 1;
+
+    private static final Map<String, MaxspeedValue> VALUES = new ConcurrentHashMap<>();
+    /** Values that could not be parsed get their own negative key */
+    private static final AtomicInteger UNKNOWN_KEYS = new AtomicInteger();
+    private static Map<String, String> implicitValues;
+
+    private final short kmh;
+    private final boolean implicit;
+    private final int key;
+
+    private MaxspeedValue(short kmh, boolean implicit, int key) {
+        this.kmh = kmh;
+        this.implicit = implicit;
+        this.key = key;
+    }
+
+    /**
+     * Get the normalized value of a maxspeed tag
+     * @param value The tag value
+     * @return The normalized value, or null if the value is null
+     */
+    public static MaxspeedValue of(String value) {
+        if (value == null) return null;
+        return VALUES.computeIfAbsent(value, MaxspeedValue::parse);
+    }
+
+    /**
+     * Check if two maxspeed tag values mean the same speed
+     * @param first The first value, may be null
+     * @param second The second value, may be null
+     * @return true if both values are null, or if they have the same key
+     */
+    public static boolean isEquivalent(String first, String second) {
+        if (first == null || second == null) return first == second;
+        return of(first).getKey() == of(second).getKey();
+    }
+
+    private static MaxspeedValue parse(String value) {
+        String trimmed = value.trim();
+        MaxspeedValue explicit = parseExplicit(trimmed);
+        if (explicit != null) return explicit;
+        int colon = trimmed.indexOf(':');
+        if (colon > 0) {
+            // An implicit value, e.g. RU:urban
+            String speed = getImplicitValues().get(trimmed);
+            MaxspeedValue implied = speed == null ? null : parseExplicit(speed);
+            if (implied != null) return new MaxspeedValue(implied.kmh, true, implied.key);
+            return new MaxspeedValue((short) 0, true, -UNKNOWN_KEYS.incrementAndGet());
+        }
+        return new MaxspeedValue((short) 0, false, -UNKNOWN_KEYS.incrementAndGet());
+    }
+
+    /**
+     * Parse a number with an optional unit (km/h, mph, knots), "none" or "walk"
+     */
+    private static MaxspeedValue parseExplicit(String value) {
+        if ("none".equals(value)) return new MaxspeedValue((short) 0, false, NONE);
+        if ("walk".equals(value)) return new MaxspeedValue((short) 0, false, WALK);
+        int end = 0;
+        while (end < value.length() && (Character.isDigit(value.charAt(end)) || value.charAt(end) == '.')) {
+            end++;
+        }
+        if (end == 0) return null;
+        double number;
+        try {
+            number = Double.parseDouble(value.substring(0, end));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        String unit = value.substring(end).trim();
+        double factor;
+        switch (unit) {
+        case "":
+        case "km/h":
+        case "kmh":
+        case "kph":
+            factor = 1;
+            break;
+        case "mph":
+            factor = KMH_PER_MPH;
+            break;
+        case "knots":
+            factor = KMH_PER_KNOT;
+            break;
+        default:
+            return null;
+        }
+        long kmh = Math.round(number * factor);
+        if (kmh <= 0 || kmh > Short.MAX_VALUE) return null;
+        return new MaxspeedValue((short) kmh, false, (int) kmh);
+    }
+
+    private static synchronized Map<String, String> getImplicitValues() {
+        if (implicitValues == null) {
+            Map<String, String> values = new HashMap<>();
+            try (InputStream stream = MaxspeedValue.class.getResourceAsStream(IMPLICIT_VALUES)) {
+                if (stream != null) {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.trim().isEmpty() || line.startsWith("#")) continue;
+                        String[] fields = line.split("\t");
+                        if (fields.length == 2) values.put(fields[0].trim(), fields[1].trim());
+                    }
+                }
+            } catch (IOException e) {
+                Logging.error(e);
+            }
+            implicitValues = Collections.unmodifiableMap(values);
+        }
+        return implicitValues;
+    }
+
+    /**
+     * @return The speed in km/h, or 0 if it is not known (including none and walk)
+     */
+    public short getKmh() {
+        return kmh;
+    }
+
+    /**
+     * @return true if the value is an implicit value (e.g., RU:urban)
+     */
+    public boolean isImplicit() {
+        return implicit;
+    }
+
+    /**
+     * @return true if the speed in km/h is known
+     */
+    public boolean isKnown() {
+        return kmh > 0;
+    }
+
+    /**
+     * Get the key of the value. Values that mean the same speed have the same key; a value that could not be
+     * understood only has the same key as itself.
+     * @return The key
+     */
+    public int getKey() {
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return "MaxspeedValue [kmh=" + kmh + ", implicit=" + implicit + ", key=" + key + "]";
+    }
+}
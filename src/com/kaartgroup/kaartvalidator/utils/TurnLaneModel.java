@@ -0,0 +1,260 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.utils;
+
+import java.util.Arrays;
+
+/**
+ * An immutable model of a turn:lanes value: the number of lanes, and a bitmask of turn indications for each lane.
+ * The value is kept, so that the lanes are written back with the indications in the order of the value.
+ * @author Taylor Smock
+ */
+public final class TurnLaneModel {
+    /** The lane has no indication ("none" or empty, a lane of only spaces is {@link #THROUGH}) */
+    public static final int NONE = 1;
+    public static final int REVERSE = 1 << 1;
+    public static final int SHARP_LEFT = 1 << 2;
+    public static final int LEFT = 1 << 3;
+    public static final int SLIGHT_LEFT = 1 << 4;
+    public static final int THROUGH = 1 << 5;
+    public static final int SLIGHT_RIGHT = 1 << 6;
+    public static final int RIGHT = 1 << 7;
+    public static final int SHARP_RIGHT = 1 << 8;
+    public static final int MERGE_TO_LEFT = 1 << 9;
+    public static final int MERGE_TO_RIGHT = 1 << 10;
+    /** The lane has an indication that is not known */
+    public static final int OTHER = 1 << 11;
+
+    /** All turns to the left */
+    public static final int LEFT_TURNS = SHARP_LEFT | LEFT | SLIGHT_LEFT;
+    /** All turns to the right */
+    public static final int RIGHT_TURNS = SHARP_RIGHT | RIGHT | SLIGHT_RIGHT;
+    /** All merges */
+    public static final int MERGES = MERGE_TO_LEFT | MERGE_TO_RIGHT;
+
+    /** The indications, in the order they are written in a lane */
+    private static final String[] NAMES = {"none", "reverse", "sharp_left", "left", "slight_left", "through",
+            "slight_right", "right", "sharp_right", "merge_to_left", "merge_to_right"};
+
+    /** A value without any lanes */
+    public static final TurnLaneModel EMPTY = new TurnLaneModel(new int[0], null, "", null);
+
+    private final int[] lanes;
+    /** Unknown indications for each lane, null if there are none */
+    private final String[] others;
+    /** The parsed value */
+    private final String value;
+    /** The lane of the value for each lane, null if they are the same */
+    private final int[] valueLanes;
+    private TurnLaneModel withoutLeft;
+    private TurnLaneModel withoutRight;
+    private TurnLaneModel withoutBoth;
+
+    private TurnLaneModel(int[] lanes, String[] others, String value, int[] valueLanes) {
+        this.lanes = lanes;
+        this.others = others;
+        this.value = value;
+        this.valueLanes = valueLanes;
+    }
+
+    /**
+     * Parse a turn:lanes value
+     * @param value The value (e.g., "left|through;right|")
+     * @return The model of the value
+     */
+    public static TurnLaneModel parse(String value) {
+        int length = value.length();
+        int count = 1;
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) == '|') count++;
+        }
+        int[] lanes = new int[count];
+        String[] others = null;
+        int lane = 0;
+        int laneStart = 0;
+        int tokenStart = 0;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? value.charAt(i) : '|';
+            if (c != ';' && c != '|') continue;
+            int indication = indication(value, tokenStart, i);
+            lanes[lane] |= indication;
+            if (indication == OTHER) {
+                if (others == null) others = new String[count];
+                String token = value.substring(tokenStart, i).trim();
+                others[lane] = others[lane] == null ? token : others[lane].concat(";").concat(token);
+            }
+            tokenStart = i + 1;
+            if (c == '|') {
+                // Like before the model, a lane of only spaces goes through
+                if (lanes[lane] == 0) {
+                    lanes[lane] = i > laneStart && value.substring(laneStart, i).trim().isEmpty() ? THROUGH : NONE;
+                }
+                lane++;
+                laneStart = i + 1;
+            }
+        }
+        return new TurnLaneModel(lanes, others, value, null);
+    }
+
+    private static int indication(String value, int start, int end) {
+        while (start < end && value.charAt(start) == ' ') start++;
+        while (end > start && value.charAt(end - 1) == ' ') end--;
+        if (start == end) return 0;
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].length() == end - start && value.regionMatches(start, NAMES[i], 0, end - start)) {
+                return 1 << i;
+            }
+        }
+        return OTHER;
+    }
+
+    /**
+     * @return The number of lanes
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Get the indications of a lane
+     * @param lane The lane index, from the left
+     * @return The bitmask of indications
+     */
+    public int getLane(int lane) {
+        return lanes[lane];
+    }
+
+    /**
+     * Count the lanes that have all of the given indications
+     * @param indications The bitmask of indications
+     * @return The number of lanes with all of the indications
+     */
+    public int countLanesWithAll(int indications) {
+        int count = 0;
+        for (int lane : lanes) {
+            if ((lane & indications) == indications) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Count the lanes that have any of the given indications
+     * @param indications The bitmask of indications
+     * @return The number of lanes with any of the indications
+     */
+    public int countLanesWithAny(int indications) {
+        int count = 0;
+        for (int lane : lanes) {
+            if ((lane & indications) != 0) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Check if all lanes only go forward
+     * @return true if there are lanes, and none of them turn or merge
+     */
+    public boolean isOnlyForward() {
+        return lanes.length > 0 && countLanesWithAny(LEFT_TURNS | RIGHT_TURNS | MERGES) == 0;
+    }
+
+    /**
+     * Remove turns from the lanes. Lanes that have no indications left are removed.
+     * @param turns The turns to remove, usually {@link #LEFT_TURNS} and/or {@link #RIGHT_TURNS}
+     * @return The remaining lanes
+     */
+    public TurnLaneModel without(int turns) {
+        if (turns == LEFT_TURNS) {
+            if (withoutLeft == null) withoutLeft = remove(turns);
+            return withoutLeft;
+        } else if (turns == RIGHT_TURNS) {
+            if (withoutRight == null) withoutRight = remove(turns);
+            return withoutRight;
+        } else if (turns == (LEFT_TURNS | RIGHT_TURNS)) {
+            if (withoutBoth == null) withoutBoth = remove(turns);
+            return withoutBoth;
+        }
+        return remove(turns);
+    }
+
+    private TurnLaneModel remove(int turns) {
+        int[] remaining = new int[lanes.length];
+        int[] remainingLanes = new int[lanes.length];
+        String[] remainingOthers = others == null ? null : new String[lanes.length];
+        int count = 0;
+        boolean changed = false;
+        for (int i = 0; i < lanes.length; i++) {
+            int lane = lanes[i] & ~turns;
+            changed |= lane != lanes[i];
+            if (lane == 0) continue;
+            if (remainingOthers != null) remainingOthers[count] = others[i];
+            remainingLanes[count] = valueLanes == null ? i : valueLanes[i];
+            remaining[count++] = lane;
+        }
+        if (!changed) return this;
+        return new TurnLaneModel(Arrays.copyOf(remaining, count),
+                remainingOthers == null ? null : Arrays.copyOf(remainingOthers, count), value,
+                Arrays.copyOf(remainingLanes, count));
+    }
+
+    /**
+     * Check if the lanes are the same, where "none" is the same as no indication
+     * @param other The other lanes
+     * @return true if the lanes have the same indications
+     */
+    public boolean equalsIgnoringNone(TurnLaneModel other) {
+        if (other == null || other.lanes.length != lanes.length) return false;
+        for (int i = 0; i < lanes.length; i++) {
+            if ((lanes[i] & ~NONE) != (other.lanes[i] & ~NONE)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof TurnLaneModel)) return false;
+        TurnLaneModel other = (TurnLaneModel) obj;
+        return Arrays.equals(lanes, other.lanes) && Arrays.equals(others, other.others);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(lanes) + Arrays.hashCode(others);
+    }
+
+    /**
+     * @return The lanes as a turn:lanes value, with the remaining indications of each lane in the order of the parsed
+     * value. Lanes without an indication are "none", and lanes of only spaces are "through".
+     */
+    @Override
+    public String toString() {
+        int valueLaneCount = 1;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '|') valueLaneCount++;
+        }
+        // The start of each lane of the value, and the end of the value after the last lane
+        int[] laneStarts = new int[valueLaneCount + 1];
+        for (int i = 0, lane = 1; i < value.length(); i++) {
+            if (value.charAt(i) == '|') laneStarts[lane++] = i + 1;
+        }
+        laneStarts[valueLaneCount] = value.length() + 1;
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < lanes.length; i++) {
+            if (i > 0) builder.append('|');
+            int lane = valueLanes == null ? i : valueLanes[i];
+            int end = laneStarts[lane + 1] - 1;
+            int start = builder.length();
+            int tokenStart = laneStarts[lane];
+            for (int j = tokenStart; j <= end; j++) {
+                if (j < end && value.charAt(j) != ';') continue;
+                if ((lanes[i] & indication(value, tokenStart, j)) != 0) {
+                    if (builder.length() > start) builder.append(';');
+                    builder.append(value.substring(tokenStart, j).trim());
+                }
+                tokenStart = j + 1;
+            }
+            if (builder.length() == start) builder.append(lanes[i] == THROUGH ? "through" : "none");
+        }
+        return builder.toString();
+    }
+}
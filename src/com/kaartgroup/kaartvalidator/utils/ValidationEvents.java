@@ -0,0 +1,103 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.utils;
+
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.tools.Logging;
+
+/**
+ * Java Flight Recorder events for the work of the Kaart tests. The begin methods return null when no recording has
+ * the event enabled, and the commit methods ignore null, so nothing is allocated or timed without a recording.
+ * <p>
+ * The events themselves are in a class that is only loaded by name, so on Java runtimes without jdk.jfr (Java 8)
+ * no events are recorded, and nothing fails.
+ * @author Taylor Smock
+ */
+public final class ValidationEvents {
+    private static final String RECORDER = "com.kaartgroup.kaartvalidator.utils.FlightRecorderEvents";
+    private static final Recorder EVENTS = loadRecorder();
+
+    /**
+     * The flight recorder events, the events are opaque outside of the implementation
+     */
+    interface Recorder {
+        Object beginTestPhase();
+
+        void commitTestPhase(Object event, String test, String phase, int primitives, int errors);
+
+        Object beginPrimitiveCheck();
+
+        void commitPrimitiveCheck(Object event, String test, OsmPrimitive primitive, int errors, boolean failed);
+
+        Object beginIndexBuild();
+
+        void commitIndexBuild(Object event, String index, int size);
+    }
+
+    private ValidationEvents() {
+        // Hide constructor
+    }
+
+    private static Recorder loadRecorder() {
+        try {
+            return (Recorder) Class.forName(RECORDER).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            Logging.debug("Flight recorder events are not available: {0}", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return A started test phase event, or null if it is not recorded
+     */
+    public static Object beginTestPhase() {
+        return EVENTS == null ? null : EVENTS.beginTestPhase();
+    }
+
+    /**
+     * Commit a test phase event
+     * @param event The event from {@link #beginTestPhase()}, may be null
+     * @param test The test
+     * @param phase The phase
+     * @param primitives The primitives visited or checked
+     * @param errors The errors found
+     */
+    public static void commit(Object event, String test, String phase, int primitives, int errors) {
+        if (event != null) EVENTS.commitTestPhase(event, test, phase, primitives, errors);
+    }
+
+    /**
+     * @return A started primitive check event, or null if it is not recorded
+     */
+    public static Object beginPrimitiveCheck() {
+        return EVENTS == null ? null : EVENTS.beginPrimitiveCheck();
+    }
+
+    /**
+     * Commit a primitive check event
+     * @param event The event from {@link #beginPrimitiveCheck()}, may be null
+     * @param test The test
+     * @param primitive The checked primitive
+     * @param errors The errors found for the primitive
+     * @param failed true if the check threw an exception
+     */
+    public static void commit(Object event, String test, OsmPrimitive primitive, int errors, boolean failed) {
+        if (event != null) EVENTS.commitPrimitiveCheck(event, test, primitive, errors, failed);
+    }
+
+    /**
+     * @return A started index build event, or null if it is not recorded
+     */
+    public static Object beginIndexBuild() {
+        return EVENTS == null ? null : EVENTS.beginIndexBuild();
+    }
+
+    /**
+     * Commit an index build event
+     * @param event The event from {@link #beginIndexBuild()}, may be null
+     * @param index The name of the index
+     * @param size The number of things the index was built from
+     */
+    public static void commit(Object event, String index, int size) {
+        if (event != null) EVENTS.commitIndexBuild(event, index, size);
+    }
+}
@@ -6,29 +6,43 @@ package com.kaartgroup.kaartvalidator.validation;
 import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.openstreetmap.josm.command.ChangePropertyCommand;
+import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.Tag;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.validation.Severity;
-import org.openstreetmap.josm.data.validation.Test;
 import org.openstreetmap.josm.data.validation.TestError;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Territories;
+
+import com.kaartgroup.kaartvalidator.abbreviations.AbbreviationCache;
+import com.kaartgroup.kaartvalidator.abbreviations.AbbreviationDictionaries;
+import com.kaartgroup.kaartvalidator.abbreviations.AbbreviationDictionary;
+import com.kaartgroup.kaartvalidator.abbreviations.AbbreviationMatcher;
+import com.kaartgroup.kaartvalidator.index.Candidates;
 
 /**
  * @author tsmock
  *
  */
-public class Abbreviations extends Test {
+public class Abbreviations extends KaartTest {
     private static final int ABBRCODE = 5100;
     public static final int CONTAINS_ABBREVIATION = ABBRCODE + 0;
 
+    /** The maximum number of distinct name values to remember in a run */
+    public static final int CACHE_SIZE = 50_000;
+
     private List<Way> ways;
-    private HashMap<String[], ArrayList<String>> abbreviations;
+    private AbbreviationCache cache;
+    /** Languages of unqualified name tags, by one degree cell */
+    private Map<Integer, String> regionLanguages;
     public Abbreviations() {
         super(tr("Check for abbreviations in road names"), tr("Looks abbreviations such as Str, St, etc."));
     }
@@ -36,190 +50,32 @@ public class Abbreviations extends Test {
     @Override
     public void startTest(ProgressMonitor monitor) {
         super.startTest(monitor);
-        ways = new LinkedList<>();
-        abbreviations = new HashMap<>();
-        addGreekAbbreviations();
-        addEnglishAbbreviations();
+        ways = new ArrayList<>();
+        cache = new AbbreviationCache(CACHE_SIZE);
+        regionLanguages = new ConcurrentHashMap<>();
     }
 
     @Override
     public void endTest() {
-        Way pWay = null;
-        try {
-            for (Way way : ways) {
-                pWay = way;
-                checkForAbbreviations(pWay);
-            }
-        } catch (Exception e) {
-            if (pWay != null) {
-                System.out.printf("Way https://osm.org/way/%d caused an error" + System.lineSeparator(), pWay.getOsmId());
-            }
-            e.printStackTrace();
-        }
+        checkAll(ways, this::checkForAbbreviations);
+        Logging.debug("{0}: {1} abbreviation cache hits, {2} misses", getName(), cache.getHits(), cache.getMisses());
         ways = null;
-        abbreviations = null;
+        cache = null;
+        regionLanguages = null;
         super.endTest();
     }
 
     @Override
-    public void visit(Way way) {
-        if (!way.isUsable() || !way.hasKey("highway")) {
-            return;
-        }
-        boolean nametags = false;
-        for (Tag tag : way.getKeys().getTags()) {
-            if (tag.getKey().contains("name") && !tag.getKey().equals("int_name")) {
-                nametags = true;
-                break;
-            }
-        }
-        if (!nametags) return;
-        ways.add(way);
-    }
-
-    private void addAbbreviations(String abbreviation, String position, String... expansions) {
-        if (expansions.length == 0) {
-            expansions = new String[] {position};
-            position = "unknown";
-        }
-        ArrayList<String> expansion = new ArrayList<String>(Arrays.asList(expansions));
-        if (!position.equals("unknown") && !position.equals("suffix") && !position.equals("prefix")) {
-            expansion.add(position);
-            position = "unknown";
-        }
-        String[] key = new String[] {abbreviation, position};
-        if (abbreviations.containsKey(key)) {
-            for (String tstr : expansion) {
-                if (!abbreviations.get(key).contains(tstr)) {
-                    abbreviations.get(key).add(tstr);
-                }
-            }
-        } else {
-            abbreviations.put(key, expansion);
-        }
-    }
-
-    /* Greek abbreviations are current as of 2018-12-13 */
-    private void addGreekAbbreviations() {
-        addAbbreviations("Αγ.", "prefix", "Αγίας", "Αγίου", "Αγίων");
-        addAbbreviations("Αφοί", "prefix", "Αδελφοί");
-        addAbbreviations("Αφών", "prefix", "Αδελφών");
-        addAbbreviations("Αλ.", "unknown", "Αλέξανδρου");
-        addAbbreviations("ΑΤΕΙ", "prefix", "Ανώτατο Τεχνολογικό Εκπαιδευτικό Ίδρυμα");
-        addAbbreviations("ΑΤ", "prefix", "Αστυνομικό Τμήμα");
-        addAbbreviations("Β.", "prefix", "Βασιλέως", "Βασιλίσσης");
-        addAbbreviations("Βασ.", "prefix", "Βασιλέως", "Βασιλίσσης");
-        addAbbreviations("Γρ.", "unknown", "Γρηγορίου");
-        addAbbreviations("Δ.", "prefix", "Δήμος");
-        addAbbreviations("ΔΣ", "prefix", "Δημοτικό Σχολείο");
-        addAbbreviations("Δημ. Σχ.", "prefix", "Δημοτικό Σχολείο");
-        addAbbreviations("Εθν.", "unknown", "Εθνάρχου", "Εθνική", "Εθνικής");
-        addAbbreviations("Ελ.", "unknown", "Ελευθέριος", "Ελευθερίου");
-        addAbbreviations("ΕΛΤΑ", "prefix", "Ελληνικά Ταχυδρομεία");
-        addAbbreviations("Θεσ/νίκης", "unknown", "Θεσσαλονίκης");
-        addAbbreviations("Ι.Μ.", "prefix", "Ιερά Μονή");
-        addAbbreviations("Ι.Ν.", "prefix", "Ιερός Ναός");
-        addAbbreviations("Κτ.", "prefix", "Κτίριο");
-        addAbbreviations("Κων/νου", "unknown", "Κωνσταντίνου");
-        addAbbreviations("Λ.", "prefix", "Λεωφόρος", "Λίμνη");
-        addAbbreviations("Λεωφ.", "prefix", "Λεωφόρος");
-        addAbbreviations("Ν.", "prefix", "Νέα", "Νέες", "Νέο", "Νέοι", "Νέος", "Νησί", "Νομός");
-        addAbbreviations("Όρ.", "prefix", "Όρος");
-        addAbbreviations("Π.", "prefix", "Παλαιά", "Παλαιές", "Παλαιό", "Παλαιοί", "Παλαιός");
-        addAbbreviations("Π.", "unknown", "Ποταμός");
-        addAbbreviations("ΑΕΙ", "prefix", "Πανεπιστήμιο");
-        addAbbreviations("Παν.", "prefix", "Πανεπιστήμιο");
-        addAbbreviations("Πλ.", "prefix", "Πλατεία");
-        addAbbreviations("Ποτ.", "unknown", "Ποταμός");
-        addAbbreviations("Στρ.", "prefix", "Στρατηγού");
-        addAbbreviations("ΕΛΤΑ", "prefix", "Ταχυδρομείο");
-        addAbbreviations("ΤΕΙ", "prefix", "Τεχνολογικό Εκπαιδευτικό Ίδρυμα");
+    protected int getDependencyDepth() {
+        // The names of a way are checked on their own
+        return 0;
     }
 
-    private void addEnglishAbbreviations() {
-        addAbbreviations("Accs", "Access");
-        addAbbreviations("AFB", "Air Force Base");
-        addAbbreviations("ANGB", "Air National Guard Base");
-        addAbbreviations("Aprt", "Airport");
-        addAbbreviations("Al", "Alley");
-        addAbbreviations("All", "Alley");
-        addAbbreviations("Ally", "Alley");
-        addAbbreviations("Aly", "Alley");
-        addAbbreviations("Alwy", "Alleyway");
-        addAbbreviations("Ambl", "Amble");
-        addAbbreviations("Apts", "Apartments");
-        addAbbreviations("Apch", "Approach");
-        addAbbreviations("Arc", "Arcade");
-        addAbbreviations("Artl", "Arterial");
-        addAbbreviations("Arty", "Artery");
-        addAbbreviations("Av", "Avenue");
-        addAbbreviations("Ave", "Avenue");
-        addAbbreviations("Bk", "Back");
-        addAbbreviations("Ba", "Banan");
-        addAbbreviations("Basn", "Basin");
-        addAbbreviations("Bsn", "Basin");
-        addAbbreviations("Bch", "Beach");
-        addAbbreviations("Bnd", "Bend");
-        addAbbreviations("Blk", "Block");
-        addAbbreviations("Bwlk", "Boardwalk");
-        addAbbreviations("Blvd", "Boulevard");
-        addAbbreviations("Bvd", "Boulevard");
-        addAbbreviations("Bdy", "Boundary");
-        addAbbreviations("Bl", "Bowl");
-        addAbbreviations("Br", "Brace", "Brae", "Bridge");
-        addAbbreviations("Brk", "Break");
-        addAbbreviations("Bdge", "Bridge");
-        addAbbreviations("Bri", "Bridge");
-        addAbbreviations("Bdwy", "Broadway");
-        addAbbreviations("Bway", "Broadway");
-        addAbbreviations("Bwy", "Broadway");
-        addAbbreviations("Brk", "Brook");
-        addAbbreviations("Brw", "brow");
-        addAbbreviations("Bldgs", "Buildings");
-        addAbbreviations("Bldngs", "Buildings");
-        //addAbbreviations("Bus", "Business");
-        addAbbreviations("Bps", "Bypass");
-        addAbbreviations("Byp", "Bypass");
-        addAbbreviations("Bypa", "Bypass");
-        addAbbreviations("Bywy", "Byway");
-        addAbbreviations("Cvn", "Caravan");
-        //addAbbreviations("Caus", "Causway");
-        addAbbreviations("Cswy", "Causeway");
-        addAbbreviations("Cway", "Causeway");
-        addAbbreviations("Cen", "Center", "Centre");
-        addAbbreviations("Ctr", "Center", "Centre");
-        addAbbreviations("Ctrl", "Central");
-        addAbbreviations("Cnwy", "Centreway");
-        addAbbreviations("Ch", "Chase", "Church");
-        addAbbreviations("Cir", "Circle");
-        addAbbreviations("Cct", "Circuit");
-        addAbbreviations("Ci", "Circuit");
-        addAbbreviations("Crc", "Circus");
-        addAbbreviations("Crcs", "Circus");
-        addAbbreviations("Cty", "City");
-        addAbbreviations("Cl", "Close");
-        addAbbreviations("Cmn", "Common");
-        addAbbreviations("Comm", "Common", "Community");
-        addAbbreviations("Cnc", "Concourse");
-        //addAbbreviations("Con", "Concourse");
-        addAbbreviations("Cps", "Copse");
-        addAbbreviations("Cnr", "Corner");
-        addAbbreviations("Crn", "Corner");
-        addAbbreviations("Cso", "Corso");
-        addAbbreviations("Cotts", "Cottages");
-        //addAbbreviations("Co", "County");
-        addAbbreviations("CR", "County Road", "County Route");
-        addAbbreviations("Crt", "Court");
-        addAbbreviations("Ct", "Court");
-        addAbbreviations("Cyd", "Courtyard");
-        addAbbreviations("Ctyd", "Courtyard");
-        addAbbreviations("Ce", "Cove");
-        addAbbreviations("Cov", "Cove");
-
-        // TODO add more
+    @Override
+    protected void visit(Candidates candidates) {
+        ways.addAll(candidates.getNameTagWays());
     }
 
-
     protected void checkForAbbreviations(Way way) {
         for (Tag tag : way.getKeys().getTags()) {
             if (tag.getKey().contains("name") && !tag.getKey().equals("int_name")) {
@@ -230,68 +86,76 @@ public class Abbreviations extends Test {
 
     protected void process(Way way, String key) {
         if (!way.hasKey(key)) return;
-        String name = way.get(key);
-        for (String[] keys : abbreviations.keySet()) {
-            String abbreviation = keys[0];
-            String position = keys[1];
-            Boolean found = false;
-            if (position.equals("unknown") && (name.matches(".*\\b" + abbreviation + "(\\b|\\.\\b).*")
-                    || name.matches(".*\\b" + abbreviation.replace(".", "") + "(\\b|\\.\\b).*"))) {
-                found = true;
-            } else if (position.equals("prefix") && (name.startsWith(abbreviation) || name.startsWith(abbreviation.replace(".", "").concat(" ")))) {
-                found = true;
-            } else if (position.equals("suffix") && (name.endsWith(abbreviation) || name.endsWith(" ".concat(abbreviation.replace(".", ""))))) {
-                found = true;
-            }
-            if (found) {
-                foundAbbreviation(way, key, abbreviation, position, abbreviations.get(keys));
-                break;
-            }
+        String language = AbbreviationDictionaries.getLanguage(key);
+        final String languages = language != null ? language : getRegionLanguages(way);
+        AbbreviationCache.Result result = cache.get(languages, key, way.get(key), value -> analyze(value, languages));
+        if (result.getMatch() != null) {
+            foundAbbreviation(way, key, result);
         }
     }
 
-    protected int countInstancesOf(String findIn, String find) {
-        int index = findIn.indexOf(find);
-        int count = 0;
-        while (index != -1) {
-            count++;
-            findIn = findIn.substring(index + 1);
-            index = findIn.indexOf(find);
-        }
-        return count;
+    /**
+     * Get the languages that unqualified name tags of a way are probably in
+     * @param way The way
+     * @return The comma separated languages, all languages with a dictionary if the region is not known
+     */
+    protected String getRegionLanguages(Way way) {
+        LatLon coor = way.firstNode().getCoor();
+        if (coor == null) return String.join(",", AbbreviationDictionaries.getLanguages().keySet());
+        int lat = (int) Math.floor(coor.lat());
+        int lon = (int) Math.floor(coor.lon());
+        return regionLanguages.computeIfAbsent(lat * 360 + lon, cell -> {
+            LatLon[] samples = {new LatLon(lat + 0.5, lon + 0.5), new LatLon(lat, lon), new LatLon(lat + 1, lon),
+                    new LatLon(lat, lon + 1), new LatLon(lat + 1, lon + 1)};
+            List<String> languages = new ArrayList<>();
+            for (Map.Entry<String, List<String>> entry : AbbreviationDictionaries.getLanguages().entrySet()) {
+                territories:
+                for (String territory : entry.getValue()) {
+                    for (LatLon sample : samples) {
+                        if (Territories.isIso3166Code(territory, sample)) {
+                            languages.add(entry.getKey());
+                            break territories;
+                        }
+                    }
+                }
+            }
+            if (languages.isEmpty()) languages.addAll(AbbreviationDictionaries.getLanguages().keySet());
+            return String.join(",", languages);
+        });
     }
 
-    protected void foundAbbreviation(Way way, String key, String abbreviation, String position, ArrayList<String> expansions) {
-        HashSet<String> arrayList = new HashSet<>();
-        arrayList.addAll(expansions);
-        if (!position.equals("unknown")) {
-            ArrayList<String> array = abbreviations.get(new String[] {abbreviation, "unknown"});
-            if (array != null) {
-                arrayList.addAll(array);
-            }
-        }
-        if (!position.equals("prefix")) {
-            ArrayList<String> array = abbreviations.get(new String[] {abbreviation, "prefix"});
-            if (array != null) {
-                arrayList.addAll(array);
-            }
-        }
-        if (!position.equals("postfix")) {
-            ArrayList<String> array = abbreviations.get(new String[] {abbreviation, "postfix"});
-            if (array != null) {
-                arrayList.addAll(array);
+    /**
+     * Look for an abbreviation in a name
+     * @param name The name to look in
+     * @param languages The comma separated languages to check the name against
+     * @return The abbreviation found, its expansions, and the expanded name if there is only one expansion
+     */
+    protected AbbreviationCache.Result analyze(String name, String languages) {
+        for (String language : languages.split(",")) {
+            AbbreviationDictionary dictionary = AbbreviationDictionaries.get(language);
+            if (dictionary == null) continue;
+            AbbreviationMatcher.Match match = dictionary.getMatcher().find(name);
+            if (match == null) continue;
+            Set<String> expansions = Collections.unmodifiableSet(dictionary.getExpansions(match.getAbbreviation()));
+            String fix = null;
+            if (expansions.size() == 1) {
+                fix = name.substring(0, match.getStart()).concat(expansions.iterator().next())
+                        .concat(name.substring(match.getEnd()));
             }
+            return new AbbreviationCache.Result(match, expansions, fix);
         }
+        return AbbreviationCache.Result.NONE;
+    }
+
+    protected void foundAbbreviation(Way way, String key, AbbreviationCache.Result result) {
+        String abbreviation = result.getMatch().getAbbreviation();
         TestError.Builder testError = TestError.builder(this, Severity.WARNING, CONTAINS_ABBREVIATION)
                 .primitives(way)
-                .message(tr("kaart"), abbreviation.concat(tr(" is an abbreviation in \"")).concat(key).concat(tr("\", try expanding to one of the following: ")).concat(arrayList.toString()));
-        if (arrayList.size() == 1 && way.get(key).contains(abbreviation) && countInstancesOf(way.get(key), abbreviation) == 1) {
-            String replaceValue = way.get(key);
-            replaceValue = replaceValue.replace(abbreviation, expansions.get(0));
-            replaceValue = replaceValue.replace(expansions.get(0).concat("."), expansions.get(0));
-            final String rv = replaceValue;
+                .message(tr("kaart"), abbreviation.concat(tr(" is an abbreviation in \"")).concat(key).concat(tr("\", try expanding to one of the following: ")).concat(result.getExpansions().toString()));
+        if (result.getFix() != null) {
+            final String rv = result.getFix();
             testError.fix(() -> new ChangePropertyCommand(way, key, rv));
         }
-        errors.add(testError.build());
+        addError(testError.build());
     }
 }
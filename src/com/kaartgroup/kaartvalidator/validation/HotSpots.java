@@ -0,0 +1,139 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.validation;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+
+import com.kaartgroup.kaartvalidator.utils.KaartProperties;
+
+/**
+ * The slowest units of the last run of each Kaart test, recorded by {@link KaartTest#checkAll} with
+ * {@link KaartProperties#PROFILE_CHECKS}
+ * @author Taylor Smock
+ */
+public final class HotSpots {
+    /** The number of units kept per test */
+    public static final int TOP_K = 25;
+    private static final Comparator<Entry> FASTEST_FIRST = Comparator.comparingLong(Entry::getNanos);
+    private static final Map<String, List<Entry>> SLOWEST = new TreeMap<>();
+
+    private HotSpots() {
+        // Hide constructor
+    }
+
+    /**
+     * A slow unit
+     */
+    public static final class Entry {
+        /** Weak, so that a removed layer is not kept */
+        private final WeakReference<OsmPrimitive> primitive;
+        private final String name;
+        private final long nanos;
+        private final int errors;
+
+        Entry(OsmPrimitive primitive, long nanos, int errors) {
+            this.primitive = new WeakReference<>(primitive);
+            this.name = primitive.getType().getAPIName() + "/" + primitive.getUniqueId();
+            this.nanos = nanos;
+            this.errors = errors;
+        }
+
+        /**
+         * @return The primitive, or null if its dataset is gone
+         */
+        public OsmPrimitive getPrimitive() {
+            return primitive.get();
+        }
+
+        /**
+         * @return The type and id of the primitive, e.g. way/123
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The time the check of the unit took
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return The number of errors found for the unit
+         */
+        public int getErrors() {
+            return errors;
+        }
+    }
+
+    /**
+     * The {@link #TOP_K} slowest units seen so far, in a heap with the fastest of them on top
+     */
+    static final class Collector {
+        private final PriorityQueue<Entry> heap = new PriorityQueue<>(TOP_K + 1, FASTEST_FIRST);
+
+        /**
+         * Offer a unit, only units that are slower than the fastest kept unit are allocated an entry
+         * @param unit The unit
+         * @param nanos The time its check took
+         * @param errors The errors found for it
+         */
+        void offer(OsmPrimitive unit, long nanos, int errors) {
+            if (heap.size() == TOP_K) {
+                if (nanos <= heap.peek().getNanos()) return;
+                heap.poll();
+            }
+            heap.add(new Entry(unit, nanos, errors));
+        }
+
+        /**
+         * Add the units of a collector that was used by a single check task
+         * @param other The other collector
+         */
+        synchronized void merge(Collector other) {
+            for (Entry entry : other.heap) {
+                if (heap.size() == TOP_K) {
+                    if (entry.getNanos() <= heap.peek().getNanos()) continue;
+                    heap.poll();
+                }
+                heap.add(entry);
+            }
+        }
+
+        /**
+         * @return The kept units, slowest first
+         */
+        synchronized List<Entry> getSlowest() {
+            List<Entry> entries = new ArrayList<>(heap);
+            entries.sort(FASTEST_FIRST.reversed());
+            return entries;
+        }
+    }
+
+    static synchronized void put(String test, List<Entry> entries) {
+        SLOWEST.put(test, Collections.unmodifiableList(entries));
+    }
+
+    /**
+     * @return The slowest units of the last profiled run of each test, by test, slowest first
+     */
+    public static synchronized Map<String, List<Entry>> getSlowest() {
+        return new TreeMap<>(SLOWEST);
+    }
+
+    /**
+     * Forget the recorded units
+     */
+    public static synchronized void clear() {
+        SLOWEST.clear();
+    }
+}
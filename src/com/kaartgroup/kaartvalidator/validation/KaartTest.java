@@ -0,0 +1,485 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.validation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.validation.Test;
+import org.openstreetmap.josm.data.validation.TestError;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.Logging;
+
+import com.kaartgroup.kaartvalidator.index.AffectedWays;
+import com.kaartgroup.kaartvalidator.index.Candidates;
+import com.kaartgroup.kaartvalidator.index.ChangeTracker;
+import com.kaartgroup.kaartvalidator.index.DataSetIndex;
+import com.kaartgroup.kaartvalidator.index.HighwayGraph;
+import com.kaartgroup.kaartvalidator.index.Junctions;
+import com.kaartgroup.kaartvalidator.index.LinkChains;
+import com.kaartgroup.kaartvalidator.index.LinkMotifs;
+import com.kaartgroup.kaartvalidator.index.RestrictionIndex;
+import com.kaartgroup.kaartvalidator.index.RoadChains;
+import com.kaartgroup.kaartvalidator.index.TagColumns;
+import com.kaartgroup.kaartvalidator.utils.KaartProperties;
+import com.kaartgroup.kaartvalidator.utils.ValidationEvents;
+
+/**
+ * Common functionality for the Kaart tests
+ * @author Taylor Smock
+ */
+public abstract class KaartTest extends Test {
+    /** Lists with fewer units than this are checked on the calling thread */
+    public static final int PARALLEL_THRESHOLD = 256;
+    /** The smallest number of units that a parallel task checks on its own */
+    private static final int MIN_TASK_SIZE = 32;
+
+    private volatile DataSetIndex index;
+    /** The errors of the task running on the current thread, if the units are checked with {@link #checkAll} */
+    private final ThreadLocal<List<TestError>> errorBuffer = new ThreadLocal<>();
+    /** The number of calls of {@link #checkAll} in the current run */
+    private int checkCalls;
+    /** The errors of the last run, if it was incremental */
+    private ResultCache results;
+    /** The errors of the current run, if it is incremental */
+    private ResultCache nextResults;
+    /** The thread that runs startTest, visit and endTest, for {@link TestTimings} */
+    private Thread runThread;
+    private long runStart;
+    private long visitStart;
+    private long visitEnd;
+    private long visitNanos;
+    private int visited;
+    private int candidates;
+    private long allocationStart;
+    /** The bytes allocated by checks on other threads than {@link #runThread} */
+    private final LongAdder taskAllocation = new LongAdder();
+    /** The flight recorder event of the current phase, null if it is not recorded */
+    private Object phaseEvent;
+    /** The slowest units of the current run, null unless {@link KaartProperties#PROFILE_CHECKS} is set */
+    private volatile HotSpots.Collector hotSpots;
+
+    /**
+     * Constructor
+     * @param name The name of the test
+     * @param description The description of the test
+     */
+    protected KaartTest(String name, String description) {
+        super(name, description);
+    }
+
+    /**
+     * Get the shared indexes for the dataset of a primitive
+     * @param primitive A primitive of the dataset being validated
+     * @return The indexes of the dataset
+     */
+    protected DataSetIndex getIndex(OsmPrimitive primitive) {
+        DataSetIndex current = index;
+        if (current == null || !current.isFor(primitive.getDataSet())) {
+            current = DataSetIndex.of(primitive.getDataSet());
+            index = current;
+        }
+        return current;
+    }
+
+    /**
+     * Get the highway graph for the dataset of a primitive
+     * @param primitive A primitive of the dataset being validated
+     * @return The highway graph of the dataset
+     */
+    protected HighwayGraph getHighwayGraph(OsmPrimitive primitive) {
+        return getIndex(primitive).getHighwayGraph();
+    }
+
+    /**
+     * Get the highway junctions for the dataset of a primitive
+     * @param primitive A primitive of the dataset being validated
+     * @return The junctions of the dataset
+     */
+    protected Junctions getJunctions(OsmPrimitive primitive) {
+        return getIndex(primitive).getJunctions();
+    }
+
+    /**
+     * Get the highway tag values for the dataset of a primitive
+     * @param primitive A primitive of the dataset being validated
+     * @return The tag values of the highways of the dataset
+     */
+    protected TagColumns getTagColumns(OsmPrimitive primitive) {
+        return getIndex(primitive).getTagColumns();
+    }
+
+    /**
+     * Get the link chains for the dataset of a primitive
+     * @param primitive A primitive of the dataset being validated
+     * @return The link chains of the dataset
+     */
+    protected LinkChains getLinkChains(OsmPrimitive primitive) {
+        return getIndex(primitive).getLinkChains();
+    }
+
+    /**
+     * Get the link motifs for the dataset of a primitive
+     * @param primitive A primitive of the dataset being validated
+     * @return The link motifs of the dataset
+     */
+    protected LinkMotifs getLinkMotifs(OsmPrimitive primitive) {
+        return getIndex(primitive).getLinkMotifs();
+    }
+
+    /**
+     * Get the turn restrictions for the dataset of a primitive
+     * @param primitive A primitive of the dataset being validated
+     * @return The turn restrictions of the dataset
+     */
+    protected RestrictionIndex getRestrictions(OsmPrimitive primitive) {
+        return getIndex(primitive).getRestrictions();
+    }
+
+    /**
+     * Get the road chains for a key for the dataset of a primitive
+     * @param primitive A primitive of the dataset being validated
+     * @param key The key that chained ways share a value for (e.g., name or ref)
+     * @return The road chains of the dataset
+     */
+    protected RoadChains getRoadChains(OsmPrimitive primitive, String key) {
+        return getIndex(primitive).getRoadChains(key);
+    }
+
+    /**
+     * Sort the selection once for all of the Kaart tests, and give the candidates to {@link #visit(Candidates)}
+     */
+    @Override
+    public void visit(Collection<OsmPrimitive> selection) {
+        long start = System.nanoTime();
+        String test = getClass().getSimpleName();
+        if (visitStart == 0) {
+            visitStart = start;
+            ValidationEvents.commit(phaseEvent, test, "startTest", 0, 0);
+        }
+        phaseEvent = ValidationEvents.beginTestPhase();
+        try {
+            visited += selection.size();
+            if (progressMonitor != null) progressMonitor.setTicksCount(selection.size());
+            if (selection.isEmpty() || isCanceled()) return;
+            visit(getIndex(selection.iterator().next()).getCandidates(selection));
+            // The candidates are picked in one pass, so the whole selection is visited at once
+            if (progressMonitor != null) progressMonitor.worked(selection.size());
+        } finally {
+            visitEnd = System.nanoTime();
+            visitNanos += visitEnd - start;
+            ValidationEvents.commit(phaseEvent, test, "visit", selection.size(), 0);
+            phaseEvent = ValidationEvents.beginTestPhase();
+        }
+    }
+
+    /**
+     * Pick the primitives to check from the candidates of the selection
+     * @param candidates The candidates, shared with the other tests of the run
+     */
+    protected abstract void visit(Candidates candidates);
+
+    /**
+     * Add an error. Tests should use this instead of adding to {@link #errors} directly, since the checks may be
+     * running on several threads.
+     * @param error The error to add
+     */
+    protected void addError(TestError error) {
+        List<TestError> buffer = errorBuffer.get();
+        if (buffer != null) {
+            buffer.add(error);
+        } else {
+            errors.add(error);
+        }
+    }
+
+    /**
+     * Check if the errors of a unit from the last run may have changed. Tests whose units depend on more than the
+     * ways within {@link #getDependencyDepth()} shared nodes of the unit should override this.
+     * @param unit The unit
+     * @param affected The ways affected by the changes since the last run
+     * @return true if the unit has to be checked again
+     */
+    protected boolean isAffected(OsmPrimitive unit, AffectedWays affected) {
+        if (unit instanceof Way) return affected.isAffected((Way) unit);
+        if (unit instanceof Node) return affected.isAffected((Node) unit);
+        return true;
+    }
+
+    /**
+     * @return The number of shared nodes that a change goes through to the units it may affect
+     */
+    protected int getDependencyDepth() {
+        return 2;
+    }
+
+    /**
+     * Check units (usually the primitives gathered in visit) on the common fork join pool.
+     * The dataset is read locked until all of the units are checked, so the checks must not modify it.
+     * Errors are kept per unit and added in the order of the units, so the result does not depend on how the
+     * units were scheduled. With {@link KaartProperties#INCREMENTAL_VALIDATION}, units that are not
+     * {@link #isAffected affected} by the changes since the last run reuse the errors of the last run.
+     * @param units The units to check
+     * @param check The check for a single unit, it must only report errors with {@link #addError}
+     * @param <T> The type of the units
+     */
+    protected <T extends OsmPrimitive> void checkAll(List<T> units, Consumer<? super T> check) {
+        int call = checkCalls++;
+        if (units == null || units.isEmpty()) return;
+        candidates += units.size();
+        List<T> list = units instanceof RandomAccess ? units : new ArrayList<>(units);
+        DataSet dataSet = list.get(0).getDataSet();
+        Lock lock = dataSet == null ? null : dataSet.getReadLock();
+        if (lock != null) lock.lock();
+        try {
+            List<TestError>[] unitErrors = isIncremental(dataSet) ? checkChanged(list, check, call, dataSet) : check(list, check, null);
+            for (List<TestError> unitError : unitErrors) {
+                if (unitError != null) errors.addAll(unitError);
+            }
+        } finally {
+            if (lock != null) lock.unlock();
+        }
+    }
+
+    private boolean isIncremental(DataSet dataSet) {
+        return dataSet != null && !partialSelection && KaartProperties.INCREMENTAL_VALIDATION.get();
+    }
+
+    /**
+     * Check the units that are affected by the changes since the last run, and remember the errors of all units
+     * for the next run
+     */
+    private <T extends OsmPrimitive> List<TestError>[] checkChanged(List<T> units, Consumer<? super T> check, int call,
+            DataSet dataSet) {
+        ChangeTracker tracker = ChangeTracker.of(dataSet);
+        if (nextResults == null) {
+            // Get the generation before the graph, changes made while the graph is built are checked again next run
+            long generation = tracker.getGeneration();
+            nextResults = new ResultCache(dataSet, generation, getHighwayGraph(units.get(0)));
+        }
+        ResultCache previous = results;
+        Map<OsmPrimitive, List<TestError>> previousErrors = previous != null && previous.isFor(dataSet)
+                ? previous.getResults(call) : null;
+        List<Way> changed = previousErrors == null ? null : tracker.getChangedSince(previous.getGeneration());
+        List<TestError>[] unitErrors;
+        // Units whose check failed are not remembered, so the next run checks them again
+        boolean[] failed = new boolean[units.size()];
+        if (changed == null) {
+            unitErrors = check(units, check, failed);
+        } else {
+            AffectedWays affected = AffectedWays.build(changed, previous.getGraph(), getHighwayGraph(units.get(0)),
+                    getDependencyDepth());
+            unitErrors = newErrorArray(units.size());
+            List<T> pending = new ArrayList<>();
+            int[] positions = new int[units.size()];
+            for (int i = 0; i < units.size(); i++) {
+                T unit = units.get(i);
+                List<TestError> cached = previousErrors.get(unit);
+                if (cached != null && !isAffected(unit, affected)) {
+                    unitErrors[i] = cached;
+                } else {
+                    positions[pending.size()] = i;
+                    pending.add(unit);
+                }
+            }
+            boolean[] pendingFailed = new boolean[pending.size()];
+            List<TestError>[] pendingErrors = check(pending, check, pendingFailed);
+            for (int i = 0; i < pending.size(); i++) {
+                unitErrors[positions[i]] = pendingErrors[i];
+                failed[positions[i]] = pendingFailed[i];
+            }
+            Logging.debug("{0}: checked {1} of {2} units", getName(), pending.size(), units.size());
+        }
+        Map<OsmPrimitive, List<TestError>> nextErrors = new HashMap<>(units.size() * 2);
+        for (int i = 0; i < units.size(); i++) {
+            if (failed[i]) continue;
+            nextErrors.put(units.get(i), unitErrors[i] == null ? Collections.emptyList() : unitErrors[i]);
+        }
+        nextResults.putResults(call, nextErrors);
+        return unitErrors;
+    }
+
+    /**
+     * Check units, in parallel if there are enough of them
+     * @param failed Set to true for each unit whose check threw, may be null
+     * @return The errors of each unit, null for units without errors
+     */
+    private <T extends OsmPrimitive> List<TestError>[] check(List<T> units, Consumer<? super T> check, boolean[] failed) {
+        List<TestError>[] unitErrors = newErrorArray(units.size());
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        if (units.size() < PARALLEL_THRESHOLD || parallelism < 2) {
+            checkRange(units, 0, units.size(), check, unitErrors, failed);
+        } else {
+            // Build the indexes while holding the lock, a task waiting for the read lock behind a writer would never finish
+            prepareIndexes(getIndex(units.get(0)));
+            int taskSize = Math.max(MIN_TASK_SIZE, units.size() / (parallelism * 8));
+            ForkJoinPool.commonPool().invoke(new CheckTask<>(units, 0, units.size(), taskSize, check, unitErrors, failed));
+        }
+        return unitErrors;
+    }
+
+    /**
+     * Build the indexes that the checks of {@link #checkAll} use, before the checks run in parallel. Indexes that are
+     * built from the dataset take its read lock, and the checks must not build them. Tests that use more than the
+     * highway graph (and the indexes built from it) should override this.
+     * @param dataSetIndex The indexes of the dataset being checked
+     */
+    protected void prepareIndexes(DataSetIndex dataSetIndex) {
+        dataSetIndex.getHighwayGraph();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<TestError>[] newErrorArray(int size) {
+        return new List[size];
+    }
+
+    private <T extends OsmPrimitive> void checkRange(List<T> units, int from, int to, Consumer<? super T> check,
+            List<TestError>[] unitErrors, boolean[] unitFailed) {
+        List<TestError> buffer = new ArrayList<>();
+        List<TestError> previous = errorBuffer.get();
+        errorBuffer.set(buffer);
+        boolean otherThread = Thread.currentThread() != runThread;
+        long allocated = otherThread ? TestTimings.getAllocatedBytes() : -1;
+        String test = getClass().getSimpleName();
+        HotSpots.Collector runSlowest = hotSpots;
+        HotSpots.Collector slowest = runSlowest == null ? null : new HotSpots.Collector();
+        try {
+            for (int i = from; i < to; i++) {
+                T unit = units.get(i);
+                Object event = ValidationEvents.beginPrimitiveCheck();
+                long start = slowest == null ? 0 : System.nanoTime();
+                boolean failed = false;
+                try {
+                    check.accept(unit);
+                } catch (RuntimeException e) {
+                    failed = true;
+                    Logging.warn("{0}: https://osm.org/{1}/{2} caused an error", getName(),
+                            unit.getType().getAPIName(), Long.toString(unit.getOsmId()));
+                    Logging.error(e);
+                    if (unitFailed != null) unitFailed[i] = true;
+                }
+                ValidationEvents.commit(event, test, unit, buffer.size(), failed);
+                if (slowest != null) slowest.offer(unit, System.nanoTime() - start, buffer.size());
+                if (!buffer.isEmpty()) {
+                    unitErrors[i] = new ArrayList<>(buffer);
+                    buffer.clear();
+                }
+            }
+        } finally {
+            if (previous == null) errorBuffer.remove();
+            else errorBuffer.set(previous);
+            if (allocated >= 0) taskAllocation.add(TestTimings.getAllocatedBytes() - allocated);
+            if (slowest != null) runSlowest.merge(slowest);
+        }
+    }
+
+    /**
+     * Check a range of units, splitting it in half until it is small enough
+     */
+    private final class CheckTask<T extends OsmPrimitive> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final transient List<T> units;
+        private final int from;
+        private final int to;
+        private final int taskSize;
+        private final transient Consumer<? super T> check;
+        private final transient List<TestError>[] unitErrors;
+        private final boolean[] unitFailed;
+
+        CheckTask(List<T> units, int from, int to, int taskSize, Consumer<? super T> check, List<TestError>[] unitErrors,
+                boolean[] unitFailed) {
+            this.units = units;
+            this.from = from;
+            this.to = to;
+            this.taskSize = taskSize;
+            this.check = check;
+            this.unitErrors = unitErrors;
+            this.unitFailed = unitFailed;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= taskSize) {
+                checkRange(units, from, to, check, unitErrors, unitFailed);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            CheckTask<T> first = new CheckTask<>(units, from, middle, taskSize, check, unitErrors, unitFailed);
+            first.fork();
+            new CheckTask<>(units, middle, to, taskSize, check, unitErrors, unitFailed).compute();
+            first.join();
+        }
+    }
+
+    /**
+     * Count units that are checked without {@link #checkAll}, for {@link TestTimings}
+     * @param count The number of units
+     */
+    protected void countCandidates(int count) {
+        candidates += count;
+    }
+
+    @Override
+    public void startTest(ProgressMonitor monitor) {
+        phaseEvent = ValidationEvents.beginTestPhase();
+        runStart = System.nanoTime();
+        runThread = Thread.currentThread();
+        allocationStart = TestTimings.getAllocatedBytes();
+        taskAllocation.reset();
+        visitStart = 0;
+        visitEnd = 0;
+        visitNanos = 0;
+        visited = 0;
+        candidates = 0;
+        hotSpots = KaartProperties.PROFILE_CHECKS.get() ? new HotSpots.Collector() : null;
+        super.startTest(monitor);
+        checkCalls = 0;
+        nextResults = null;
+    }
+
+    @Override
+    public void endTest() {
+        // Partial runs (e.g., before upload) do not see all of the units, so they keep the results of the last full run
+        if (!partialSelection) results = nextResults;
+        nextResults = null;
+        index = null;
+        super.endTest();
+        recordTiming();
+    }
+
+    /**
+     * Record the run in {@link TestTimings}. Subclasses set up in startTest before the first visit, and check in
+     * endTest after the last visit, so the phases are split at the visits.
+     */
+    private void recordTiming() {
+        long end = System.nanoTime();
+        long startTestNanos = visitStart == 0 ? 0 : visitStart - runStart;
+        long endTestNanos = end - (visitStart == 0 ? runStart : visitEnd);
+        long allocated = -1;
+        if (allocationStart >= 0 && Thread.currentThread() == runThread) {
+            allocated = TestTimings.getAllocatedBytes() - allocationStart + taskAllocation.sum();
+        }
+        TestTimings.add(new TestTimings.Run(getClass().getSimpleName(), System.currentTimeMillis(), startTestNanos,
+                visitNanos, endTestNanos, visited, candidates, errors.size(), allocated, partialSelection));
+        // Without a visit, the whole run is one phase
+        ValidationEvents.commit(phaseEvent, getClass().getSimpleName(), visitStart == 0 ? "run" : "endTest",
+                candidates, errors.size());
+        phaseEvent = null;
+        runThread = null;
+        if (hotSpots != null) HotSpots.put(getClass().getSimpleName(), hotSpots.getSlowest());
+        hotSpots = null;
+    }
+}
@@ -2,26 +2,35 @@ package com.kaartgroup.kaartvalidator.validation;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.openstreetmap.josm.command.ChangePropertyCommand;
 import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.validation.Severity;
-import org.openstreetmap.josm.data.validation.Test;
 import org.openstreetmap.josm.data.validation.TestError;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 
-public class LinkDestinations extends Test {
+import com.kaartgroup.kaartvalidator.index.AffectedWays;
+import com.kaartgroup.kaartvalidator.index.Candidates;
+import com.kaartgroup.kaartvalidator.index.DataSetIndex;
+import com.kaartgroup.kaartvalidator.index.HighwayGraph;
+import com.kaartgroup.kaartvalidator.index.LinkChains;
+import com.kaartgroup.kaartvalidator.index.RoadClass;
+import com.kaartgroup.kaartvalidator.index.SymbolTable;
+import com.kaartgroup.kaartvalidator.index.TagColumns;
+
+public class LinkDestinations extends KaartTest {
     private static final int LINKDESTINATIONSCODE = 4000;
     public static final int DESTINATION_TAG_DOES_NOT_MATCH = LINKDESTINATIONSCODE + 0;
 
     public static final int MAXLENGTH = 30; //meters
 
     private List<Way> ways;
-    private List<Way> links;
-    private String[] destinationTags = {"destination", "destination:ref", "destination:street"};
+    private static final int[] DESTINATION_TAGS = {TagColumns.DESTINATION, TagColumns.DESTINATION_REF,
+            TagColumns.DESTINATION_STREET};
 
     public LinkDestinations() {
         super(tr("Link Destinations"), tr("This test checks link destinations"));
@@ -30,141 +39,134 @@ public class LinkDestinations extends Test {
     @Override
     public void startTest(ProgressMonitor monitor) {
         super.startTest(monitor);
-        ways = new LinkedList<>();
+        ways = new ArrayList<>();
     }
 
     @Override
     public void endTest() {
-        Way pWay = null;
-        try {
-            while (ways.size() > 0) {
-                links = new LinkedList<>();
-                pWay = ways.get(0);
-                List<Way> tway = pWay.lastNode().getParentWays();
-                Boolean connectsToRoad = false;
-                for (Way way : tway) {
-                    if (way.hasKey("highway") && !way.get("highway").matches("^.*_link$")) {
-                        connectsToRoad = true;
-                        break;
-                    }
-                }
-                if (connectsToRoad) {
-                    checkDestination(pWay);
+        List<Way> lastLinks = new ArrayList<>();
+        if (!ways.isEmpty()) {
+            LinkChains chains = getLinkChains(ways.get(0));
+            // The destination of a chain is only checked once, for all of the links in it
+            boolean[] checked = new boolean[chains.getChainCount()];
+            for (Way way : ways) {
+                int chain = chains.getChain(way);
+                if (chain < 0 || checked[chain]) continue;
+                checked[chain] = true;
+                Way last = chains.getLast(chain);
+                if (connectsToRoad(last)) {
+                    lastLinks.add(last);
                 }
-                ways.remove(pWay);
-                links = null;
             }
-        } catch (Exception e) {
-            if (pWay != null) {
-                System.out.printf("Way https://osm.org/way/%d caused an error" + System.lineSeparator(), pWay.getOsmId());
-            }
-            e.printStackTrace();
         }
+        checkAll(lastLinks, this::checkDestination);
         ways = null;
         super.endTest();
     }
 
     @Override
-    public void visit(Way way) {
-        if (!way.isUsable()) return;
-        if (way.hasKey("highway") && way.get("highway").contains("_link")) {
-            ways.add(way);
+    protected boolean isAffected(OsmPrimitive unit, AffectedWays affected) {
+        // The errors of the last link are for the whole chain
+        LinkChains chains = getLinkChains(unit);
+        int chain = chains.getChain((Way) unit);
+        if (chain < 0) return true;
+        for (Way member : chains.getMembers(chain)) {
+            if (affected.isAffected(member)) return true;
         }
+        return false;
     }
 
-    /**
-     * Checks if there is a destination on the link
-     * @param way to check if there is a destination
-     * @return true if there is a destination, false otherwise
-     */
-    public boolean checkDestination(Way way) {
-        return this.checkDestination(way, 0);
+    @Override
+    protected void prepareIndexes(DataSetIndex dataSetIndex) {
+        dataSetIndex.getLinkChains();
+        dataSetIndex.getTagColumns();
     }
+
+    @Override
+    protected void visit(Candidates candidates) {
+        ways.addAll(candidates.getLinks());
+    }
+
+    private boolean connectsToRoad(Way link) {
+        HighwayGraph graph = getHighwayGraph(link);
+        int n = graph.getNodeOrdinal(link.lastNode());
+        for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+            if (!RoadClass.isAny(graph.getParentRoadClass(edge), RoadClass.LINK)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
-     * Checks if there is a destination on the link
+     * Checks if there is a destination on the link, and adds an error for the links leading to it if there is not
      * @param way to check if there is a destination
-     * @param recursion the number of times we have recursed into the function already
      * @return true if there is a destination, false otherwise
      */
-    protected boolean checkDestination(Way way, int recursion) {
+    public boolean checkDestination(Way way) {
         if (way.lastNode().isOutsideDownloadArea()) return false;
-        if (way.hasKey("highway") && way.get("highway").matches("^.*_link$") && !links.contains(way)) {
-            links.add(way);
-            List<Way> refs = way.firstNode().getParentWays();
-            refs.remove(way);
-            for (Way ref : refs) {
-                if (refs.size() > 1 || recursion >= 100) break;
-                if (ref.lastNode() != way.firstNode()) continue;
-                if (!checkDestination(ref, recursion + 1)) {
-                    if (!links.contains(ref) && ref.hasKey("highway") && ref.get("highway").matches("^.*_link$")) {
-                        links.add(ref);
-                        ways.remove(ref);
-                    }
-                }
-            }
+        TagColumns columns = getTagColumns(way);
+        HighwayGraph graph = columns.getGraph();
+        LinkChains chains = getLinkChains(way);
+        int chain = chains.getChain(way);
+        List<Way> links = new ArrayList<>();
+        if (chain >= 0) {
+            // The link and the links leading to it
+            List<Way> members = chains.getMembers(chain);
+            links.addAll(members.subList(0, members.indexOf(way) + 1));
         }
 
         Boolean hasDestinationTag = false;
-        for (String destinationTag : destinationTags) {
-            String wayValue = way.get(destinationTag);
-            if (!way.hasKey(destinationTag)) continue;
-            if (destinationTag.equals("destination")) return true;
+        int w = graph.getWayOrdinal(way);
+        for (int destinationTag : DESTINATION_TAGS) {
+            int wayValue = columns.get(destinationTag, way);
+            if (wayValue == SymbolTable.NONE) continue;
+            if (destinationTag == TagColumns.DESTINATION) return true;
             else hasDestinationTag = true;
-            Node lastNode = way.lastNode();
-            List<Way> refs = lastNode.getParentWays();
-            refs.remove(way);
-            for (Way ref : refs) {
-                if (ref.hasKey(destinationTag) && ref.get(destinationTag).equals(wayValue)
-                        || ref.hasKey("ref") && ref.get("ref").equals(wayValue)
-                        || ref.hasKey("name") && ref.get("name").equals(wayValue)) {
+            int last = graph.getNodeOrdinal(way.lastNode());
+            for (int edge = graph.getFirstEdge(last); edge < graph.getEndEdge(last); edge++) {
+                int ref = graph.getParentOrdinal(edge);
+                if (ref == w) continue;
+                // All of the columns share one symbol table, so values of different keys can be compared
+                if (columns.get(destinationTag, ref) == wayValue
+                        || columns.get(TagColumns.REF, ref) == wayValue
+                        || columns.get(TagColumns.NAME, ref) == wayValue) {
                     return true;
                 }
             }
         }
-        if (recursion == 0) {
-            Node lastNode = way.lastNode();
-            List<Way> refs = lastNode.getParentWays();
-            List<Way> trefs = lastNode.getParentWays();
-            trefs.remove(way);
-            for (Way ref : refs) {
-                if (ref.get("oneway") == "yes" && ref.lastNode().equals(lastNode)) {
-                    trefs.remove(ref);
-                }
-            }
-            refs = trefs;
-            TestError.Builder testError = TestError.builder(this, Severity.WARNING, DESTINATION_TAG_DOES_NOT_MATCH)
-                    .primitives(links)
-                    .message(tr("kaart"), tr("The destination tag does not match or does not exist"));
-            Way ref = refs.get(0);
-            int i = 0;
-	    /* TODO fix this
-            while (i < refs.size()) {
-                Way tway = refs.get(i);
-                if (!tway.hasKey(key)) continue;
-                for (Way nway : refs) {
-                    if (nway == tway || !nway.hasKey(key)) continue;
-                    if (nway.get(key).equals(tway.get(key))) {
-                    refs.remove(nway);
-                    }
-                }
-                i++;
-            } */
-            final List<Way> fLinks = links;
-            if (refs.size() == 1 && !hasDestinationTag
-                    && ref.hasKey("highway") && !ref.get("highway").matches("^.*_link$")
-                    && ref.lastNode() != lastNode) {
-                if (ref.hasKey("destination:ref") && !ref.hasKey("ref")) {
-                    testError.fix(() -> new ChangePropertyCommand(fLinks, "destination:ref", ref.get("destination:ref")));
-                } else if (ref.hasKey("ref") && !ref.hasKey("destination:ref")) {
-                    testError.fix(() -> new ChangePropertyCommand(fLinks, "destination:ref", ref.get("ref")));
-                } else if (ref.hasKey("destination:street") && !ref.hasKey("name")) {
-                    testError.fix(() -> new ChangePropertyCommand(fLinks, "destination:street", ref.get("destination:street")));
-                } else if (ref.hasKey("name") && !ref.hasKey("destination:street")) {
-                    testError.fix(() -> new ChangePropertyCommand(fLinks, "destination:street", ref.get("name")));
-                }
+        Node lastNode = way.lastNode();
+        int last = graph.getNodeOrdinal(lastNode);
+        List<Way> refs = new ArrayList<>();
+        for (int edge = graph.getFirstEdge(last); edge < graph.getEndEdge(last); edge++) {
+            Way ref = graph.getParentWay(edge);
+            if (ref == way || RoadClass.isAny(graph.getParentRoadClass(edge), RoadClass.ONEWAY_FORWARD)
+                    && ref.lastNode().equals(lastNode)) continue;
+            refs.add(ref);
+        }
+        TestError.Builder testError = TestError.builder(this, Severity.WARNING, DESTINATION_TAG_DOES_NOT_MATCH)
+                .primitives(links)
+                .message(tr("kaart"), tr("The destination tag does not match or does not exist"));
+        Way ref = refs.isEmpty() ? null : refs.get(0);
+        final List<Way> fLinks = links;
+        if (refs.size() == 1 && !hasDestinationTag
+                && !RoadClass.isAny(graph.getRoadClass(ref), RoadClass.LINK)
+                && ref.lastNode() != lastNode) {
+            String destinationRef = columns.getString(TagColumns.DESTINATION_REF, ref);
+            String refValue = columns.getString(TagColumns.REF, ref);
+            String destinationStreet = columns.getString(TagColumns.DESTINATION_STREET, ref);
+            String name = columns.getString(TagColumns.NAME, ref);
+            if (destinationRef != null && refValue == null) {
+                testError.fix(() -> new ChangePropertyCommand(fLinks, "destination:ref", destinationRef));
+            } else if (refValue != null && destinationRef == null) {
+                testError.fix(() -> new ChangePropertyCommand(fLinks, "destination:ref", refValue));
+            } else if (destinationStreet != null && name == null) {
+                testError.fix(() -> new ChangePropertyCommand(fLinks, "destination:street", destinationStreet));
+            } else if (name != null && destinationStreet == null) {
+                testError.fix(() -> new ChangePropertyCommand(fLinks, "destination:street", name));
             }
-            errors.add(testError.build());
         }
+        addError(testError.build());
         return false;
     }
 }
@@ -2,10 +2,13 @@ package com.kaartgroup.kaartvalidator.validation;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.openstreetmap.josm.command.AddCommand;
 import org.openstreetmap.josm.command.Command;
@@ -14,12 +17,19 @@ import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.RelationMember;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.validation.Severity;
-import org.openstreetmap.josm.data.validation.Test;
 import org.openstreetmap.josm.data.validation.TestError;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.tools.RightAndLefthandTraffic;
 
-public class LinkTurn extends Test {
+import com.kaartgroup.kaartvalidator.index.Candidates;
+import com.kaartgroup.kaartvalidator.index.DataSetIndex;
+import com.kaartgroup.kaartvalidator.index.HighwayGraph;
+import com.kaartgroup.kaartvalidator.index.LinkMotifs;
+import com.kaartgroup.kaartvalidator.index.RestrictionIndex;
+import com.kaartgroup.kaartvalidator.index.RestrictionIndex.Restriction;
+import com.kaartgroup.kaartvalidator.index.RoadClass;
+
+public class LinkTurn extends KaartTest {
     private static final int LINKTURNCODE = 5000;
     public static final int LINK_ROAD_NO_TURN_RESTRICTION = LINKTURNCODE + 0;
 
@@ -32,75 +42,53 @@ public class LinkTurn extends Test {
     @Override
     public void startTest(ProgressMonitor monitor) {
         super.startTest(monitor);
-        links = new LinkedList<>();
+        links = new ArrayList<>();
     }
 
     @Override
     public void endTest() {
-        Way pWay = null;
-        try {
-            for (Way link : links) {
-                pWay = link;
-                checkLinkAndIntersection(link);
-            }
-        } catch (Exception e) {
-            if (pWay != null) {
-                System.out.printf("Way https://osm.org/way/%d caused an error" + System.lineSeparator(), pWay.getOsmId());
-            }
-            e.printStackTrace();
-        }
+        checkAll(links, this::checkLinkAndIntersection);
         links = null;
         super.endTest();
     }
 
     @Override
-    public void visit(Way way) {
-        if (!way.isUsable() || way.firstNode().isOutsideDownloadArea() || way.lastNode().isOutsideDownloadArea()) return;
-        if (way.hasKey("highway") && way.get("highway").contains("_link")) {
-            links.add(way);
+    protected void prepareIndexes(DataSetIndex dataSetIndex) {
+        dataSetIndex.getLinkMotifs();
+        dataSetIndex.getJunctions();
+        dataSetIndex.getRestrictions();
+    }
+
+    @Override
+    protected void visit(Candidates candidates) {
+        for (Way link : candidates.getLinks()) {
+            if (!link.firstNode().isOutsideDownloadArea() && !link.lastNode().isOutsideDownloadArea()) {
+                links.add(link);
+            }
         }
     }
 
     public void checkLinkAndIntersection(Way link) {
-        if (!link.hasKey("highway") || !link.get("highway").matches("^.*_link$")) {
+        HighwayGraph graph = getHighwayGraph(link);
+        if (!RoadClass.isAny(graph.getRoadClass(link), RoadClass.LINK)) {
             return;
         }
+        LinkMotifs.Triangle triangle = getLinkMotifs(link).getTriangle(link);
+        if (triangle == null) return;
         List<Way> roads = new LinkedList<>();
-        for (Way ref : link.firstNode().getParentWays()) {
-            if (ref.equals(link)|| !ref.hasKey("highway") || !ref.get("highway").matches("^(motorway|trunk|primary|secondary|tertiary|unclassified|residential)$")) continue;
-            for (Node node : ref.getNodes()) {
-                if (node.equals(link.firstNode())) continue;
-                for (Way ref2 : node.getParentWays()) {
-                    if (ref2.equals(ref) || !ref2.hasKey("highway") || !ref2.get("highway").matches("^(motorway|trunk|primary|secondary|tertiary|unclassified|residential)$")) continue;
-                    for (Node node2 : ref2.getNodes()) {
-                        if (node.equals(node2)) continue;
-                        if (node2.getParentWays().contains(link)) {
-                            roads.add(ref);
-                            roads.add(ref2);
-                            break;
-                        }
-                    }
-                    if (roads.size() == 2) break;
-                }
-                if (roads.size() == 2) break;
-            }
-            if (roads.size() == 2) break;
-        }
-        if (roads.size() != 2) return;
+        roads.add(triangle.getFrom());
+        roads.add(triangle.getTo());
         Boolean noTurnRestriction = true;
-        List<String> valid_restrictions = new LinkedList<>();
+        Set<Restriction> validRestrictions = EnumSet.of(Restriction.ONLY_STRAIGHT_ON);
         if (RightAndLefthandTraffic.isRightHandTraffic(roads.get(0).firstNode().getCoor())) {
-            valid_restrictions.add("no_right_turn");
-            valid_restrictions.add("only_left_turn");
+            validRestrictions.add(Restriction.NO_RIGHT_TURN);
+            validRestrictions.add(Restriction.ONLY_LEFT_TURN);
         } else {
-            valid_restrictions.add("no_left_turn");
-            valid_restrictions.add("only_right_turn");
+            validRestrictions.add(Restriction.NO_LEFT_TURN);
+            validRestrictions.add(Restriction.ONLY_RIGHT_TURN);
         }
-        valid_restrictions.add("only_straight_on");
-        for (Relation rel : Way.getParentRelations(roads)) {
-            if (!"restriction".equals(rel.get("type"))) continue;
-            if (!rel.hasKey("restriction")) continue;
-            if (valid_restrictions.contains(rel.get("restriction"))) {
+        for (RestrictionIndex.Entry entry : getRestrictions(link).getEither(roads.get(0), triangle.getCorner(), roads.get(1))) {
+            if (validRestrictions.contains(entry.getRestriction())) {
                 noTurnRestriction = false;
                 break;
             }
@@ -115,12 +103,12 @@ public class LinkTurn extends Test {
             if (roads.get(0).isFirstLastNode(roads.get(1).lastNode())) node = roads.get(1).lastNode();
             else if (roads.get(0).isFirstLastNode(roads.get(1).firstNode())) node = roads.get(1).firstNode();
             if (node != null) {
-                if (roads.get(1).hasKey("oneway") && roads.get(1).get("oneway") != "no"
-                        && roads.get(1).lastNode(true) == node) return;
+                // Traffic cannot turn onto a oneway that ends at the node
+                if (!getJunctions(link).canLeave(node, roads.get(1))) return;
                 final Node node1 = node;
                 testError.fix(() -> fixErrorByCreatingTurnRestriction(roads.get(0), node1, roads.get(1)));
             }
-            errors.add(testError.build());
+            addError(testError.build());
         }
     }
 
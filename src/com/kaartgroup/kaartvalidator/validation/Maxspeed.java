@@ -2,23 +2,41 @@ package com.kaartgroup.kaartvalidator.validation;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.command.ChangePropertyCommand;
 import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.validation.Severity;
-import org.openstreetmap.josm.data.validation.Test;
 import org.openstreetmap.josm.data.validation.TestError;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 
-public class Maxspeed extends Test {
+import com.kaartgroup.kaartvalidator.index.AffectedWays;
+import com.kaartgroup.kaartvalidator.index.Candidates;
+import com.kaartgroup.kaartvalidator.index.DataSetIndex;
+import com.kaartgroup.kaartvalidator.index.HighwayGraph;
+import com.kaartgroup.kaartvalidator.index.Junctions;
+import com.kaartgroup.kaartvalidator.index.RoadChains;
+import com.kaartgroup.kaartvalidator.index.RoadClass;
+import com.kaartgroup.kaartvalidator.index.TagColumns;
+import com.kaartgroup.kaartvalidator.utils.MaxspeedValue;
+
+/**
+ * Check maxspeed along corridors (chains of ways with the same name, or the same ref if they have no name)
+ * @author Taylor Smock
+ */
+public class Maxspeed extends KaartTest {
     private static final int MAXSPEEDCODE = 4100;
     public static final int MAXSPEED_BLANKSPOT = MAXSPEEDCODE + 1;
+    public static final int MAXSPEED_DIRECTIONS_SWAPPED = MAXSPEEDCODE + 2;
 
     public static final int MAXLENGTH = 30; //meters
     private List<Way> ways;
+    private TagColumns columns;
+    /** The ways (by ordinal) that are part of a stretch without a maxspeed, for name and for ref corridors */
+    private boolean[][] inGap;
     public Maxspeed() {
         super(tr("Maxspeed consistency"), tr("Looks for short ways that have the same maxspeed on both sides"));
     }
@@ -26,87 +44,187 @@ public class Maxspeed extends Test {
     @Override
     public void startTest(ProgressMonitor monitor) {
         super.startTest(monitor);
-        ways = new LinkedList<>();
+        ways = new ArrayList<>();
     }
 
     @Override
     public void endTest() {
-        Way pWay = null;
-        try {
+        List<Way> corridors = new ArrayList<>();
+        if (!ways.isEmpty()) {
+            columns = getTagColumns(ways.get(0));
+            HighwayGraph graph = columns.getGraph();
+            // Every corridor is swept once, no matter how many of its ways were visited (for name and for ref)
+            boolean[][] swept = new boolean[2][graph.getWayCount()];
+            inGap = new boolean[2][graph.getWayCount()];
             for (Way way : ways) {
-                pWay = way;
-                checkMaxspeedConsistency(way);
-            }
-        } catch (Exception e) {
-            if (pWay != null) {
-                System.out.printf("Way https://osm.org/way/%d caused an error" + System.lineSeparator(), pWay.getOsmId());
+                String key = getCorridorKey(way);
+                int k = "name".equals(key) ? 0 : 1;
+                RoadChains chains = getRoadChains(way, key);
+                int chain = chains.getChain(way);
+                if (chain < 0 || swept[k][chain]) continue;
+                swept[k][chain] = true;
+                corridors.add(way);
             }
-            e.printStackTrace();
         }
+        // Corridors do not share ways, so they can be swept in parallel
+        checkAll(corridors, this::sweep);
         ways = null;
+        columns = null;
+        inGap = null;
         super.endTest();
     }
 
     @Override
-    public void visit(Way way) {
-        if (!way.isUsable() || way.hasKey("highway") && way.get("highway").matches("^.*_link$")) return;
-        int connections = getNumberOfConnections(way, "highway",
-                "^(motorway|trunk|primary|secondary|tertiary|unclassified|residential|service|.*_link)$");
-        if (connections == 2) ways.add(way);
+    protected void prepareIndexes(DataSetIndex dataSetIndex) {
+        dataSetIndex.getRoadChains("name");
+        dataSetIndex.getRoadChains("ref");
     }
 
-    private int getNumberOfConnections(Way way, String key, String regex) {
-        int returnValue = 0;
-        if (way.firstNode().isOutsideDownloadArea() || way.lastNode().isOutsideDownloadArea()) return -1;
-        for (int i = 0; i < way.getNodesCount(); i++) {
-            List<Way> refs = way.getNode(i).getParentWays();
-            Boolean connected = false;
-            refs.remove(way);
-            for (Way wp : refs) {
-                if (!wp.hasKey(key)) continue;
-                if (wp.get(key).matches(regex)) {
-                    connected = true;
-                    break;
-                }
+    @Override
+    protected void visit(Candidates candidates) {
+        ways.addAll(candidates.getNamedRoads());
+    }
+
+    /**
+     * Get the key that the corridor of a way is made of
+     * @param way The way
+     * @return name, or ref if the way has no name
+     */
+    private String getCorridorKey(Way way) {
+        return columns.has(TagColumns.NAME, way) ? "name" : "ref";
+    }
+
+    /**
+     * Check if a way is part of the corridors of a key. Ways with a name are only part of name corridors.
+     */
+    private boolean isCorridorWay(HighwayGraph graph, int way, String key) {
+        return !RoadClass.isAny(graph.getRoadClass(way), RoadClass.LINK)
+                && key.equals(columns.has(TagColumns.NAME, way) ? "name" : "ref");
+    }
+
+    @Override
+    protected boolean isAffected(OsmPrimitive unit, AffectedWays affected) {
+        // The errors of a corridor may come from any of its ways
+        RoadChains chains = getRoadChains(unit, getCorridorKey((Way) unit));
+        int chain = chains.getChain((Way) unit);
+        if (chain < 0) return true;
+        for (int member = chains.getFirstMember(chain); member < chains.getEndMember(chain); member++) {
+            if (affected.isAffected(chains.getMember(member))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sweep the corridor of a way
+     * @param way The way
+     */
+    private void sweep(Way way) {
+        String key = getCorridorKey(way);
+        RoadChains chains = getRoadChains(way, key);
+        sweep(chains, chains.getChain(way), inGap["name".equals(key) ? 0 : 1]);
+    }
+
+    /**
+     * Sweep a corridor once, finding the stretches without a maxspeed and the joins where the directional maxspeeds
+     * are swapped
+     * @param chains The chains for the key of the corridor
+     * @param chain The corridor
+     * @param inGap The ways (by ordinal) that are already part of a stretch without a maxspeed
+     */
+    private void sweep(RoadChains chains, int chain, boolean[] inGap) {
+        HighwayGraph graph = chains.getJunctions().getGraph();
+        for (int member = chains.getFirstMember(chain); member < chains.getEndMember(chain); member++) {
+            int w = chains.getMember(member);
+            if (!isCorridorWay(graph, w, chains.getKey())) continue;
+            Way way = graph.getWay(w);
+            checkDirections(chains, way);
+            if (!columns.has(TagColumns.MAXSPEED, w) && !inGap[w]) {
+                checkGap(chains, chain, w, inGap);
             }
-            if (connected) returnValue++;
         }
-        return returnValue;
     }
 
-    private String getMaxspeedOther(Way way, Node node) {
-        List<Way> refs = node.getParentWays();
-        refs.remove(way);
-        Way nWay = null;
-        for (Way i : refs) {
-            if (i.hasKey("name") && i.get("name").equals(way.get("name"))) {
-                nWay = i;
-                break;
-            } else if (i.hasKey("ref") && i.get("ref").equals(way.get("ref"))) {
-                nWay = i;
-                break;
+    /**
+     * Collect the ways without a maxspeed that are connected to a way, and check the maxspeeds around them
+     */
+    private void checkGap(RoadChains chains, int chain, int start, boolean[] inGap) {
+        HighwayGraph graph = chains.getJunctions().getGraph();
+        List<Way> gap = new ArrayList<>();
+        List<Node> boundaryNodes = new ArrayList<>();
+        String boundaryValue = null;
+        boolean equal = true;
+        boolean outside = false;
+        gap.add(graph.getWay(start));
+        inGap[start] = true;
+        for (int i = 0; i < gap.size(); i++) {
+            Way way = gap.get(i);
+            for (Node node : new Node[] {way.firstNode(), way.lastNode()}) {
+                if (node.isOutsideDownloadArea()) outside = true;
+                int n = graph.getNodeOrdinal(node);
+                for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+                    int other = graph.getParentOrdinal(edge);
+                    Way otherWay = graph.getWay(other);
+                    if (otherWay == way || chains.getChain(other) != chain
+                            || chains.getJunctions().getRole(edge) == Junctions.MIDDLE) continue;
+                    String otherValue = columns.getString(TagColumns.MAXSPEED, other);
+                    if (otherValue == null) {
+                        if (!inGap[other] && isCorridorWay(graph, other, chains.getKey())) {
+                            inGap[other] = true;
+                            gap.add(otherWay);
+                        }
+                    } else {
+                        if (!boundaryNodes.contains(node)) boundaryNodes.add(node);
+                        if (boundaryValue == null) boundaryValue = otherValue;
+                        else if (!MaxspeedValue.isEquivalent(boundaryValue, otherValue)) equal = false;
+                    }
+                }
             }
         }
-        if (nWay != null && nWay.hasKey("maxspeed")) {
-            return nWay.get("maxspeed");
-        } else {
-            return null;
+        if (outside || !equal || boundaryNodes.size() < 2) return;
+        TestError.Builder testError = TestError.builder(this, Severity.WARNING, MAXSPEED_BLANKSPOT)
+                .message(tr("kaart"), tr("Maxspeed has a blank spot with equal maxspeeds on either side"))
+                .primitives(gap);
+        double length = 0;
+        for (Way way : gap) {
+            length += way.getLength();
+        }
+        if (length < MAXLENGTH) {
+            final String value = boundaryValue;
+            testError.fix(() -> new ChangePropertyCommand(gap, "maxspeed", value));
         }
+        addError(testError.build());
     }
 
-    public void checkMaxspeedConsistency(Way way) {
-        String firstNode = getMaxspeedOther(way, way.firstNode());
-        String lastNode = getMaxspeedOther(way, way.lastNode());
-        Boolean needsMaxspeed = true;
-        if (way.hasKey("maxspeed")) needsMaxspeed = false;
-        if (firstNode != null && lastNode != null && firstNode.equals(lastNode) && needsMaxspeed) {
-            TestError.Builder testError = TestError.builder(this, Severity.WARNING, MAXSPEED_BLANKSPOT)
-                    .message(tr("kaart"), tr("Maxspeed has a blank spot with equal maxspeeds on either side"))
-                    .primitives(way);
-            if (way.getLength() < MAXLENGTH) {
-                testError.fix(() -> new ChangePropertyCommand(way, "maxspeed", firstNode));
+    /**
+     * Check that the way continuing from a way does not have maxspeed:forward and maxspeed:backward swapped
+     */
+    private void checkDirections(RoadChains chains, Way way) {
+        Junctions junctions = chains.getJunctions();
+        HighwayGraph graph = junctions.getGraph();
+        int w = graph.getWayOrdinal(way);
+        String forward = columns.getString(TagColumns.MAXSPEED_FORWARD, w);
+        String backward = columns.getString(TagColumns.MAXSPEED_BACKWARD, w);
+        if (forward == null || backward == null) return;
+        // Only look forward, so that every join is checked once
+        Node node = way.lastNode();
+        int n = graph.getNodeOrdinal(node);
+        for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+            int other = graph.getParentOrdinal(edge);
+            if (other == w || chains.getChain(other) != chains.getChain(w)) continue;
+            byte role = junctions.getRole(edge);
+            if (role != Junctions.START && role != Junctions.END) continue;
+            Way otherWay = graph.getWay(other);
+            // The direction of the other way that continues the forward direction of this way
+            int ahead = role == Junctions.START ? TagColumns.MAXSPEED_FORWARD : TagColumns.MAXSPEED_BACKWARD;
+            int behind = role == Junctions.START ? TagColumns.MAXSPEED_BACKWARD : TagColumns.MAXSPEED_FORWARD;
+            if (!MaxspeedValue.isEquivalent(forward, backward)
+                    && MaxspeedValue.isEquivalent(forward, columns.getString(behind, other))
+                    && MaxspeedValue.isEquivalent(backward, columns.getString(ahead, other))) {
+                addError(TestError.builder(this, Severity.WARNING, MAXSPEED_DIRECTIONS_SWAPPED)
+                        .message(tr("kaart"), tr("maxspeed:forward and maxspeed:backward are swapped on a continuing way"))
+                        .primitives(way, otherWay)
+                        .build());
             }
-            errors.add(testError.build());
         }
     }
 }
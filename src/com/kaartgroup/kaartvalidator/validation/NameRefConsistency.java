@@ -2,24 +2,30 @@ package com.kaartgroup.kaartvalidator.validation;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
-import java.util.Hashtable;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+
 import org.openstreetmap.josm.data.osm.Node;
-import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.validation.Severity;
-import org.openstreetmap.josm.data.validation.Test;
 import org.openstreetmap.josm.data.validation.TestError;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 
-public class NameRefConsistency extends Test {
+import com.kaartgroup.kaartvalidator.index.Candidates;
+import com.kaartgroup.kaartvalidator.index.DataSetIndex;
+import com.kaartgroup.kaartvalidator.index.HighwayGraph;
+import com.kaartgroup.kaartvalidator.index.Junctions;
+import com.kaartgroup.kaartvalidator.index.RoadChains;
+import com.kaartgroup.kaartvalidator.index.RoadClass;
+
+public class NameRefConsistency extends KaartTest {
     private static final int NAMEREFCODE = 3800;
     public static final int NAME_CHANGES = NAMEREFCODE + 0;
     public static final int REF_CHANGES = NAMEREFCODE + 1;
 
     private List<Way> ways;
-    private List<Way> visited;
     public NameRefConsistency() {
         super(tr("Check Name/Ref consistency of roads"), tr("Looks for where road names/refs change"));
     }
@@ -27,103 +33,98 @@ public class NameRefConsistency extends Test {
     @Override
     public void startTest(ProgressMonitor monitor) {
         super.startTest(monitor);
-        ways = new LinkedList<>();
-        visited = new LinkedList<>();
+        ways = new ArrayList<>();
     }
 
     @Override
     public void endTest() {
-        Way pWay = null;
-        try {
+        List<Node> ends = new ArrayList<>();
+        if (!ways.isEmpty()) {
+            HighwayGraph graph = getHighwayGraph(ways.get(0));
+            // Each node is only checked once, no matter how many of the ways end there
+            boolean[] checked = new boolean[graph.getNodeCount()];
             for (Way way : ways) {
-                pWay = way;
-                if (visited.contains(way)) continue;
-                check(way, "ref");
-                check(way, "name");
-            }
-        } catch (Exception e) {
-            if (pWay != null) {
-                System.out.printf("Way https://osm.org/way/%d caused an error" + System.lineSeparator(), pWay.getOsmId());
+                addEnd(graph, checked, ends, way.firstNode());
+                addEnd(graph, checked, ends, way.lastNode());
             }
-            e.printStackTrace();
         }
+        checkAll(ends, this::checkEnd);
         ways = null;
-        visited = null;
         super.endTest();
     }
 
     @Override
-    public void visit(Way way) {
-        if (!way.isUsable() || !way.hasKey("highway")) {
-            return;
-        }
-        ways.add(way);
+    protected void prepareIndexes(DataSetIndex dataSetIndex) {
+        dataSetIndex.getRoadChains("ref");
+        dataSetIndex.getRoadChains("name");
     }
 
-    private void check(Way way, String key, Node node) {
-        if (node.isOutsideDownloadArea() || !way.hasKey(key)) return;
-        List<Way> rways = node.getParentWays();
-        rways.remove(way);
-        if (rways.size() == 0) return;
-        List<Way> tmpList = new LinkedList<>();
-        Hashtable<String, Integer> names = new Hashtable<String, Integer>();
-        String ignore = "pedestrian|footway|.*_link";
-        for (Way ref : rways) {
-            if (ref.hasKey("junction") && ref.get("junction") == "roundabout") continue;
-            if ((!ref.hasKey("highway")
-                    || way.get("highway").matches("^(" + ignore + ")$")
-                    && !ref.get("highway").matches("^(" + ignore + ")$"))
-                    && (!ref.hasKey(key) || ref.get(key) != way.get(key))) continue;
-            if (ref.firstNode() != node && ref.lastNode() != node) {
-                continue;
-            }
-            tmpList.add(ref);
-            if (!ref.hasKey(key)) continue;
-            if (!names.containsKey(ref.get(key)) && ref.get(key) != way.get(key)) {
-                names.put(ref.get(key), 1);
-            } else if (names.containsKey(ref.get(key)) && ref.get(key) != way.get(key)) {
-                names.put(ref.get(key), names.get(ref.get(key)) + 1);
-                for (Way ref2 : rways) {
-                    if (!ref2.hasKey(key)) continue;
-                    if (tmpList.contains(ref2) && names.containsKey(ref2.get(key))) tmpList.remove(ref2);
-                }
-            }
-        }
-        rways = tmpList;
-        tmpList = null;
-        Boolean continues = false;
-        for (Way i : rways) {
-            if (!i.hasKey("highway")) continue;
-            if (i != null && i.get(key) == way.get(key)) {
-                continues = true;
-                break;
+    @Override
+    protected void visit(Candidates candidates) {
+        ways.addAll(candidates.getHighways());
+    }
+
+    private static void addEnd(HighwayGraph graph, boolean[] checked, List<Node> ends, Node node) {
+        int n = graph.getNodeOrdinal(node);
+        if (n < 0 || checked[n]) return;
+        checked[n] = true;
+        ends.add(node);
+    }
+
+    private void checkEnd(Node node) {
+        if (node.isOutsideDownloadArea()) return;
+        check(node, "ref");
+        check(node, "name");
+    }
+
+    /**
+     * Check if a chain of ways with the same value for a key ends at a node where another road starts
+     * @param node The node to check
+     * @param key The key (ref/name)
+     */
+    private void check(Node node, String key) {
+        RoadChains chains = getRoadChains(node, key);
+        Junctions junctions = chains.getJunctions();
+        HighwayGraph graph = junctions.getGraph();
+        int n = graph.getNodeOrdinal(node);
+        Set<Way> ending = new LinkedHashSet<>();
+        Set<Way> others = new LinkedHashSet<>();
+        for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+            if (junctions.getRole(edge) == Junctions.MIDDLE) continue;
+            int way = graph.getParentOrdinal(edge);
+            int chain = chains.getChain(way);
+            if (chain < 0 || chains.getEndCount(n, chain) != 1) continue;
+            boolean ignored = RoadClass.isAny(graph.getRoadClass(way), RoadClass.PEDESTRIAN | RoadClass.LINK);
+            boolean changes = false;
+            for (int edge2 = graph.getFirstEdge(n); edge2 < graph.getEndEdge(n); edge2++) {
+                int ref = graph.getParentOrdinal(edge2);
+                if (ref == way || junctions.getRole(edge2) == Junctions.MIDDLE) continue;
+                int refClass = graph.getRoadClass(ref);
+                if (RoadClass.isAny(refClass, RoadClass.ROUNDABOUT)) continue;
+                if (ignored && !RoadClass.isAny(refClass, RoadClass.PEDESTRIAN | RoadClass.LINK)) continue;
+                // A road that continues through the node is crossed, it does not replace the ending road
+                if (chains.getEndCount(n, chains.getChain(ref)) > 1) continue;
+                others.add(graph.getWay(ref));
+                changes = true;
             }
+            if (changes) ending.add(graph.getWay(way));
         }
-        if (!continues && rways.size() >= 1) {
-            int code = NAMEREFCODE;
-            String message = "A key changes";
-            if (key == "ref") {
-                code = REF_CHANGES;
-                message = tr("The ref changes");
-            } else if (key == "name") {
-                code = NAME_CHANGES;
-                message = tr("The name changes");
-            }
-            rways.add(way);
-            OsmPrimitive[] osm = new OsmPrimitive[rways.size()];
-            for (int i = 0; i < rways.size(); i++) {
-                osm[i] = rways.get(i);
-                visited.add((Way) rways.get(i));
-            }
-            if (osm.length == 0) return;
-            errors.add(TestError.builder(this, Severity.WARNING, code)
-                    .message(tr("kaart"), tr(message))
-                    .primitives(osm)
-                    .build());
+        if (ending.isEmpty()) return;
+        int code = NAMEREFCODE;
+        String message = "A key changes";
+        if ("ref".equals(key)) {
+            code = REF_CHANGES;
+            message = tr("The ref changes");
+        } else if ("name".equals(key)) {
+            code = NAME_CHANGES;
+            message = tr("The name changes");
         }
-    }
-    public void check(Way way, String key) {
-        check(way, key, way.firstNode());
-        check(way, key, way.lastNode());
+        others.removeAll(ending);
+        List<Way> primitives = new ArrayList<>(others);
+        primitives.addAll(ending);
+        addError(TestError.builder(this, Severity.WARNING, code)
+                .message(tr("kaart"), tr(message))
+                .primitives(primitives)
+                .build());
     }
 }
@@ -0,0 +1,150 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.validation;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.validation.Severity;
+import org.openstreetmap.josm.data.validation.TestError;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.Logging;
+
+import com.kaartgroup.kaartvalidator.index.Candidates;
+import com.kaartgroup.kaartvalidator.index.HighwayGraph;
+import com.kaartgroup.kaartvalidator.index.Junctions;
+import com.kaartgroup.kaartvalidator.index.RestrictionIndex;
+
+/**
+ * Check that turn restrictions are connected, and do not conflict with oneway roads
+ * @author Taylor Smock
+ */
+public class RestrictionConsistency extends KaartTest {
+    private static final int RESTRICTIONCODE = 5200;
+    public static final int VIA_NOT_CONNECTED = RESTRICTIONCODE + 0;
+    public static final int CONFLICTS_WITH_ONEWAY = RESTRICTIONCODE + 1;
+
+    private List<Relation> relations;
+
+    /**
+     * Constructor
+     */
+    public RestrictionConsistency() {
+        super(tr("Turn restriction consistency"), tr("Finds turn restrictions that are not connected or that conflict with oneways"));
+    }
+
+    @Override
+    public void startTest(ProgressMonitor monitor) {
+        super.startTest(monitor);
+        relations = new ArrayList<>();
+    }
+
+    @Override
+    public void endTest() {
+        Relation pRelation = null;
+        countCandidates(relations.size());
+        try {
+            if (!relations.isEmpty()) {
+                Set<Relation> checked = new HashSet<>(relations);
+                // Only report a relation once, even if it has several from or to ways
+                Set<Relation> reported = new HashSet<>();
+                for (RestrictionIndex.Entry entry : getRestrictions(relations.get(0)).getEntries()) {
+                    pRelation = entry.getRelation();
+                    if (!checked.contains(pRelation) || reported.contains(pRelation)) continue;
+                    if (check(entry)) reported.add(pRelation);
+                }
+            }
+        } catch (Exception e) {
+            if (pRelation != null) {
+                Logging.warn("{0}: https://osm.org/relation/{1} caused an error", getName(),
+                        Long.toString(pRelation.getOsmId()));
+            }
+            Logging.error(e);
+        }
+        relations = null;
+        super.endTest();
+    }
+
+    @Override
+    protected void visit(Candidates candidates) {
+        relations.addAll(candidates.getRestrictions());
+    }
+
+    /**
+     * Check a restricted turn
+     * @param entry The turn
+     * @return true if an error was added
+     */
+    private boolean check(RestrictionIndex.Entry entry) {
+        List<OsmPrimitive> via = entry.getVia();
+        Node arrival;
+        Node departure;
+        if (via.size() == 1 && via.get(0) instanceof Node) {
+            arrival = (Node) via.get(0);
+            departure = arrival;
+            if (!entry.getFrom().containsNode(arrival) || !entry.getTo().containsNode(arrival)) arrival = null;
+        } else {
+            arrival = getViaWaysConnection(entry);
+            departure = arrival == null ? null : getConnection(lastWay(via), entry.getTo());
+        }
+        if (arrival == null || departure == null) {
+            addError(TestError.builder(this, Severity.WARNING, VIA_NOT_CONNECTED)
+                    .message(tr("kaart"), tr("Turn restriction via is not connected to the from and to ways"))
+                    .primitives(entry.getRelation(), entry.getFrom(), entry.getTo())
+                    .build());
+            return true;
+        }
+        // A u-turn onto the same way has no other approach to compare against
+        if (entry.getFrom() == entry.getTo() || arrival.isOutsideDownloadArea() || departure.isOutsideDownloadArea()) {
+            return false;
+        }
+        Junctions junctions = getJunctions(entry.getRelation());
+        HighwayGraph graph = junctions.getGraph();
+        if (graph.getDegree(arrival) < 2 || graph.getDegree(departure) < 2
+                || graph.getWayOrdinal(entry.getFrom()) < 0 || graph.getWayOrdinal(entry.getTo()) < 0) {
+            return false;
+        }
+        if (!junctions.canArrive(arrival, entry.getFrom()) || !junctions.canLeave(departure, entry.getTo())) {
+            addError(TestError.builder(this, Severity.WARNING, CONFLICTS_WITH_ONEWAY)
+                    .message(tr("kaart"), tr("Turn restriction conflicts with the direction of a oneway"))
+                    .primitives(entry.getRelation(), entry.getFrom(), entry.getTo())
+                    .build());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the node where the from way meets the via ways, if the via ways are all connected
+     */
+    private static Node getViaWaysConnection(RestrictionIndex.Entry entry) {
+        List<OsmPrimitive> via = entry.getVia();
+        for (OsmPrimitive primitive : via) {
+            if (!(primitive instanceof Way)) return null;
+        }
+        for (int i = 1; i < via.size(); i++) {
+            if (getConnection((Way) via.get(i - 1), (Way) via.get(i)) == null) return null;
+        }
+        return getConnection(entry.getFrom(), (Way) via.get(0));
+    }
+
+    private static Way lastWay(List<OsmPrimitive> via) {
+        return (Way) via.get(via.size() - 1);
+    }
+
+    /**
+     * Get the node where two ways meet end to end
+     */
+    private static Node getConnection(Way first, Way second) {
+        if (second.isFirstLastNode(first.firstNode())) return first.firstNode();
+        if (second.isFirstLastNode(first.lastNode())) return first.lastNode();
+        return null;
+    }
+}
@@ -0,0 +1,67 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.validation;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.validation.TestError;
+
+import com.kaartgroup.kaartvalidator.index.HighwayGraph;
+
+/**
+ * The errors of each unit of a validation run of a test, so that a later run can reuse them for units that are
+ * not affected by the changes since.
+ * @author Taylor Smock
+ */
+final class ResultCache {
+    private final Reference<DataSet> dataSet;
+    private final long generation;
+    private final HighwayGraph graph;
+    /** The errors of each unit, for each call of {@link KaartTest#checkAll} in the run */
+    private final List<Map<OsmPrimitive, List<TestError>>> results = new ArrayList<>();
+
+    /**
+     * Create a cache
+     * @param dataSet The dataset of the run
+     * @param generation The {@link com.kaartgroup.kaartvalidator.index.ChangeTracker} generation of the run
+     * @param graph The highway graph the run used
+     */
+    ResultCache(DataSet dataSet, long generation, HighwayGraph graph) {
+        this.dataSet = new WeakReference<>(dataSet);
+        this.generation = generation;
+        this.graph = graph;
+    }
+
+    boolean isFor(DataSet dataSet) {
+        return this.dataSet.get() == dataSet;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    HighwayGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Get the errors of the units of a call
+     * @param call The number of the call in the run
+     * @return The errors by unit, or null if the run did not make the call
+     */
+    Map<OsmPrimitive, List<TestError>> getResults(int call) {
+        return call < results.size() ? results.get(call) : null;
+    }
+
+    void putResults(int call, Map<OsmPrimitive, List<TestError>> unitErrors) {
+        while (results.size() <= call) {
+            results.add(null);
+        }
+        results.set(call, unitErrors);
+    }
+}
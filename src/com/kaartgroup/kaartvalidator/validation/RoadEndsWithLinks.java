@@ -3,23 +3,29 @@ package com.kaartgroup.kaartvalidator.validation;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.validation.Severity;
-import org.openstreetmap.josm.data.validation.Test;
 import org.openstreetmap.josm.data.validation.TestError;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 
+import com.kaartgroup.kaartvalidator.index.Candidates;
+import com.kaartgroup.kaartvalidator.index.DataSetIndex;
+import com.kaartgroup.kaartvalidator.index.HighwayGraph;
+import com.kaartgroup.kaartvalidator.index.LinkMotifs;
+import com.kaartgroup.kaartvalidator.index.RoadClass;
+import com.kaartgroup.kaartvalidator.index.TagColumns;
+
 /**
  * Check for roads that end with Y's
  * @author Taylor Smock
  *
  */
-public class RoadEndsWithLinks extends Test {
+public class RoadEndsWithLinks extends KaartTest {
     private static final int ROADENDSWITHLINKSCODE = 3900;
     public final static int ROAD_ENDS_WITH_LINKS = ROADENDSWITHLINKSCODE + 0;
     public final static int ROAD_HAS_LINK_GOING_THROUGH = ROADENDSWITHLINKSCODE + 1;
@@ -35,70 +41,51 @@ public class RoadEndsWithLinks extends Test {
     @Override
     public void startTest(ProgressMonitor monitor) {
         super.startTest(monitor);
-        ways = new LinkedList<>();
+        ways = new ArrayList<>();
     }
 
     @Override
     public void endTest() {
-        Way way = null;
-        try {
-            for (Way p : ways) {
-                way = p;
-                checkForY(p);
-            }
-        } catch (Exception e) {
-            if (way != null ) {
-                System.out.printf("Way https://osm.org/way/%d caused an error" + System.lineSeparator(), way.getOsmId());
-            }
-            e.printStackTrace();
-        }
+        checkAll(ways, this::checkForY);
         ways = null;
         super.endTest();
     }
 
     @Override
-    public void visit(Way way) {
-        if (!way.isUsable() || way.hasKey("highway") && !way.get("highway").matches("^(motorway|trunk|primary|secondary|tertiary|unclassified|residential)$")) {
-            return;
-        }
-        ways.add(way);
+    protected void prepareIndexes(DataSetIndex dataSetIndex) {
+        dataSetIndex.getTagColumns();
+        dataSetIndex.getLinkMotifs();
+    }
+
+    @Override
+    protected void visit(Candidates candidates) {
+        ways.addAll(candidates.getMajorRoads());
     }
 
     private void checkEnd(Way p, Node end) {
-        List<Way> refs = end.getParentWays();
-        refs.remove(p);
-        int linkForward = 0;
-        int linkBackward = 0;
-        List<Way> links = new LinkedList<>();
-        for (Way ref : refs) {
-            if (ref.hasKey("highway") && ref.get("highway").contains("_link")) continue;
-            if (ref.hasKey("name") && p.hasKey("name") && ref.get("name").equals(p.get("name"))
-                    || (ref.hasKey("ref") && p.hasKey("ref") && ref.get("ref").equals(p.get("ref")))) {
+        TagColumns columns = getTagColumns(p);
+        HighwayGraph graph = columns.getGraph();
+        int w = graph.getWayOrdinal(p);
+        int n = graph.getNodeOrdinal(end);
+        for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+            int ref = graph.getParentOrdinal(edge);
+            if (ref == w) continue;
+            if (RoadClass.isAny(graph.getParentRoadClass(edge), RoadClass.LINK)) continue;
+            if (columns.isSame(TagColumns.NAME, ref, w) || columns.isSame(TagColumns.REF, ref, w)) {
                 return;
             }
         }
-        for (Way ref : refs) {
-            Way way = ref;
-            if (way.hasKey("highway") && way.get("highway").contains("_link")) {
-                if (way.firstNode() == end) {
-                    linkForward++;
-                    links.add(way);
-                }
-                else if (way.lastNode() == end) {
-                    linkBackward++;
-                    links.add(way);
-                }
-                else {
-                    errors.add(TestError.builder(this, Severity.WARNING, ROAD_HAS_LINK_GOING_THROUGH)
-                            .message(tr("kaart"), tr("Check for Y junction links (link passes through road)"))
-                            .primitives(p, way)
-                            .build());
-                }
-            }
+        LinkMotifs motifs = getLinkMotifs(p);
+        for (Way way : motifs.getPassingLinks(end)) {
+            addError(TestError.builder(this, Severity.WARNING, ROAD_HAS_LINK_GOING_THROUGH)
+                    .message(tr("kaart"), tr("Check for Y junction links (link passes through road)"))
+                    .primitives(p, way)
+                    .build());
         }
-        if (linkForward + linkBackward == 2 && links.size() >= 2) {
+        List<Way> links = motifs.getEndingLinks(end);
+        if (links.size() == 2) {
             if (links.get(0).getLength() < MAX_LINK_LENGTH && links.get(1).getLength() < MAX_LINK_LENGTH) {
-                errors.add(TestError.builder(this, Severity.WARNING, ROAD_ENDS_WITH_LINKS)
+                addError(TestError.builder(this, Severity.WARNING, ROAD_ENDS_WITH_LINKS)
                         .message(tr("kaart"), tr("Check for Y junction links (road has two links at the end)"))
                         .primitives(p, links.get(0), links.get(1))
                         .build());
@@ -109,7 +96,7 @@ public class RoadEndsWithLinks extends Test {
                 osm[i] = links.get(i);
             }
             osm[osm.length - 1] = p;
-            errors.add(TestError.builder(this, Severity.WARNING, ROAD_ENDS_WITH_LINKS)
+            addError(TestError.builder(this, Severity.WARNING, ROAD_ENDS_WITH_LINKS)
                     .message(tr("kaart"), tr("Check for Y junction links (road has multiple links leaving from the end)"))
                     .primitives(osm)
                     .build());
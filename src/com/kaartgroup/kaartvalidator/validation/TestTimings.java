@@ -0,0 +1,200 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.validation;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import com.kaartgroup.kaartvalidator.utils.KaartProperties;
+
+/**
+ * The timings of the last {@link KaartProperties#TIMING_HISTORY} runs of the Kaart tests, recorded by
+ * {@link KaartTest}
+ * @author Taylor Smock
+ */
+public final class TestTimings {
+    private static final Deque<Run> RUNS = new ArrayDeque<>();
+
+    private TestTimings() {
+        // Hide constructor
+    }
+
+    /**
+     * One run of a test
+     */
+    public static final class Run {
+        private final String test;
+        private final long finished;
+        private final long startTestNanos;
+        private final long visitNanos;
+        private final long endTestNanos;
+        private final int visited;
+        private final int candidates;
+        private final int errors;
+        private final long allocatedBytes;
+        private final boolean partial;
+
+        Run(String test, long finished, long startTestNanos, long visitNanos, long endTestNanos, int visited,
+                int candidates, int errors, long allocatedBytes, boolean partial) {
+            this.test = test;
+            this.finished = finished;
+            this.startTestNanos = startTestNanos;
+            this.visitNanos = visitNanos;
+            this.endTestNanos = endTestNanos;
+            this.visited = visited;
+            this.candidates = candidates;
+            this.errors = errors;
+            this.allocatedBytes = allocatedBytes;
+            this.partial = partial;
+        }
+
+        /**
+         * @return The simple class name of the test
+         */
+        public String getTest() {
+            return test;
+        }
+
+        /**
+         * @return When the run finished, in milliseconds since the epoch
+         */
+        public long getFinished() {
+            return finished;
+        }
+
+        /**
+         * @return The time from the start of the run to the first visit, which includes the setup of the test
+         */
+        public long getStartTestNanos() {
+            return startTestNanos;
+        }
+
+        /**
+         * @return The time spent in visit
+         */
+        public long getVisitNanos() {
+            return visitNanos;
+        }
+
+        /**
+         * @return The time from the last visit to the end of the run, where most tests do their checks
+         */
+        public long getEndTestNanos() {
+            return endTestNanos;
+        }
+
+        /**
+         * @return The time of the whole run
+         */
+        public long getTotalNanos() {
+            return startTestNanos + visitNanos + endTestNanos;
+        }
+
+        /**
+         * @return The number of primitives given to visit
+         */
+        public int getVisited() {
+            return visited;
+        }
+
+        /**
+         * @return The number of units the test checked
+         */
+        public int getCandidates() {
+            return candidates;
+        }
+
+        /**
+         * @return The number of errors found
+         */
+        public int getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return The bytes allocated by the run, on the validation thread and the threads that checked in parallel,
+         * or -1 if the JVM cannot measure it
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * @return true if only part of the data was validated (e.g., before upload)
+         */
+        public boolean isPartial() {
+            return partial;
+        }
+    }
+
+    static synchronized void add(Run run) {
+        RUNS.addLast(run);
+        int max = Math.max(1, KaartProperties.TIMING_HISTORY.get());
+        while (RUNS.size() > max) {
+            RUNS.removeFirst();
+        }
+    }
+
+    /**
+     * @return The recorded runs, oldest first
+     */
+    public static synchronized List<Run> getRuns() {
+        return new ArrayList<>(RUNS);
+    }
+
+    /**
+     * Forget the recorded runs
+     */
+    public static synchronized void clear() {
+        RUNS.clear();
+    }
+
+    /**
+     * Get the bytes allocated by the current thread so far
+     * @return The bytes, or -1 if the JVM cannot measure it
+     */
+    static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Write runs as CSV
+     * @param writer The writer to write to
+     * @param runs The runs
+     * @throws IOException if the runs could not be written
+     */
+    public static void writeCsv(Writer writer, List<Run> runs) throws IOException {
+        writer.write("finished,test,start_test_ms,visit_ms,end_test_ms,total_ms,visited,candidates,errors,"
+                + "allocated_bytes,partial\n");
+        for (Run run : runs) {
+            writer.write(String.format(Locale.ROOT, "%s,%s,%.3f,%.3f,%.3f,%.3f,%d,%d,%d,%d,%b\n",
+                    Instant.ofEpochMilli(run.getFinished()), run.getTest(), millis(run.getStartTestNanos()),
+                    millis(run.getVisitNanos()), millis(run.getEndTestNanos()), millis(run.getTotalNanos()),
+                    run.getVisited(), run.getCandidates(), run.getErrors(), run.getAllocatedBytes(), run.isPartial()));
+        }
+    }
+
+    /**
+     * Convert nanoseconds to milliseconds
+     * @param nanos The nanoseconds
+     * @return The milliseconds
+     */
+    public static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -4,28 +4,35 @@ package com.kaartgroup.kaartvalidator.validation;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.command.ChangePropertyCommand;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.validation.Severity;
-import org.openstreetmap.josm.data.validation.Test;
 import org.openstreetmap.josm.data.validation.TestError;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 
+import com.kaartgroup.kaartvalidator.index.Candidates;
+import com.kaartgroup.kaartvalidator.index.DataSetIndex;
+import com.kaartgroup.kaartvalidator.index.HighwayGraph;
+import com.kaartgroup.kaartvalidator.index.RoadClass;
+import com.kaartgroup.kaartvalidator.index.SymbolTable;
+import com.kaartgroup.kaartvalidator.index.TagColumns;
+import com.kaartgroup.kaartvalidator.index.Junctions;
+import com.kaartgroup.kaartvalidator.utils.TurnLaneModel;
+
 /**
  * Check turn:lanes for errors
  *
  * @author Taylor Smock
  */
 
-public class TurnLanes extends Test {
+public class TurnLanes extends KaartTest {
     private static final int TURNLANESCODE = 3800;
     public static final int UNCONNECTED_TURN_LANES = TURNLANESCODE + 0;
     public static final int TURN_LANES_DO_NOT_CONTINUE = TURNLANESCODE + 1;
@@ -38,6 +45,8 @@ public class TurnLanes extends Test {
 
     private List<Way> turnLaneWays;
     private List<Way> ways;
+    /** Parsed turn:lanes values, so that each distinct value is only parsed once per run */
+    private Map<String, TurnLaneModel> laneModels;
 
     /**
      * Constructor
@@ -49,31 +58,21 @@ public class TurnLanes extends Test {
     @Override
     public void startTest(ProgressMonitor monitor) {
         super.startTest(monitor);
-        turnLaneWays = new LinkedList<>();
-        ways = new LinkedList<>();
+        turnLaneWays = new ArrayList<>();
+        ways = new ArrayList<>();
+        laneModels = new ConcurrentHashMap<>();
     }
 
     @Override
     public void endTest() {
-        Way way = null;
-        try {
-            for (Way p : turnLaneWays) {
-                way = p;
-                checkConnections(p);
-                checkLanesIntersection(p);
-            }
-            for (Way p : ways) {
-                way = p;
-                checkContinuingLanes(p);
-            }
-        } catch (Exception e) {
-            if (way != null) {
-                System.out.printf("Way https://osm.org/way/%d caused an error" + System.lineSeparator(), way.getOsmId());
-            }
-            e.printStackTrace();
-        }
+        checkAll(turnLaneWays, p -> {
+            checkConnections(p);
+            checkLanesIntersection(p);
+        });
+        checkAll(ways, this::checkContinuingLanes);
         turnLaneWays = null;
         ways = null;
+        laneModels = null;
         super.endTest();
     }
     /**
@@ -91,12 +90,12 @@ public class TurnLanes extends Test {
      *  | |      |
      */
     public void checkLanesIntersection(Way p) {
-        String oneway = p.get("oneway");
-        if (oneway == null) { oneway = "no"; }
-        if (oneway == "yes" || oneway == "no") {
+        int oneway = getTagColumns(p).get(TagColumns.ONEWAY, p);
+        if (oneway == SymbolTable.NONE) { oneway = TagColumns.NO; }
+        if (oneway == TagColumns.YES || oneway == TagColumns.NO) {
             checkLanesIntersection(p, "forward");
         }
-        if (oneway == "no") {
+        if (oneway == TagColumns.NO) {
             checkLanesIntersection(p, "backward");
         }
     }
@@ -107,71 +106,59 @@ public class TurnLanes extends Test {
      * @param direction The direction in which to check the turn lanes (forward/backward)
      */
     private void checkLanesIntersection (Way p, String direction) {
-        String name = p.get("name");
-        String ref = p.get("ref");
         Node node = null;
-        if (direction == "forward") node = p.lastNode();
-        else if (direction == "backward") node = p.firstNode();
+        if ("forward".equals(direction)) node = p.lastNode();
+        else if ("backward".equals(direction)) node = p.firstNode();
         if (node.isOutsideDownloadArea()) return;
         Way pContinue = null;
-        List<Way> refs = node.getParentWays();
+        TagColumns columns = getTagColumns(p);
+        HighwayGraph graph = columns.getGraph();
+        int w = graph.getWayOrdinal(p);
+        int n = graph.getNodeOrdinal(node);
         int attachedWays = 0;
-        for (Way wp : refs) {
-            if (wp != p && (name != null && name == wp.get("name") || ref != null && ref == wp.get("ref"))) {
-                pContinue = (Way) wp;
+        for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+            int other = graph.getParentOrdinal(edge);
+            if (other != w && (columns.isSame(TagColumns.NAME, w, other) || columns.isSame(TagColumns.REF, w, other))) {
+                pContinue = graph.getWay(other);
             }
             attachedWays++;
         }
         if (attachedWays == 2) return;
-        String[] continuingLanes = getContinuingLanes(p, direction);
+        TurnLaneModel continuingLanes = getContinuingLanes(p, direction);
         if (continuingLanes == null || pContinue == null) return;
         if (pContinue.isOneway() == 1 && pContinue.lastNode() == node) return;
-        Boolean continuingLanesOnlyForward = true;
-        for (String lane : continuingLanes) {
-            if (lane.contains("left") || lane.contains("right") || lane.isEmpty()) {
-                continuingLanesOnlyForward = false;
-                break;
-            }
-        }
-        if (continuingLanes.length == 0) continuingLanesOnlyForward = false;
-        if (continuingLanesOnlyForward) return;
-
-        String continuingLanesValue = "";
-        for (int i = 0; i < continuingLanes.length; i++) {
-            continuingLanesValue += continuingLanes[i];
-            if (i < continuingLanes.length - 1) continuingLanesValue += "|";
-        }
+        if (continuingLanes.isOnlyForward()) return;
 
         String pContinueLanes = null;
 
         String key = null;
-        if (pContinue.lastNode() == node && pContinue.isOneway() == 1 && continuingLanesValue == "") return;
-        if (pContinue.hasKey("oneway") && pContinue.get("oneway").equals("yes") && pContinue.firstNode() == node) {
+        if (pContinue.lastNode() == node && pContinue.isOneway() == 1 && continuingLanes.getLaneCount() == 0) return;
+        if (RoadClass.isAny(graph.getRoadClass(pContinue), RoadClass.ONEWAY_FORWARD) && pContinue.firstNode() == node) {
             key = "turn:lanes";
-        } else if (pContinue.lastNode() == node && direction == "forward"
-                || pContinue.firstNode() == node && direction == "backward") {
+        } else if (pContinue.lastNode() == node && "forward".equals(direction)
+                || pContinue.firstNode() == node && "backward".equals(direction)) {
             String reversedDirection = null;
-            if (direction == "forward") reversedDirection = "backward";
-            else if (direction == "backward") reversedDirection = "forward";
+            if ("forward".equals(direction)) reversedDirection = "backward";
+            else if ("backward".equals(direction)) reversedDirection = "forward";
             key = "turn:lanes:" + reversedDirection;
-        } else if (pContinue.firstNode() == node && direction == "forward"
-                || pContinue.lastNode() == node && direction == "backward") {
+        } else if (pContinue.firstNode() == node && "forward".equals(direction)
+                || pContinue.lastNode() == node && "backward".equals(direction)) {
             key = "turn:lanes:" + direction;
         }
-        if (key != null && pContinue.hasKey(key)) {
-            pContinueLanes = pContinue.get(key);
+        if (key != null) {
+            pContinueLanes = columns.getString(TagColumns.getColumn(key), pContinue);
         }
-        if (pContinueLanes != null && pContinueLanes.replace("none","").equals(continuingLanesValue.replace("none",""))) {
+        if (pContinueLanes != null && getLanes(pContinueLanes).equalsIgnoringNone(continuingLanes)) {
             return;
         }
         final String rkey = key;
         final Way tWay = pContinue;
-        final String finalContinuingLanesValue = continuingLanesValue;
+        final String finalContinuingLanesValue = continuingLanes.toString();
         TestError.Builder testError = TestError.builder(this, Severity.WARNING, TURN_LANES_DO_NOT_CONTINUE)
                 .message(tr("kaart"), tr("Turn lanes do not continue through intersection or do not match up with lanes"))
                 .primitives(p, pContinue);
-        int connections = getNumberOfConnections(pContinue, "highway", "^(motorway|trunk|primary|secondary|tertiary|unclassified|residential)$");
-        int miscConnections = getNumberOfConnections(pContinue, "highway", "^(service|.*_link)$");
+        int connections = getNumberOfConnections(pContinue, RoadClass.MAJOR);
+        int miscConnections = getNumberOfConnections(pContinue, RoadClass.SERVICE | RoadClass.LINK);
         try {
             Double bearingTopContinue;
             bearingTopContinue = getBearing(p, node, pContinue);
@@ -183,26 +170,26 @@ public class TurnLanes extends Test {
             System.out.printf("Way https://openstreetmap.org/way/%d failed" + System.lineSeparator(), p.getOsmId());
             e.printStackTrace();
         }
-        errors.add(testError.build());
+        addError(testError.build());
     }
 
     /**
-     * Get the number of connections a way has that have a key with regex
+     * Get the number of nodes of a way that connect to highways of some road classes
      * @param way
-     * @param key
-     * @param regex
+     * @param roadClasses The {@link RoadClass} bits to look for
      * @return
      */
-    private int getNumberOfConnections(Way way, String key, String regex) {
+    private int getNumberOfConnections(Way way, int roadClasses) {
         int returnValue = 0;
         if (way.firstNode().isOutsideDownloadArea() || way.lastNode().isOutsideDownloadArea()) return -1;
+        HighwayGraph graph = getHighwayGraph(way);
         for (int i = 0; i < way.getNodesCount(); i++) {
-            List<Way> refs = way.getNode(i).getParentWays();
-            Boolean connected = false;
-            refs.remove(way);
-            for (Way wp : refs) {
-                if (!wp.hasKey(key)) continue;
-                if (wp.get(key).matches(regex)) {
+            int n = graph.getNodeOrdinal(way.getNode(i));
+            boolean connected = false;
+            for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+                Way wp = graph.getParentWay(edge);
+                if (wp == way) continue;
+                if (RoadClass.isAny(graph.getParentRoadClass(edge), roadClasses)) {
                     connected = true;
                     break;
                 }
@@ -217,121 +204,110 @@ public class TurnLanes extends Test {
      */
     public void checkConnections(Way p) {
         // Check turn:lanes:backward and turn:lanes:forward
-        String turnLanesBackward = p.get("turn:lanes:backward");
-        String turnLanesForward = p.get("turn:lanes:forward");
-        String turnLanes = p.get("turn:lanes");
-        if (turnLanesBackward == null && turnLanesForward == null && turnLanes == null) {
+        TagColumns columns = getTagColumns(p);
+        boolean turnLanesBackward = columns.has(TagColumns.TURN_LANES_BACKWARD, p);
+        boolean turnLanesForward = columns.has(TagColumns.TURN_LANES_FORWARD, p);
+        boolean turnLanes = columns.has(TagColumns.TURN_LANES, p);
+        if (!turnLanesBackward && !turnLanesForward && !turnLanes) {
             return;
         }
         int numNodes = p.getNodesCount();
         int numNodesConnected = 0;
-        Set<Way> connectedWays = new HashSet<>();
+        boolean connectedWays = false;
+        HighwayGraph graph = columns.getGraph();
         for (int i = 0; i < numNodes; i++) {
-            Node n = p.getNode(i);
-            if (n.isOutsideDownloadArea()) return;
-            List<Way> refs = n.getParentWays();
-            for (Way wp : refs) {
-                if (!wp.hasKey("highway")) continue;
-                if (wp.get("highway").matches(".*(motorway|trunk|primary|secondary|tertiary|unclassified|residential|service).*")) {
-                    connectedWays.add(wp);
+            Node node = p.getNode(i);
+            if (node.isOutsideDownloadArea()) return;
+            int n = graph.getNodeOrdinal(node);
+            int connected = 0;
+            for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+                if (RoadClass.isAny(graph.getParentRoadClass(edge), RoadClass.MAJOR | RoadClass.SERVICE | RoadClass.LINK)) {
+                    connected++;
                 }
             }
-            List<Way> refs2 = n.getParentWays();
-            for (Way wp : refs2) {
-                if (!connectedWays.contains(wp)) {
-                    refs.remove(wp);
-                }
-            }
-            if (refs.size() > 1) {
+            if (connected > 0) connectedWays = true;
+            if (connected > 1) {
                 numNodesConnected++;
             }
         }
-        Boolean connectedTurnLanesForward = false;
-        Boolean connectedTurnLanesBackward = false;
-        if (turnLanesForward != null || turnLanes != null) {
-            List<OsmPrimitive> refs = p.getNode(p.getNodesCount() - 1).getReferrers();
-            for (OsmPrimitive wp : refs) {
-                if (wp instanceof Way && wp != p) connectedTurnLanesForward = true;
-            }
+        boolean connectedTurnLanesForward = false;
+        boolean connectedTurnLanesBackward = false;
+        if (turnLanesForward || turnLanes) {
+            connectedTurnLanesForward = graph.getDegree(p.lastNode(), p) > 0;
         }
-        if (turnLanesBackward != null) {
-            List<OsmPrimitive> refs = p.firstNode().getReferrers();
-            for (OsmPrimitive wp : refs) {
-                if (wp instanceof Way && wp != p) connectedTurnLanesBackward = true;
-            }
+        if (turnLanesBackward) {
+            connectedTurnLanesBackward = graph.getDegree(p.firstNode(), p) > 0;
         }
 
         if (numNodesConnected > 2) {
-            errors.add(TestError.builder(this, Severity.WARNING, UNCLEAR_TURN_LANES)
+            addError(TestError.builder(this, Severity.WARNING, UNCLEAR_TURN_LANES)
                     .message(tr("kaart"), tr("Road has multiple possibilities for turning"))
                     .primitives(p)
                     .build());
         }
-        if (connectedWays.isEmpty()
-                || (!connectedTurnLanesForward && (turnLanesForward != null || turnLanes != null))
-                || (!connectedTurnLanesBackward && (turnLanesBackward != null))) {
-            errors.add(TestError.builder(this, Severity.WARNING, UNCONNECTED_TURN_LANES)
+        if (!connectedWays
+                || (!connectedTurnLanesForward && (turnLanesForward || turnLanes))
+                || (!connectedTurnLanesBackward && turnLanesBackward)) {
+            addError(TestError.builder(this, Severity.WARNING, UNCONNECTED_TURN_LANES)
                     .message(tr("kaart"), tr("Road with turn lanes not connected to anything"))
                     .primitives(p)
                     .build());
         }
     }
 
+    /**
+     * Get the model of a turn:lanes value, parsing each distinct value only once per run
+     * @param value The turn:lanes value
+     * @return The lanes
+     */
+    protected TurnLaneModel getLanes(String value) {
+        Map<String, TurnLaneModel> models = laneModels;
+        if (models == null) return TurnLaneModel.parse(value);
+        return models.computeIfAbsent(value, TurnLaneModel::parse);
+    }
+
     /**
      * Gets the probable lanes continuing in a direction
      * @param way The highway with lanes
      * @param direction The direction of travel (forward|backward)
      * @return remaining lanes or null if there are no remaining lanes
      */
-    public String[] getContinuingLanes(Way way, String direction) {
+    public TurnLaneModel getContinuingLanes(Way way, String direction) {
+        TagColumns columns = getTagColumns(way);
+        HighwayGraph graph = columns.getGraph();
+        int w = graph.getWayOrdinal(way);
+        if (w < 0) return null;
+        boolean oneway = columns.get(TagColumns.ONEWAY, w) == TagColumns.YES;
+        int directionColumn = "forward".equals(direction) ? TagColumns.TURN_LANES_FORWARD : TagColumns.TURN_LANES_BACKWARD;
         String turnLanes;
         Node node = null;
-        if (way.get("oneway") == "yes" && way.hasKey("turn:lanes")) {
-            turnLanes = way.get("turn:lanes");
-        } else if (way.hasKey("turn:lanes:" + direction)){
-            turnLanes = way.get("turn:lanes:" + direction);
+        if (oneway && columns.has(TagColumns.TURN_LANES, w)) {
+            turnLanes = columns.getString(TagColumns.TURN_LANES, w);
+        } else if (columns.has(directionColumn, w)) {
+            turnLanes = columns.getString(directionColumn, w);
         } else {
             return null;
         }
-        if (direction == "forward" || way.get("oneway") == "yes") {
+        if ("forward".equals(direction) || oneway) {
             node = way.lastNode();
-        } else if (direction == "backward") {
+        } else if ("backward".equals(direction)) {
             node = way.firstNode();
         }
-        turnLanes = turnLanes.replace("||", "|none|");
-        turnLanes = turnLanes.replaceAll("^[|]", "none|");
-        turnLanes = turnLanes.replaceAll("[|]$", "|none");
-        String[] lanes = turnLanes.split("[|]");
-        for (int i = 0; i < lanes.length; i++) {
-            if (lanes[i].isBlank()) lanes[i] = "through";
-        }
-        List<Way> refs = node.getParentWays();
-        String[] directions = null;
-        for (Way wp : refs) {
-            if (wp == way) continue;
-            if (way.hasKey("name") && !way.get("name").equals(wp.get("name"))
-                    || way.hasKey("ref") && !way.get("ref").equals(wp.get("ref"))) {
-                directions = getTurnDirection(way, node, wp);
-                if (directions != null && directions[0].equals("through")) continue;
-                else if (directions != null) break;
-            }
-        }
-        if (directions == null) return null;
-        for (String turn : directions) {
-            for (int i = 0; i < lanes.length; i++) {
-                while (lanes[i].contains(turn)) {
-                    lanes[i] = lanes[i].replaceAll(turn, "");
-                    lanes[i] = lanes[i].replaceAll("^;|;$", "");
-                    lanes[i] = lanes[i].replaceAll(";;", ";");
-                }
+        TurnLaneModel lanes = getLanes(turnLanes);
+        int n = graph.getNodeOrdinal(node);
+        int directions = 0;
+        for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+            int other = graph.getParentOrdinal(edge);
+            if (other == w) continue;
+            if (columns.has(TagColumns.NAME, w) && !columns.isSame(TagColumns.NAME, w, other)
+                    || columns.has(TagColumns.REF, w) && !columns.isSame(TagColumns.REF, w, other)) {
+                directions = getTurnDirection(way, node, graph.getWay(other));
+                if (directions == TurnLaneModel.THROUGH) continue;
+                else if (directions != 0) break;
             }
         }
-        List<String> rlanes = new LinkedList<>();
-        for (String lane : lanes) {
-            if (!lane.isBlank()) rlanes.add(lane);
-        }
-        String[] array = new String[rlanes.size()];
-        return rlanes.toArray(array);
+        if (directions == 0) return null;
+        return lanes.without(directions);
     }
 
     /**
@@ -339,18 +315,22 @@ public class TurnLanes extends Test {
      * @param from Initial way
      * @param via Node connecting
      * @param to Final way
-     * @return ["left"], ["right"], ["left", "right"], null if they are not connected at Node via
+     * @return {@link TurnLaneModel#LEFT_TURNS}, {@link TurnLaneModel#RIGHT_TURNS}, both,
+     * {@link TurnLaneModel#THROUGH}, or 0 if they are not connected at Node via
      */
-    public String[] getTurnDirection(Way from, Node via, Way to) {
-        if (!from.containsNode(via) || !to.containsNode(via)) return null;
-        if (!to.hasKey("oneway") || to.get("oneway") == "no") return new String[] {"left", "right"};
-        try {
-            Double bearing = getBearing(from, via, to);
-            if (bearing > 0 && bearing < Math.PI) return new String[] {"right"};
-            else if (bearing > Math.PI && bearing < 2 * Math.PI) return new String[] {"left"};
-            else return new String[] {"through"};
-        } catch (Exception e) {
-            return null;
+    public int getTurnDirection(Way from, Node via, Way to) {
+        if (!from.containsNode(via) || !to.containsNode(via)) return 0;
+        int oneway = getTagColumns(to).get(TagColumns.ONEWAY, to);
+        if (oneway == SymbolTable.NONE || oneway == TagColumns.NO) return TurnLaneModel.LEFT_TURNS | TurnLaneModel.RIGHT_TURNS;
+        switch (getJunctions(from).getTurn(from, via, to)) {
+        case Junctions.RIGHT:
+            return TurnLaneModel.RIGHT_TURNS;
+        case Junctions.LEFT:
+            return TurnLaneModel.LEFT_TURNS;
+        case Junctions.THROUGH:
+            return TurnLaneModel.THROUGH;
+        default:
+            return 0;
         }
     }
 
@@ -363,60 +343,41 @@ public class TurnLanes extends Test {
      * @throws Exception if the ways are not connected
      */
     public Double getBearing(Way from, Node via, Way to) throws Exception {
-        if (!from.containsNode(via) || !to.containsNode(via)) {
-            throw new Exception();
-        }
-
-        Node prevFromNode = null;
-        Node nextToNode = null;
-        if (from.firstNode() == via) prevFromNode = from.getNode(1);
-        else if (from.lastNode() == via) prevFromNode = from.getNode(from.getNodesCount() - 2);
-        for (int i = 0; i < to.getNodesCount(); i++) {
-            Node tmp = to.getNode(i);
-            if (tmp == via && i != to.getNodesCount() - 1) {
-                nextToNode = to.getNode(i + 1);
-                break;
-            }
-        }
-        if (nextToNode == null && (!to.hasKey("oneway") || !to.get("oneway").equals("yes"))) {
-            nextToNode = to.getNode(to.getNodesCount() - 2);
-        }
-        if (nextToNode == null || prevFromNode == null) {
+        double bearing = getJunctions(from).getBearing(from, via, to);
+        if (Double.isNaN(bearing)) {
             throw new Exception();
         }
-        LatLon tcoord = nextToNode.getCoor();
-        LatLon vcoord = via.getCoor();
-        LatLon fcoord = prevFromNode.getCoor();
-        Double fbearing = vcoord.bearing(fcoord);
-        Double tbearing = vcoord.bearing(tcoord);
-        Double bearing = fbearing - tbearing;
-        while (bearing < 0) {
-            // Convert to positive radians
-            bearing = bearing + 2 * Math.PI;
-        }
         return bearing;
     }
 
     /**
      * Check a way that connects to another way with the same ref/name has lane change indications
      * @param way The way to check
-     * @param key The key (ref/name) that we are interested in
+     * @param key The {@link TagColumns} column of the lanes key that we are interested in
+     * @param turnKey The {@link TagColumns} column of the matching turn:lanes key
      */
-    private void checkContinuingWays(Way way, String key) {
-        Way wayContinue = null;
-        for (OsmPrimitive ref : way.getNode(way.getNodesCount() - 1).getReferrers()) {
-            if (ref instanceof Way && ref != way) {
-                if ((ref.hasKey("name") && ref.get("name") == way.get("name"))
-                        || (ref.hasKey("ref") && ref.get("ref") == way.get("ref"))) {
-                    wayContinue = (Way) ref;
+    private void checkContinuingWays(Way way, int key, int turnKey) {
+        TagColumns columns = getTagColumns(way);
+        HighwayGraph graph = columns.getGraph();
+        int w = graph.getWayOrdinal(way);
+        if (w < 0) return;
+        int c = -1;
+        int n = graph.getNodeOrdinal(way.lastNode());
+        for (int edge = graph.getFirstEdge(n); edge < graph.getEndEdge(n); edge++) {
+            int ref = graph.getParentOrdinal(edge);
+            if (ref != w) {
+                if (columns.isSame(TagColumns.NAME, ref, w) || columns.isSame(TagColumns.REF, ref, w)) {
+                    c = ref;
                     break;
                 }
             }
         }
+        Way wayContinue = c < 0 ? null : graph.getWay(c);
         if (wayContinue != null) {
-            if ((!wayContinue.hasKey(key) || (wayContinue.hasKey(key) && wayContinue.get(key) != way.get(key)))
-                    && (!way.hasKey("turn:lanes") && !way.hasKey("turn:lanes:forward") && !way.hasKey("turn:lanes:backward"))) {
-                errors.add(TestError.builder(this, Severity.WARNING, LANES_DO_NO_MATCH_AND_NO_TURN_LANES)
+            if (!columns.isSame(key, c, w)
+                    && (!columns.has(TagColumns.TURN_LANES, w) && !columns.has(TagColumns.TURN_LANES_FORWARD, w)
+                            && !columns.has(TagColumns.TURN_LANES_BACKWARD, w))) {
+                addError(TestError.builder(this, Severity.WARNING, LANES_DO_NO_MATCH_AND_NO_TURN_LANES)
                         .message(tr("kaart"), tr("There are not turn lanes going into a continuing road with a different number of lanes"))
                         .primitives(way, wayContinue)
                         .build());
@@ -424,52 +385,65 @@ public class TurnLanes extends Test {
         } else if (wayContinue == null) {
             return;
         }
-        String keyConcat = "turn:".concat(key);
-        String[] turnLanes;
-        if (way.hasKey(keyConcat)) turnLanes = way.get(keyConcat).split("[|]");
-        else turnLanes = new String[] {"unknown"};
-        int possibleAdditionalLanes = 0;
-        int possibleRemovedLanes = 0;
-        for (String lane : turnLanes) {
-            if (lane.contains("slight_left") && lane.contains("through")) possibleAdditionalLanes++;
-            if (lane.contains("slight_right") && lane.contains("through")) possibleAdditionalLanes++;
-            if (lane.contains("merge_to_right") || lane.contains("merge_to_left")) possibleRemovedLanes++;
-        }
-        int lanes = Integer.parseInt(way.get(key));
-        int lanesContinue = Integer.parseInt(wayContinue.get(key));
+        TurnLaneModel turnLanes = columns.has(turnKey, w) ? getLanes(columns.getString(turnKey, w)) : TurnLaneModel.EMPTY;
+        int possibleAdditionalLanes = turnLanes.countLanesWithAll(TurnLaneModel.SLIGHT_LEFT | TurnLaneModel.THROUGH)
+                + turnLanes.countLanesWithAll(TurnLaneModel.SLIGHT_RIGHT | TurnLaneModel.THROUGH);
+        int possibleRemovedLanes = turnLanes.countLanesWithAny(TurnLaneModel.MERGES);
+        int lanes = parseLanes(columns.getString(key, w));
+        int lanesContinue = parseLanes(columns.getString(key, c));
+        if (lanes < 0 || lanesContinue < 0) return;
         if (lanes != lanesContinue + possibleAdditionalLanes - possibleRemovedLanes
                 || possibleAdditionalLanes > 2 || possibleRemovedLanes > 2) {
-            errors.add(TestError.builder(this, Severity.WARNING, NO_TURN_LANES_CHANGING_LANES)
+            addError(TestError.builder(this, Severity.WARNING, NO_TURN_LANES_CHANGING_LANES)
                     .message(tr("kaart"), tr("There is no indication of which lanes change"))
                     .primitives(way, wayContinue)
                     .build());
         }
     }
+    /**
+     * Parse a lanes value without allocating
+     * @param value The lanes value
+     * @return The number of lanes, or -1 if the value is not a number
+     */
+    private static int parseLanes(String value) {
+        if (value == null || value.isEmpty() || value.length() > 3) return -1;
+        int lanes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            lanes = lanes * 10 + (c - '0');
+        }
+        return lanes;
+    }
+
     /**
      * Check way to ensure that we have indications of which lanes appear/disappear.
      * @param way Way to check
      */
     public void checkContinuingLanes(Way way) {
-        if (way.hasKey("turn:lanes:forward")) {
-            checkContinuingWays(way, "lanes:forward");
+        TagColumns columns = getTagColumns(way);
+        boolean forward = columns.has(TagColumns.TURN_LANES_FORWARD, way);
+        boolean backward = columns.has(TagColumns.TURN_LANES_BACKWARD, way);
+        if (forward) {
+            checkContinuingWays(way, TagColumns.LANES_FORWARD, TagColumns.TURN_LANES_FORWARD);
         }
-        if (way.hasKey("turn:lanes:backward")) {
-            checkContinuingWays(way, "lanes:backward");
+        if (backward) {
+            checkContinuingWays(way, TagColumns.LANES_BACKWARD, TagColumns.TURN_LANES_BACKWARD);
         }
-        if (!way.hasKey("turn:lanes:backward") && !way.hasKey("turn:lanes:forward") && way.hasKey("turn:lanes")) {
-            checkContinuingWays(way, "lanes");
+        if (!backward && !forward && columns.has(TagColumns.TURN_LANES, way)) {
+            checkContinuingWays(way, TagColumns.LANES, TagColumns.TURN_LANES);
         }
     }
     @Override
-    public void visit(Way way) {
-        if (!way.isUsable()) {
-            return;
-        }
-        if (hasTurnLanes(way)) {
-            turnLaneWays.add(way);
-        } else {
-            ways.add(way);
-        }
+    protected void prepareIndexes(DataSetIndex dataSetIndex) {
+        dataSetIndex.getTagColumns();
+        dataSetIndex.getJunctions();
+    }
+
+    @Override
+    protected void visit(Candidates candidates) {
+        turnLaneWays.addAll(candidates.getTurnLaneWays());
+        ways.addAll(candidates.getWaysWithoutTurnLanes());
     }
 
     public static boolean hasTurnLanes(OsmPrimitive osm) {
@@ -0,0 +1,136 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.validation.TestError;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+
+import com.kaartgroup.kaartvalidator.cli.BatchValidator;
+import com.kaartgroup.kaartvalidator.validation.KaartTest;
+
+/**
+ * Time a full validation run (startTest, visit and endTest) of each Kaart test on {@link SyntheticNetwork}s of
+ * 10k, 100k and 1M ways. Run {@link #main} (./gradlew :benchmarks:scaling) to also get the scaling exponent of
+ * each test, the slope of log(time) over log(ways): 1 is linear, and 2 is quadratic.
+ * <p>
+ * The dataset indexes are shared by all tests of a run, so they are built in the setup and are not measured.
+ * @author Taylor Smock
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Djava.awt.headless=true"})
+public class ScalingBenchmark {
+    private static final long SEED = 42;
+
+    @Param({"10000", "100000", "1000000"})
+    public int ways;
+
+    @Param({"Abbreviations", "LinkDestinations", "LinkTurn", "Maxspeed", "NameRefConsistency",
+            "RestrictionConsistency", "RoadEndsWithLinks", "TurnLanes"})
+    public String test;
+
+    private DataSet dataSet;
+    private KaartTest kaartTest;
+    private List<OsmPrimitive> selection;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        BatchValidator.initialize();
+        dataSet = SyntheticNetwork.generate(SEED, ways);
+        for (Class<? extends KaartTest> testClass : KaartPlugin.getTests()) {
+            if (testClass.getSimpleName().equals(test)) kaartTest = testClass.getConstructor().newInstance();
+        }
+        if (kaartTest == null) throw new IllegalArgumentException("Unknown test " + test);
+        run();
+    }
+
+    @Setup(Level.Iteration)
+    public void newSelection() {
+        // A new selection for each run, so that its candidates are not reused
+        selection = new ArrayList<>(dataSet.allPrimitives());
+    }
+
+    @Benchmark
+    public List<TestError> run() {
+        kaartTest.startTest(NullProgressMonitor.INSTANCE);
+        kaartTest.visit(selection == null ? new ArrayList<>(dataSet.allPrimitives()) : selection);
+        kaartTest.endTest();
+        return kaartTest.getErrors();
+    }
+
+    /**
+     * Run the benchmark, and print the scaling exponent of each test
+     * @param args The numbers of ways to run at, all of them if there are none
+     * @throws RunnerException if the benchmark could not be run
+     */
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder().include(ScalingBenchmark.class.getName());
+        if (args.length > 0) options.param("ways", args);
+        Collection<RunResult> results = new Runner(options.build()).run();
+        Map<String, Map<Integer, Double>> times = new TreeMap<>();
+        for (RunResult result : results) {
+            times.computeIfAbsent(result.getParams().getParam("test"), k -> new TreeMap<>())
+                    .put(Integer.parseInt(result.getParams().getParam("ways")), result.getPrimaryResult().getScore());
+        }
+        System.out.println();
+        System.out.printf("%-24s %s%n", "Test", "ms by ways, scaling exponent");
+        for (Map.Entry<String, Map<Integer, Double>> entry : times.entrySet()) {
+            StringBuilder line = new StringBuilder();
+            for (Map.Entry<Integer, Double> time : entry.getValue().entrySet()) {
+                line.append(String.format("%d: %.1f  ", time.getKey(), time.getValue()));
+            }
+            System.out.printf("%-24s %sexponent %.2f%n", entry.getKey(), line, exponent(entry.getValue()));
+        }
+    }
+
+    /**
+     * Fit time = c * ways^k by least squares on the logarithms
+     * @param times The times by number of ways
+     * @return k, or NaN if there are fewer than two sizes
+     */
+    static double exponent(Map<Integer, Double> times) {
+        if (times.size() < 2) return Double.NaN;
+        double sumX = 0;
+        double sumY = 0;
+        double sumXY = 0;
+        double sumXX = 0;
+        for (Map.Entry<Integer, Double> time : times.entrySet()) {
+            double x = Math.log(time.getKey());
+            double y = Math.log(time.getValue());
+            sumX += x;
+            sumY += y;
+            sumXY += x * y;
+            sumXX += x * x;
+        }
+        int n = times.size();
+        return (n * sumXY - sumX * sumY) / (n * sumXX - sumX * sumX);
+    }
+}
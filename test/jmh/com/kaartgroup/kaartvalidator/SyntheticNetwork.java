@@ -0,0 +1,207 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * Generate road networks that are much larger than the test/data fixtures, for scaling benchmarks.
+ * <p>
+ * The network is a grid of cities. Each city is a {@value #SIZE} by {@value #SIZE} street grid, with a primary road
+ * every {@value #PRIMARY_EVERY} streets, and a motorway along its south edge with an interchange (two link chains
+ * and a restriction) at each primary road. Random ways get the things the Kaart tests look for: turn lanes
+ * (some of them wrong), name and ref changes, abbreviated names, links without destinations and maxspeed gaps.
+ * The same seed and size always give the same network, other than the (negative) ids.
+ * @author Taylor Smock
+ */
+public final class SyntheticNetwork {
+    /** The number of intersections along each side of a city */
+    static final int SIZE = 20;
+    static final int PRIMARY_EVERY = 5;
+    /** The distance between intersections, in meters */
+    private static final double SPACING = 100;
+    private static final double METERS_PER_DEGREE = 111_320;
+    /** The south west corner of the first city, in the United States so that the names are English */
+    private static final double ORIGIN_LAT = 39;
+    private static final double ORIGIN_LON = -100;
+
+    private final Random random;
+    private final DataSet dataSet = new DataSet();
+    private final double dLat = SPACING / METERS_PER_DEGREE;
+    private final double dLon = SPACING / (METERS_PER_DEGREE * Math.cos(Math.toRadians(ORIGIN_LAT)));
+
+    private SyntheticNetwork(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Generate a network
+     * @param seed The random seed
+     * @param ways The approximate number of ways, the network has whole cities of about 800 ways
+     * @return The network, with a download area around all of it
+     */
+    public static DataSet generate(long seed, int ways) {
+        SyntheticNetwork network = new SyntheticNetwork(seed);
+        int perCity = waysPerCity();
+        int cities = Math.max(1, (ways + perCity / 2) / perCity);
+        int columns = (int) Math.ceil(Math.sqrt(cities));
+        // Cities are a city apart, so they do not touch
+        double cityLat = 2 * (SIZE + 4) * network.dLat;
+        double cityLon = 2 * (SIZE + 4) * network.dLon;
+        for (int i = 0; i < cities; i++) {
+            network.city(i, ORIGIN_LAT + (i / columns) * cityLat, ORIGIN_LON + (i % columns) * cityLon);
+        }
+        int rows = (cities + columns - 1) / columns;
+        network.dataSet.addDataSource(new DataSource(new Bounds(ORIGIN_LAT - cityLat, ORIGIN_LON - cityLon,
+                ORIGIN_LAT + (rows + 1) * cityLat, ORIGIN_LON + (columns + 1) * cityLon), "synthetic"));
+        return network.dataSet;
+    }
+
+    private static int waysPerCity() {
+        int interchanges = (SIZE - 2) / PRIMARY_EVERY;
+        return 2 * SIZE * (SIZE - 1) + (SIZE - 1) + 4 * interchanges;
+    }
+
+    private void city(int city, double lat, double lon) {
+        Node[][] grid = new Node[SIZE][SIZE];
+        for (int row = 0; row < SIZE; row++) {
+            for (int column = 0; column < SIZE; column++) {
+                grid[row][column] = node(lat + (row + 3) * dLat, lon + column * dLon);
+            }
+        }
+        for (int row = 0; row < SIZE; row++) {
+            String[] street = street(city, row, "East");
+            for (int column = 0; column + 1 < SIZE; column++) {
+                street(street, grid[row][column], grid[row][column + 1],
+                        row % PRIMARY_EVERY == 0, (column + 1) % PRIMARY_EVERY == 0);
+            }
+        }
+        for (int column = 0; column < SIZE; column++) {
+            String[] street = street(city, column, "North");
+            for (int row = 0; row + 1 < SIZE; row++) {
+                street(street, grid[row][column], grid[row + 1][column],
+                        column % PRIMARY_EVERY == 0, (row + 1) % PRIMARY_EVERY == 0);
+            }
+        }
+        // Restrictions at some of the intersections of primary roads
+        for (int row = 0; row + 1 < SIZE; row += PRIMARY_EVERY) {
+            for (int column = PRIMARY_EVERY; column < SIZE; column += PRIMARY_EVERY) {
+                if (random.nextInt(3) != 0) continue;
+                Node via = grid[row][column];
+                restriction(random.nextBoolean() ? "no_left_turn" : "no_u_turn",
+                        findWay(grid[row][column - 1], via), via, findWay(via, grid[row + 1][column]));
+            }
+        }
+        motorway(city, grid, lat, lon);
+    }
+
+    /**
+     * @return The name, the ref and the alternative name of a street
+     */
+    private String[] street(int city, int index, String direction) {
+        String suffix = random.nextInt(10) == 0 ? "St" : "Street";
+        return new String[] {direction + " " + index + " " + suffix, "SR " + (city * SIZE + index),
+                direction + " " + index + " Avenue"};
+    }
+
+    private Way street(String[] street, Node from, Node to, boolean primary, boolean approachesPrimary) {
+        Way way = way(from, to);
+        if (!primary) {
+            way.put("highway", "residential");
+            way.put("name", street[0]);
+            if (random.nextBoolean()) way.put("maxspeed", "30 mph");
+            return way;
+        }
+        way.put("highway", "primary");
+        // Name and ref changes along the road
+        way.put("name", random.nextInt(20) == 0 ? street[2] : street[0]);
+        if (random.nextInt(20) != 0) way.put("ref", street[1]);
+        // Maxspeed gaps between ways with the same maxspeed
+        if (random.nextInt(20) != 0) way.put("maxspeed", "45 mph");
+        way.put("lanes", "4");
+        if (approachesPrimary) {
+            way.put("lanes:forward", "2");
+            way.put("lanes:backward", "2");
+            // Some turn lanes do not match the number of lanes
+            way.put("turn:lanes:forward", random.nextInt(10) == 0 ? "left|through|right" : "left|through;right");
+            way.put("turn:lanes:backward", "left|through;right");
+        }
+        return way;
+    }
+
+    private void motorway(int city, Node[][] grid, double lat, double lon) {
+        Node[] motorway = new Node[SIZE];
+        for (int column = 0; column < SIZE; column++) {
+            motorway[column] = node(lat, lon + column * dLon);
+        }
+        for (int column = 0; column + 1 < SIZE; column++) {
+            Way way = way(motorway[column], motorway[column + 1]);
+            way.put("highway", "motorway");
+            way.put("oneway", "yes");
+            way.put("ref", "I " + city);
+            way.put("lanes", "3");
+            if (random.nextInt(20) != 0) way.put("maxspeed", "70 mph");
+        }
+        for (int column = PRIMARY_EVERY; column + 1 < SIZE; column += PRIMARY_EVERY) {
+            Node street = grid[0][column];
+            // Off ramp, a chain of two links that should have a destination
+            Node exit = node(lat + dLat, lon + (column - 0.5) * dLon);
+            Way exit1 = link(motorway[column - 1], exit);
+            Way exit2 = link(exit, street);
+            int destination = random.nextInt(4);
+            if (destination == 1) exit1.put("destination", "North " + column);
+            else if (destination > 1) exit2.put("destination", "North " + column);
+            // On ramp
+            Node entrance = node(lat + dLat, lon + (column + 0.5) * dLon);
+            link(street, entrance).put("destination:ref", "I " + city);
+            link(entrance, motorway[column + 1]);
+            restriction("no_left_turn", exit2, street, findWay(street, grid[0][column + 1]));
+        }
+    }
+
+    private Way link(Node from, Node to) {
+        Way way = way(from, to);
+        way.put("highway", "motorway_link");
+        way.put("oneway", "yes");
+        return way;
+    }
+
+    private Node node(double lat, double lon) {
+        Node node = new Node(new LatLon(lat, lon));
+        dataSet.addPrimitive(node);
+        return node;
+    }
+
+    private Way way(Node... nodes) {
+        Way way = new Way();
+        way.setNodes(Arrays.asList(nodes));
+        dataSet.addPrimitive(way);
+        return way;
+    }
+
+    private static Way findWay(Node from, Node to) {
+        for (Way way : from.getParentWays()) {
+            if (way.isFirstLastNode(to)) return way;
+        }
+        return null;
+    }
+
+    private void restriction(String restriction, Way from, Node via, Way to) {
+        Relation relation = new Relation();
+        relation.put("type", "restriction");
+        relation.put("restriction", restriction);
+        relation.addMember(new RelationMember("from", from));
+        relation.addMember(new RelationMember("via", via));
+        relation.addMember(new RelationMember("to", to));
+        dataSet.addPrimitive(relation);
+    }
+}
@@ -0,0 +1,146 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.validation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.io.Compression;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.io.OsmReader;
+
+import com.kaartgroup.kaartvalidator.cli.BatchValidator;
+import com.kaartgroup.kaartvalidator.index.Candidates;
+import com.kaartgroup.kaartvalidator.index.HighwayGraph;
+
+/**
+ * Benchmarks of the per-way checks of the Kaart tests, on the test/data fixtures.
+ * Each operation starts a test and runs its check on every candidate way of the fixture, like one validation run
+ * does, so caches that only live for a run (e.g., the abbreviation cache) are cold at the start of each operation.
+ * The dataset indexes are built in the setup, so they are not measured.
+ * @author Taylor Smock
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ValidationBenchmark {
+    /** The directory of the fixtures, set by the jmh task since the benchmarks do not run in the project directory */
+    private static final String TEST_DATA = System.getProperty("kaartvalidator.testdata", "test/data");
+
+    @Param({"PortElizabethSouthAfrica.osm", "TurnLinksIntersectionFirstAndGrandGrandJunction.osm"})
+    public String fixture;
+
+    private final Abbreviations abbreviations = new Abbreviations();
+    private final TurnLanes turnLanes = new TurnLanes();
+    private final LinkTurn linkTurn = new LinkTurn();
+    private final LinkDestinations linkDestinations = new LinkDestinations();
+
+    private Candidates candidates;
+    private List<Way> nameWays;
+    private List<String> nameKeys;
+    /** from, via, to */
+    private List<Object[]> turns;
+
+    @Setup
+    public void setUp() throws IOException, IllegalDataException {
+        BatchValidator.initialize();
+        DataSet dataSet;
+        try (InputStream in = Compression.getUncompressedFileInputStream(new File(TEST_DATA, fixture))) {
+            dataSet = OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+        }
+        candidates = Candidates.build(dataSet.allPrimitives());
+        nameWays = new ArrayList<>();
+        nameKeys = new ArrayList<>();
+        for (Way way : candidates.getNameTagWays()) {
+            for (String key : way.keySet()) {
+                if (key.contains("name") && !"int_name".equals(key)) {
+                    nameWays.add(way);
+                    nameKeys.add(key);
+                }
+            }
+        }
+        turns = new ArrayList<>();
+        for (Way from : candidates.getHighways()) {
+            for (Node via : new Node[] {from.firstNode(), from.lastNode()}) {
+                for (Way to : via.getParentWays()) {
+                    if (to != from && HighwayGraph.isHighway(to)) turns.add(new Object[] {from, via, to});
+                }
+            }
+        }
+        // Build the dataset indexes before measuring
+        for (KaartTest test : new KaartTest[] {abbreviations, turnLanes, linkTurn, linkDestinations}) {
+            test.startTest(NullProgressMonitor.INSTANCE);
+            test.visit(new ArrayList<>(dataSet.allPrimitives()));
+            test.endTest();
+        }
+        // getBearing throws for turns it cannot measure, which would end the benchmark
+        turns.removeIf(turn -> {
+            try {
+                turnLanes.getBearing((Way) turn[0], (Node) turn[1], (Way) turn[2]);
+                return false;
+            } catch (Exception e) {
+                return true;
+            }
+        });
+    }
+
+    @Benchmark
+    public void abbreviationsProcess(Blackhole blackhole) {
+        abbreviations.startTest(NullProgressMonitor.INSTANCE);
+        for (int i = 0; i < nameWays.size(); i++) {
+            abbreviations.process(nameWays.get(i), nameKeys.get(i));
+        }
+        blackhole.consume(abbreviations.getErrors());
+    }
+
+    @Benchmark
+    public void turnLanesGetContinuingLanes(Blackhole blackhole) {
+        turnLanes.startTest(NullProgressMonitor.INSTANCE);
+        for (Way way : candidates.getTurnLaneWays()) {
+            blackhole.consume(turnLanes.getContinuingLanes(way, "forward"));
+            blackhole.consume(turnLanes.getContinuingLanes(way, "backward"));
+        }
+    }
+
+    @Benchmark
+    public void turnLanesGetBearing(Blackhole blackhole) throws Exception {
+        turnLanes.startTest(NullProgressMonitor.INSTANCE);
+        for (Object[] turn : turns) {
+            blackhole.consume(turnLanes.getBearing((Way) turn[0], (Node) turn[1], (Way) turn[2]));
+        }
+    }
+
+    @Benchmark
+    public void linkTurnCheckLinkAndIntersection(Blackhole blackhole) {
+        linkTurn.startTest(NullProgressMonitor.INSTANCE);
+        for (Way link : candidates.getLinks()) {
+            linkTurn.checkLinkAndIntersection(link);
+        }
+        blackhole.consume(linkTurn.getErrors());
+    }
+
+    @Benchmark
+    public void linkDestinationsCheckDestination(Blackhole blackhole) {
+        linkDestinations.startTest(NullProgressMonitor.INSTANCE);
+        for (Way link : candidates.getLinks()) {
+            blackhole.consume(linkDestinations.checkDestination(link));
+        }
+        blackhole.consume(linkDestinations.getErrors());
+    }
+}
@@ -0,0 +1,131 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.validation.TestError;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+
+import com.kaartgroup.kaartvalidator.validation.KaartTest;
+
+/**
+ * Build small road networks for tests. The primitives have positive ids, so that nodes outside of the download area
+ * are treated like they are by the validator.
+ */
+public final class TestNetwork {
+    private final DataSet dataSet = new DataSet();
+    private long nextId = 1;
+
+    /**
+     * Create a network with a download area
+     * @param minLat The minimum latitude of the download area
+     * @param minLon The minimum longitude of the download area
+     * @param maxLat The maximum latitude of the download area
+     * @param maxLon The maximum longitude of the download area
+     */
+    public TestNetwork(double minLat, double minLon, double maxLat, double maxLon) {
+        dataSet.addDataSource(new DataSource(new Bounds(minLat, minLon, maxLat, maxLon), "test"));
+    }
+
+    /**
+     * @return The dataset of the network
+     */
+    public DataSet getDataSet() {
+        return dataSet;
+    }
+
+    /**
+     * Add a node
+     * @param lat The latitude
+     * @param lon The longitude
+     * @return The node
+     */
+    public Node node(double lat, double lon) {
+        Node node = new Node(nextId++, 1);
+        node.setCoor(new LatLon(lat, lon));
+        dataSet.addPrimitive(node);
+        return node;
+    }
+
+    /**
+     * Add a way
+     * @param tags The tags, as key=value separated by semicolons (e.g., "highway=primary;name=Main Street")
+     * @param nodes The nodes of the way
+     * @return The way
+     */
+    public Way way(String tags, Node... nodes) {
+        Way way = new Way(nextId++, 1);
+        way.setNodes(Arrays.asList(nodes));
+        way.setKeys(parseTags(tags));
+        dataSet.addPrimitive(way);
+        return way;
+    }
+
+    /**
+     * Add a turn restriction
+     * @param restriction The value of the restriction tag (e.g., "no_left_turn")
+     * @param from The from way
+     * @param to The to way
+     * @param via The via node, or the via ways
+     * @return The relation
+     */
+    public Relation restriction(String restriction, Way from, Way to, OsmPrimitive... via) {
+        Relation relation = new Relation(nextId++, 1);
+        relation.addMember(new RelationMember("from", from));
+        for (OsmPrimitive primitive : via) {
+            relation.addMember(new RelationMember("via", primitive));
+        }
+        relation.addMember(new RelationMember("to", to));
+        relation.setKeys(parseTags("type=restriction;restriction=" + restriction));
+        dataSet.addPrimitive(relation);
+        return relation;
+    }
+
+    private static Map<String, String> parseTags(String tags) {
+        Map<String, String> keys = new HashMap<>();
+        for (String tag : tags.split(";")) {
+            int equals = tag.indexOf('=');
+            keys.put(tag.substring(0, equals), tag.substring(equals + 1));
+        }
+        return keys;
+    }
+
+    /**
+     * Run a test on the whole network, like the validator does
+     * @param test The test
+     * @return The errors of the test
+     */
+    public List<TestError> validate(KaartTest test) {
+        test.startTest(NullProgressMonitor.INSTANCE);
+        test.visit(new ArrayList<>(dataSet.allPrimitives()));
+        test.endTest();
+        return test.getErrors();
+    }
+
+    /**
+     * Get the errors with a code
+     * @param errors The errors
+     * @param code The code
+     * @return The errors with the code
+     */
+    public static List<TestError> withCode(List<TestError> errors, int code) {
+        List<TestError> matching = new ArrayList<>();
+        for (TestError error : errors) {
+            if (error.getCode() == code) matching.add(error);
+        }
+        return matching;
+    }
+}
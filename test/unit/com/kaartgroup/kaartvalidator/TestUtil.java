@@ -17,6 +17,8 @@ import org.openstreetmap.josm.data.projection.Projections;
 import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.I18n;
 import org.openstreetmap.josm.tools.PlatformManager;
+import org.openstreetmap.josm.tools.RightAndLefthandTraffic;
+import org.openstreetmap.josm.tools.Territories;
 
 /**
  *
@@ -26,6 +28,7 @@ import org.openstreetmap.josm.tools.PlatformManager;
  */
 public final class TestUtil {
   private static boolean isInitialized;
+  private static boolean isTerritoriesInitialized;
 
   private TestUtil() {
     // Prevent instantiation
@@ -50,6 +53,18 @@ public final class TestUtil {
     }
   }
 
+  /**
+   * Initializes the country boundaries, for tests that depend on the driving side.
+   */
+  public static synchronized void initTerritories() {
+    if (!isTerritoriesInitialized) {
+      initPlugin();
+      Territories.initialize();
+      RightAndLefthandTraffic.initialize();
+      isTerritoriesInitialized = true;
+    }
+  }
+
   /**
    * This method tests utility classes for common coding standards (exactly one constructor that's private,
    * only static methods, …) and fails the current test if one of those standards is not met.
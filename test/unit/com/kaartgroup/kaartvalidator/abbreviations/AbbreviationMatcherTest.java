@@ -0,0 +1,63 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.abbreviations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.kaartgroup.kaartvalidator.abbreviations.AbbreviationDictionary.Position;
+
+public class AbbreviationMatcherTest {
+    private AbbreviationDictionary dictionary;
+    private AbbreviationMatcher matcher;
+
+    @Before
+    public void setUp() {
+        dictionary = new AbbreviationDictionary();
+        dictionary.add("Ave", Position.UNKNOWN, Arrays.asList("Avenue"));
+        dictionary.add("Av", Position.UNKNOWN, Arrays.asList("Avenue"));
+        dictionary.add("Λεωφ.", Position.PREFIX, Arrays.asList("Λεωφόρος"));
+        dictionary.add("Br", Position.UNKNOWN, Arrays.asList("Brace", "Brae", "Bridge"));
+        dictionary.add("Ct", Position.SUFFIX, Arrays.asList("Court"));
+        matcher = dictionary.compile();
+    }
+
+    @Test
+    public void testWordBoundaries() {
+        assertNull(matcher.find("Avenue Road"));
+        assertNull(matcher.find("Main Street"));
+        assertNull(matcher.find("Brown Street"));
+        AbbreviationMatcher.Match match = matcher.find("Main Ave");
+        assertEquals("Ave", match.getAbbreviation());
+        assertEquals(5, match.getStart());
+        assertEquals(8, match.getEnd());
+    }
+
+    @Test
+    public void testTrailingPeriod() {
+        AbbreviationMatcher.Match match = matcher.find("Main Ave. North");
+        assertEquals("Ave", match.getAbbreviation());
+        assertEquals(9, match.getEnd());
+    }
+
+    @Test
+    public void testPositions() {
+        assertEquals("Λεωφ.", matcher.find("Λεωφ. Αθηνών").getAbbreviation());
+        assertEquals("Λεωφ.", matcher.find("Λεωφ Αθηνών").getAbbreviation());
+        assertNull(matcher.find("Οδός Λεωφ. Αθηνών"));
+        assertEquals("Ct", matcher.find("Hill Ct").getAbbreviation());
+        assertNull(matcher.find("Ct Hill"));
+    }
+
+    @Test
+    public void testDictionaryValueKeys() {
+        dictionary.add("Ct", Position.UNKNOWN, Arrays.asList("Court", "Circuit"));
+        assertEquals(2, dictionary.getExpansions("Ct").size());
+        assertEquals(1, dictionary.getExpansions("Ct", Position.SUFFIX).size());
+        assertEquals(3, dictionary.getExpansions("Br").size());
+    }
+}
@@ -0,0 +1,64 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.cli;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongPairSorterTest {
+    @Test
+    public void testSort() {
+        long[] keys = {5, -3, 9, 0, 5, Long.MIN_VALUE, 2};
+        long[] values = {50, -30, 90, 0, 50, 1, 20};
+        LongPairSorter.sort(keys, values, keys.length);
+        assertArrayEquals(new long[] {Long.MIN_VALUE, -3, 0, 2, 5, 5, 9}, keys);
+        assertArrayEquals(new long[] {1, -30, 0, 20, 50, 50, 90}, values);
+    }
+
+    @Test
+    public void testMergedChunks() throws Exception {
+        Path directory = Files.createTempDirectory("sorter");
+        // More chunks than are merged at once, so some of them are merged twice
+        int count = 1000;
+        long[] keys = new long[count];
+        Random random = new Random(42);
+        try (LongPairSorter sorter = new LongPairSorter(directory, "test", 4)) {
+            for (int i = 0; i < count; i++) {
+                keys[i] = random.nextInt(count) - count / 2;
+                sorter.add(keys[i], keys[i] * 10);
+            }
+            Arrays.sort(keys);
+            try (LongPairSorter.Reader reader = sorter.read()) {
+                for (long key : keys) {
+                    assertTrue(reader.next());
+                    assertEquals(key, reader.key());
+                    assertEquals(key * 10, reader.value());
+                }
+                assertFalse(reader.next());
+            }
+        }
+        // The chunks are deleted once they are read
+        File[] files = directory.toFile().listFiles();
+        assertEquals(0, files.length);
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        Path directory = Files.createTempDirectory("sorter");
+        try (LongPairSorter sorter = new LongPairSorter(directory, "test", 4);
+                LongPairSorter.Reader reader = sorter.read()) {
+            assertFalse(reader.next());
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,164 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.cli;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.kaartgroup.kaartvalidator.AbstractTest;
+import com.kaartgroup.kaartvalidator.TestUtil;
+import com.kaartgroup.kaartvalidator.validation.Maxspeed;
+import com.kaartgroup.kaartvalidator.validation.RoadEndsWithLinks;
+
+public class TiledValidatorTest extends AbstractTest {
+    /** The features are repeated on a grid of this many rows and columns, 0.01 degrees apart */
+    private static final int GRID = 4;
+
+    @BeforeClass
+    public static void setUpTerritories() {
+        TestUtil.initTerritories();
+    }
+
+    /**
+     * Write a file with a road ending in a Y of links across each multiple of 0.01 degrees of longitude, and a short
+     * gap between equal maxspeeds across each multiple of 0.01 degrees of latitude
+     */
+    private static File writeGrid() throws Exception {
+        StringBuilder nodes = new StringBuilder();
+        StringBuilder ways = new StringBuilder();
+        long[] id = {1};
+        for (int i = 1; i <= GRID; i++) {
+            for (int j = 1; j <= GRID; j++) {
+                double lat = 0.01 * i;
+                double lon = 0.01 * j;
+                long road = node(nodes, id, lat, lon - 0.0005);
+                long y = node(nodes, id, lat, lon - 0.0001);
+                long left = node(nodes, id, lat + 0.0001, lon + 0.0001);
+                long right = node(nodes, id, lat - 0.0001, lon + 0.0001);
+                way(ways, id, "highway=primary;name=Main", road, y);
+                way(ways, id, "highway=primary_link", y, left);
+                way(ways, id, "highway=primary_link", y, right);
+
+                long south = node(nodes, id, lat - 0.0004, lon + 0.003);
+                long gapSouth = node(nodes, id, lat - 0.00002, lon + 0.003);
+                long gapNorth = node(nodes, id, lat + 0.00002, lon + 0.003);
+                long north = node(nodes, id, lat + 0.0004, lon + 0.003);
+                way(ways, id, "highway=residential;name=Side;maxspeed=50", south, gapSouth);
+                way(ways, id, "highway=residential;name=Side", gapSouth, gapNorth);
+                way(ways, id, "highway=residential;name=Side;maxspeed=50", gapNorth, north);
+            }
+        }
+        return write("<bounds minlat='0' minlon='0' maxlat='0.06' maxlon='0.06'/>\n" + nodes + ways);
+    }
+
+    private static File write(CharSequence elements) throws Exception {
+        String osm = "<?xml version='1.0' encoding='UTF-8'?>\n<osm version='0.6' generator='test'>\n" + elements
+                + "</osm>\n";
+        File file = Files.createTempFile("tiled", ".osm").toFile();
+        file.deleteOnExit();
+        Files.write(file.toPath(), osm.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static long node(StringBuilder nodes, long[] id, double lat, double lon) {
+        long node = id[0]++;
+        nodes.append(String.format(Locale.ROOT, "<node id='%d' version='1' lat='%.7f' lon='%.7f'/>%n", node, lat, lon));
+        return node;
+    }
+
+    private static void way(StringBuilder ways, long[] id, String tags, long... nodes) {
+        ways.append("<way id='").append(id[0]++).append("' version='1'>\n");
+        for (long node : nodes) {
+            ways.append("<nd ref='").append(node).append("'/>\n");
+        }
+        for (String tag : tags.split(";")) {
+            String[] keyValue = tag.split("=");
+            ways.append("<tag k='").append(keyValue[0]).append("' v='").append(keyValue[1]).append("'/>\n");
+        }
+        ways.append("</way>\n");
+    }
+
+    /**
+     * Describe results independently of their order
+     */
+    private static List<String> describe(List<ValidationResult> results) {
+        List<String> descriptions = new ArrayList<>();
+        for (ValidationResult result : results) {
+            List<String> primitives = new ArrayList<>(result.getPrimitives());
+            Collections.sort(primitives);
+            descriptions.add(result.getTest() + " " + result.getCode() + " " + primitives);
+        }
+        Collections.sort(descriptions);
+        return descriptions;
+    }
+
+    private static int count(List<ValidationResult> results, Class<?> test, int code) {
+        int count = 0;
+        for (ValidationResult result : results) {
+            if (result.getTest().equals(test.getSimpleName()) && result.getCode() == code) count++;
+        }
+        return count;
+    }
+
+    private static List<ValidationResult> validateTiled(File file, double tileSize) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            return new TiledValidator(tileSize, TiledValidator.DEFAULT_HALO, executor).validate(file);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSameErrorsAsWholeFile() throws Exception {
+        File file = writeGrid();
+        List<ValidationResult> whole = BatchValidator.validate(file);
+        List<ValidationResult> tiled = validateTiled(file, 0.01);
+
+        // Every error is in the halo of two tiles, and is only reported by one of them
+        assertEquals(GRID * GRID, count(tiled, RoadEndsWithLinks.class, RoadEndsWithLinks.ROAD_ENDS_WITH_LINKS));
+        assertEquals(GRID * GRID, count(tiled, Maxspeed.class, Maxspeed.MAXSPEED_BLANKSPOT));
+        assertEquals(describe(whole), describe(tiled));
+    }
+
+    @Test
+    public void testTilesSmallerThanHalo() throws Exception {
+        File file = writeGrid();
+        // Each way is near several tiles, and there are more tiles than are buffered at once while splitting
+        List<ValidationResult> tiled = validateTiled(file, 0.001);
+
+        assertEquals(describe(BatchValidator.validate(file)), describe(tiled));
+    }
+
+    @Test(timeout = 60_000)
+    public void testRestrictionWithMissingWay() throws Exception {
+        StringBuilder elements = new StringBuilder("<bounds minlat='10' minlon='10' maxlat='10.01' maxlon='10.01'/>\n");
+        long[] id = {1};
+        long a = node(elements, id, 10.005, 10.004);
+        long via = node(elements, id, 10.005, 10.005);
+        long b = node(elements, id, 10.006, 10.005);
+        long to = id[0];
+        way(elements, id, "highway=primary;name=Main", via, b);
+        way(elements, id, "highway=residential;name=Side", a, via);
+        // The from way is not in the file, so it has no bounds, and the restriction is only near the via node
+        elements.append("<relation id='").append(id[0]++).append("' version='1'>\n")
+                .append("<member type='way' ref='1000' role='from'/>\n")
+                .append("<member type='node' ref='").append(via).append("' role='via'/>\n")
+                .append("<member type='way' ref='").append(to).append("' role='to'/>\n")
+                .append("<tag k='type' v='restriction'/>\n<tag k='restriction' v='no_left_turn'/>\n</relation>\n");
+        File file = write(elements);
+
+        assertEquals(describe(BatchValidator.validate(file)), describe(validateTiled(file, 0.01)));
+    }
+}
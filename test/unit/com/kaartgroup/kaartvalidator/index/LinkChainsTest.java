@@ -0,0 +1,67 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+
+import com.kaartgroup.kaartvalidator.AbstractTest;
+import com.kaartgroup.kaartvalidator.TestNetwork;
+
+public class LinkChainsTest extends AbstractTest {
+    @Test
+    public void testChains() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node m1 = network.node(0, 0);
+        Node m2 = network.node(0, 0.002);
+        Node p = network.node(0.0005, 0.0025);
+        Node q = network.node(0.001, 0.003);
+        Node r = network.node(0.001, 0.004);
+        Node t = network.node(-0.0005, 0.0025);
+        Node u = network.node(-0.001, 0.003);
+        Way motorway = network.way("highway=motorway;oneway=yes", m1, m2);
+        // Listed out of order, the chain is still in the direction of the ways
+        Way link2 = network.way("highway=motorway_link;oneway=yes", p, q);
+        Way link1 = network.way("highway=motorway_link;oneway=yes", m2, p);
+        network.way("highway=primary", q, r);
+        // Another highway meets the join at t, so link3 and link4 are not chained
+        Way link3 = network.way("highway=motorway_link;oneway=yes", m2, t);
+        Way link4 = network.way("highway=motorway_link;oneway=yes", t, u);
+        network.way("highway=service", t, network.node(-0.001, 0.002));
+
+        LinkChains chains = LinkChains.build(HighwayGraph.build(network.getDataSet().getWays()));
+        assertEquals(-1, chains.getChain(motorway));
+        int chain = chains.getChain(link1);
+        assertTrue(chain >= 0);
+        assertEquals(chain, chains.getChain(link2));
+        assertEquals(Arrays.asList(link1, link2), chains.getMembers(chain));
+        assertSame(link2, chains.getLast(chain));
+        assertNotEquals(chains.getChain(link3), chains.getChain(link4));
+        assertEquals(Arrays.asList(link3), chains.getMembers(chains.getChain(link3)));
+        assertEquals(3, chains.getChainCount());
+    }
+
+    @Test
+    public void testLoop() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node a = network.node(0, 0);
+        Node b = network.node(0, 0.001);
+        Node c = network.node(0.001, 0.0005);
+        Way first = network.way("highway=primary_link;oneway=yes", a, b);
+        Way second = network.way("highway=primary_link;oneway=yes", b, c);
+        Way third = network.way("highway=primary_link;oneway=yes", c, a);
+
+        LinkChains chains = LinkChains.build(HighwayGraph.build(network.getDataSet().getWays()));
+        assertEquals(1, chains.getChainCount());
+        assertEquals(3, chains.getMembers(0).size());
+        assertEquals(chains.getChain(first), chains.getChain(second));
+        assertEquals(chains.getChain(first), chains.getChain(third));
+    }
+}
@@ -0,0 +1,87 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+
+import com.kaartgroup.kaartvalidator.AbstractTest;
+import com.kaartgroup.kaartvalidator.TestNetwork;
+
+public class LinkMotifsTest extends AbstractTest {
+    private static LinkMotifs build(TestNetwork network) {
+        return LinkMotifs.build(Junctions.build(HighwayGraph.build(network.getDataSet().getWays())));
+    }
+
+    @Test
+    public void testTriangle() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node a = network.node(0, 0);
+        Node b = network.node(0, 0.001);
+        Node corner = network.node(0, 0.002);
+        Node e = network.node(0.001, 0.002);
+        Node d = network.node(0.002, 0.002);
+        Way from = network.way("highway=primary", a, b, corner);
+        Way to = network.way("highway=secondary", corner, e, d);
+        Way link = network.way("highway=primary_link;oneway=yes", b, e);
+
+        LinkMotifs motifs = build(network);
+        LinkMotifs.Triangle triangle = motifs.getTriangle(link);
+        assertNotNull(triangle);
+        assertSame(link, triangle.getLink());
+        assertSame(from, triangle.getFrom());
+        assertSame(to, triangle.getTo());
+        assertSame(corner, triangle.getCorner());
+        assertNull(motifs.getTriangle(from));
+    }
+
+    @Test
+    public void testNoTriangle() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node a = network.node(0, 0);
+        Node b = network.node(0, 0.001);
+        Node c = network.node(0, 0.002);
+        Node e = network.node(0.001, 0.003);
+        Node d = network.node(0.002, 0.003);
+        network.way("highway=primary", a, b, c);
+        // The secondary road does not meet the primary road, so the link is a plain ramp
+        network.way("highway=secondary", e, d);
+        Way link = network.way("highway=primary_link;oneway=yes", b, e);
+
+        assertNull(build(network).getTriangle(link));
+    }
+
+    @Test
+    public void testEndingAndPassingLinks() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node x = network.node(0, 0);
+        Node y = network.node(0, 0.001);
+        Node z = network.node(0, 0.002);
+        Way main = network.way("highway=primary;name=Main", x, y);
+        Way left = network.way("highway=primary_link", y, network.node(0.0001, 0.0011));
+        Way right = network.way("highway=primary_link", network.node(-0.0001, 0.0011), y);
+        Way other = network.way("highway=primary;name=Other", network.node(0, 0.003), z);
+        Way passing = network.way("highway=primary_link", network.node(0.0001, 0.002), z,
+                network.node(-0.0001, 0.002));
+
+        LinkMotifs motifs = build(network);
+        assertEquals(2, motifs.getEndingLinks(y).size());
+        assertTrue(motifs.getEndingLinks(y).containsAll(Arrays.asList(left, right)));
+        assertTrue(motifs.getPassingLinks(y).isEmpty());
+        assertEquals(Collections.singletonList(passing), motifs.getPassingLinks(z));
+        assertTrue(motifs.getEndingLinks(z).isEmpty());
+        assertTrue(motifs.getEndingLinks(x).isEmpty());
+        assertNull(motifs.getTriangle(left));
+        assertNull(motifs.getTriangle(main));
+        assertNull(motifs.getTriangle(other));
+    }
+}
@@ -0,0 +1,73 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+
+import com.kaartgroup.kaartvalidator.AbstractTest;
+import com.kaartgroup.kaartvalidator.TestNetwork;
+
+public class RoadChainsTest extends AbstractTest {
+    @Test
+    public void testChains() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node a = network.node(0, 0);
+        Node b = network.node(0, 0.001);
+        Node c = network.node(0, 0.002);
+        Node d = network.node(0, 0.003);
+        Node e = network.node(0.001, 0.004);
+        Node f = network.node(-0.001, 0.004);
+        Node x = network.node(0.001, 0.002);
+        Node y = network.node(-0.001, 0.002);
+        Node g = network.node(0.001, 0);
+        Way main1 = network.way("highway=residential;name=Main", a, b);
+        Way main2 = network.way("highway=residential;name=Main", c, b);
+        Way main3 = network.way("highway=residential;name=Main", c, d);
+        // Passes through c, so it crosses Main there instead of continuing it
+        Way cross = network.way("highway=residential;name=Main", x, c, y);
+        Way roundabout = network.way("highway=residential;junction=roundabout;name=Main", d, e, f, d);
+        Way other = network.way("highway=residential;name=Other", a, g);
+        Way unnamed = network.way("highway=residential", g, x);
+
+        HighwayGraph graph = HighwayGraph.build(network.getDataSet().getWays());
+        Junctions junctions = Junctions.build(graph);
+        RoadChains chains = RoadChains.build(junctions, TagColumns.build(graph), "name");
+
+        int main = chains.getChain(main1);
+        assertTrue(main >= 0);
+        assertEquals(main, chains.getChain(main2));
+        assertEquals(main, chains.getChain(main3));
+        assertEquals(3, chains.getEndMember(main) - chains.getFirstMember(main));
+        assertNotEquals(main, chains.getChain(cross));
+        assertNotEquals(main, chains.getChain(roundabout));
+        assertNotEquals(main, chains.getChain(other));
+        assertEquals(-1, chains.getChain(unnamed));
+
+        assertEquals(1, chains.getEndCount(graph.getNodeOrdinal(a), main));
+        assertEquals(2, chains.getEndCount(graph.getNodeOrdinal(b), main));
+        assertEquals(2, chains.getEndCount(graph.getNodeOrdinal(c), main));
+        assertEquals(0, chains.getEndCount(graph.getNodeOrdinal(c), chains.getChain(cross)));
+        assertEquals(2, chains.getEndCount(graph.getNodeOrdinal(d), chains.getChain(roundabout)));
+    }
+
+    @Test
+    public void testKeyWithoutColumn() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node a = network.node(0, 0);
+        Node b = network.node(0, 0.001);
+        Node c = network.node(0, 0.002);
+        Way first = network.way("highway=primary;int_ref=E 1", a, b);
+        Way second = network.way("highway=primary;int_ref=E 1", b, c);
+        Way third = network.way("highway=primary;int_ref=E 2", c, a);
+
+        HighwayGraph graph = HighwayGraph.build(network.getDataSet().getWays());
+        RoadChains chains = RoadChains.build(Junctions.build(graph), TagColumns.build(graph), "int_ref");
+        assertEquals(chains.getChain(first), chains.getChain(second));
+        assertNotEquals(chains.getChain(first), chains.getChain(third));
+    }
+}
@@ -0,0 +1,51 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MaxspeedValueTest {
+    @Test
+    public void testUnits() {
+        assertEquals(50, MaxspeedValue.of("50").getKmh());
+        assertEquals(50, MaxspeedValue.of("50 km/h").getKmh());
+        assertEquals(50, MaxspeedValue.of("31 mph").getKmh());
+        assertEquals(19, MaxspeedValue.of("10 knots").getKmh());
+        assertTrue(MaxspeedValue.isEquivalent("50", "31 mph"));
+        assertFalse(MaxspeedValue.isEquivalent("50", "60"));
+        assertNull(MaxspeedValue.of(null));
+    }
+
+    @Test
+    public void testSpecialValues() {
+        assertTrue(MaxspeedValue.isEquivalent("none", "none"));
+        assertFalse(MaxspeedValue.isEquivalent("none", "walk"));
+        assertFalse(MaxspeedValue.of("none").isKnown());
+        assertTrue(MaxspeedValue.isEquivalent("signals", "signals"));
+        assertFalse(MaxspeedValue.isEquivalent("signals", "variable"));
+    }
+
+    @Test
+    public void testImplicit() {
+        assertTrue(MaxspeedValue.of("XX:urban").isImplicit());
+        assertFalse(MaxspeedValue.of("XX:urban").isKnown());
+        assertFalse(MaxspeedValue.isEquivalent("XX:urban", "XX:rural"));
+        assertSame(MaxspeedValue.of("XX:urban"), MaxspeedValue.of("XX:urban"));
+    }
+
+    @Test
+    public void testImplicitValues() {
+        // The speeds of known countries come from data/maxspeed/implicit.txt
+        assertTrue(MaxspeedValue.of("DE:urban").isImplicit());
+        assertEquals(50, MaxspeedValue.of("DE:urban").getKmh());
+        assertTrue(MaxspeedValue.isEquivalent("DE:urban", "50"));
+        assertTrue(MaxspeedValue.isEquivalent("DE:rural", "100"));
+        assertFalse(MaxspeedValue.isEquivalent("DE:urban", "DE:rural"));
+        assertTrue(MaxspeedValue.isEquivalent("DE:motorway", "none"));
+    }
+}
@@ -0,0 +1,60 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TurnLaneModelTest {
+    @Test
+    public void testParse() {
+        TurnLaneModel lanes = TurnLaneModel.parse("left|through;right||slight_left;through");
+        assertEquals(4, lanes.getLaneCount());
+        assertEquals(TurnLaneModel.LEFT, lanes.getLane(0));
+        assertEquals(TurnLaneModel.THROUGH | TurnLaneModel.RIGHT, lanes.getLane(1));
+        assertEquals(TurnLaneModel.NONE, lanes.getLane(2));
+        assertEquals(1, lanes.countLanesWithAll(TurnLaneModel.SLIGHT_LEFT | TurnLaneModel.THROUGH));
+        assertEquals("left|through;right|none|slight_left;through", lanes.toString());
+        assertEquals("|through|", TurnLaneModel.parse("|through|").toString().replace("none", ""));
+    }
+
+    @Test
+    public void testWithout() {
+        TurnLaneModel lanes = TurnLaneModel.parse("left|left;through|through|right");
+        TurnLaneModel continuing = lanes.without(TurnLaneModel.LEFT_TURNS);
+        assertEquals("through|through|right", continuing.toString());
+        assertSame(continuing, lanes.without(TurnLaneModel.LEFT_TURNS));
+        assertFalse(continuing.isOnlyForward());
+        assertTrue(continuing.without(TurnLaneModel.RIGHT_TURNS).isOnlyForward());
+        assertTrue(TurnLaneModel.parse("none|through").equalsIgnoringNone(TurnLaneModel.parse("|through")));
+
+        // Lanes lose turns, but none of them is removed
+        lanes = TurnLaneModel.parse("left;through|through;right");
+        assertEquals("through|through;right", lanes.without(TurnLaneModel.LEFT_TURNS).toString());
+        assertFalse(lanes.without(TurnLaneModel.LEFT_TURNS).isOnlyForward());
+        assertTrue(lanes.without(TurnLaneModel.LEFT_TURNS | TurnLaneModel.RIGHT_TURNS).isOnlyForward());
+        assertEquals("through|through", lanes.without(TurnLaneModel.LEFT_TURNS | TurnLaneModel.RIGHT_TURNS).toString());
+        assertSame(lanes, lanes.without(TurnLaneModel.MERGES));
+    }
+
+    @Test
+    public void testToString() {
+        // The indications keep their order, and lanes of only spaces go through
+        assertEquals("right;through|none", TurnLaneModel.parse("right;through|none").toString());
+        assertEquals("through;slight_left|through|none", TurnLaneModel.parse("through;slight_left| |").toString());
+        assertEquals(TurnLaneModel.THROUGH, TurnLaneModel.parse("left| ").getLane(1));
+        TurnLaneModel lanes = TurnLaneModel.parse("right;through||left; through");
+        assertEquals("through|none|through",
+                lanes.without(TurnLaneModel.LEFT_TURNS | TurnLaneModel.RIGHT_TURNS).toString());
+    }
+
+    @Test
+    public void testUnknownIndications() {
+        TurnLaneModel lanes = TurnLaneModel.parse("left|slide_left;through");
+        assertEquals(1, lanes.countLanesWithAny(TurnLaneModel.OTHER));
+        assertEquals("slide_left;through", lanes.without(TurnLaneModel.LEFT_TURNS).toString());
+    }
+}
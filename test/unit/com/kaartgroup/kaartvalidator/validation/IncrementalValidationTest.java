@@ -0,0 +1,159 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.validation.Severity;
+import org.openstreetmap.josm.data.validation.TestError;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+
+import com.kaartgroup.kaartvalidator.AbstractTest;
+import com.kaartgroup.kaartvalidator.TestNetwork;
+import com.kaartgroup.kaartvalidator.TestUtil;
+import com.kaartgroup.kaartvalidator.index.Candidates;
+import com.kaartgroup.kaartvalidator.utils.KaartProperties;
+
+public class IncrementalValidationTest extends AbstractTest {
+    @BeforeClass
+    public static void setUpTerritories() {
+        TestUtil.initTerritories();
+    }
+
+    @Before
+    public void setUp() {
+        KaartProperties.INCREMENTAL_VALIDATION.put(true);
+    }
+
+    @After
+    public void tearDown() {
+        KaartProperties.INCREMENTAL_VALIDATION.put(false);
+    }
+
+    /**
+     * Describe errors independently of their order
+     */
+    private static List<String> describe(List<TestError> errors) {
+        List<String> descriptions = new ArrayList<>();
+        for (TestError error : errors) {
+            List<String> primitives = new ArrayList<>();
+            for (OsmPrimitive primitive : error.getPrimitives()) {
+                primitives.add(primitive.getPrimitiveId().toString());
+            }
+            Collections.sort(primitives);
+            descriptions.add(error.getCode() + " " + primitives);
+        }
+        Collections.sort(descriptions);
+        return descriptions;
+    }
+
+    /**
+     * Add a slip lane between a primary road and a secondary road that meet at a corner
+     * @return The primary road, the secondary road and the link
+     */
+    private static Way[] triangle(TestNetwork network, double lat, double lon) {
+        Node b = network.node(lat, lon + 0.001);
+        Node corner = network.node(lat, lon + 0.002);
+        Node e = network.node(lat + 0.001, lon + 0.002);
+        Way from = network.way("highway=primary", network.node(lat, lon), b, corner);
+        Way to = network.way("highway=secondary", corner, e, network.node(lat + 0.002, lon + 0.002));
+        Way link = network.way("highway=primary_link;oneway=yes", b, e);
+        return new Way[] {from, to, link};
+    }
+
+    @Test
+    public void testSameErrorsAsFullRun() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node a = network.node(0, 0);
+        Node b = network.node(0, 0.001);
+        Node c = network.node(0, 0.002);
+        Node d = network.node(0, 0.003);
+        Node e = network.node(0, 0.004);
+        network.way("highway=residential;name=Main", a, b);
+        Way retagged = network.way("highway=residential;name=Main", b, c);
+        Way split = network.way("highway=residential;name=Main", c, d, e);
+        network.way("highway=residential;name=Main", e, network.node(0, 0.005));
+        Way[] restricted = triangle(network, 0.01, 0);
+        triangle(network, 0.01, 0.01);
+
+        NameRefConsistency nameRef = new NameRefConsistency();
+        LinkTurn linkTurn = new LinkTurn();
+        List<String> before = describe(network.validate(nameRef));
+        before.addAll(describe(network.validate(linkTurn)));
+
+        retagged.put("name", "Other");
+        split.setNodes(Arrays.asList(c, d));
+        network.way("highway=residential;name=Main", d, e);
+        network.restriction("only_straight_on", restricted[0], restricted[1], restricted[0].lastNode());
+
+        List<String> incremental = describe(network.validate(nameRef));
+        incremental.addAll(describe(network.validate(linkTurn)));
+        List<String> full = describe(network.validate(new NameRefConsistency()));
+        full.addAll(describe(network.validate(new LinkTurn())));
+        assertNotEquals(before, full);
+        assertEquals(full, incremental);
+    }
+
+    /**
+     * A test that fails to check some of its ways
+     */
+    private static class FailingTest extends KaartTest {
+        private final Set<Way> failing = new HashSet<>();
+        private List<Way> ways;
+
+        FailingTest() {
+            super("Failing test", "Reports every highway, unless it fails to check it");
+        }
+
+        @Override
+        public void startTest(ProgressMonitor monitor) {
+            super.startTest(monitor);
+            ways = new ArrayList<>();
+        }
+
+        @Override
+        public void endTest() {
+            checkAll(ways, way -> {
+                if (failing.contains(way)) throw new IllegalStateException("Failed to check " + way.getUniqueId());
+                addError(TestError.builder(this, Severity.OTHER, 1).message("highway").primitives(way).build());
+            });
+            ways = null;
+            super.endTest();
+        }
+
+        @Override
+        protected void visit(Candidates candidates) {
+            ways.addAll(candidates.getHighways());
+        }
+    }
+
+    @Test
+    public void testFailedUnitsAreCheckedAgain() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node a = network.node(0, 0);
+        Node b = network.node(0, 0.001);
+        network.way("highway=residential", a, b);
+        Way failing = network.way("highway=residential", b, network.node(0, 0.002));
+
+        FailingTest test = new FailingTest();
+        test.failing.add(failing);
+        assertEquals(1, network.validate(test).size());
+        // Nothing changed, but the way that failed has no errors to reuse
+        test.failing.clear();
+        assertEquals(2, network.validate(test).size());
+    }
+}
@@ -0,0 +1,66 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.validation.TestError;
+
+import com.kaartgroup.kaartvalidator.AbstractTest;
+import com.kaartgroup.kaartvalidator.TestNetwork;
+
+public class LinkDestinationsTest extends AbstractTest {
+    private TestNetwork network;
+    private Way link1;
+    private Way link2;
+    private Way primary;
+
+    /**
+     * A motorway exit of two links onto a primary road
+     */
+    private void buildExit() {
+        network = new TestNetwork(-1, -1, 1, 1);
+        Node m1 = network.node(0, 0);
+        Node m2 = network.node(0, 0.002);
+        Node p = network.node(0.0005, 0.0025);
+        Node q = network.node(0.001, 0.003);
+        network.way("highway=motorway;oneway=yes", m1, m2);
+        link1 = network.way("highway=motorway_link;oneway=yes", m2, p);
+        link2 = network.way("highway=motorway_link;oneway=yes", p, q);
+        primary = network.way("highway=primary", q, network.node(0.001, 0.004));
+    }
+
+    @Test
+    public void testMissingDestination() {
+        buildExit();
+        List<TestError> errors = network.validate(new LinkDestinations());
+        assertEquals(1, errors.size());
+        assertEquals(LinkDestinations.DESTINATION_TAG_DOES_NOT_MATCH, errors.get(0).getCode());
+        // The error is for the whole chain, up to the link where it leaves
+        assertTrue(errors.get(0).getPrimitives().contains(link1));
+        assertTrue(errors.get(0).getPrimitives().contains(link2));
+    }
+
+    @Test
+    public void testDestination() {
+        buildExit();
+        link2.put("destination", "Town");
+        assertTrue(network.validate(new LinkDestinations()).isEmpty());
+    }
+
+    @Test
+    public void testDestinationRefMatches() {
+        buildExit();
+        link2.put("destination:ref", "A 1");
+        primary.put("ref", "A 1");
+        assertTrue(network.validate(new LinkDestinations()).isEmpty());
+
+        primary.put("ref", "A 2");
+        assertEquals(1, network.validate(new LinkDestinations()).size());
+    }
+}
@@ -0,0 +1,108 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.validation.TestError;
+
+import com.kaartgroup.kaartvalidator.AbstractTest;
+import com.kaartgroup.kaartvalidator.TestNetwork;
+import com.kaartgroup.kaartvalidator.TestUtil;
+import com.kaartgroup.kaartvalidator.index.DataSetIndex;
+
+public class LinkTurnTest extends AbstractTest {
+    @BeforeClass
+    public static void setUpTerritories() {
+        TestUtil.initTerritories();
+    }
+
+    /**
+     * Add a slip lane between a primary road and a secondary road that meet at a corner
+     * @return The primary road, the secondary road and the link
+     */
+    private static Way[] triangle(TestNetwork network, double lat, double lon) {
+        Node b = network.node(lat, lon + 0.001);
+        Node corner = network.node(lat, lon + 0.002);
+        Node e = network.node(lat + 0.001, lon + 0.002);
+        Way from = network.way("highway=primary", network.node(lat, lon), b, corner);
+        Way to = network.way("highway=secondary", corner, e, network.node(lat + 0.002, lon + 0.002));
+        Way link = network.way("highway=primary_link;oneway=yes", b, e);
+        return new Way[] {from, to, link};
+    }
+
+    @Test
+    public void testLinkWithoutRestriction() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Way[] ways = triangle(network, 0, 0);
+
+        List<TestError> errors = network.validate(new LinkTurn());
+        assertEquals(1, errors.size());
+        assertEquals(LinkTurn.LINK_ROAD_NO_TURN_RESTRICTION, errors.get(0).getCode());
+        assertTrue(errors.get(0).getPrimitives().contains(ways[2]));
+        assertTrue(errors.get(0).isFixable());
+    }
+
+    @Test
+    public void testLinkWithRestriction() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Way[] ways = triangle(network, 0, 0);
+        network.restriction("only_straight_on", ways[0], ways[1], ways[0].lastNode());
+
+        assertTrue(network.validate(new LinkTurn()).isEmpty());
+    }
+
+    @Test
+    public void testDrivingSideAtBorder() {
+        // Macau drives on the left and Zhuhai on the right, both triangles are in the same 1/8 degree cell
+        TestNetwork network = new TestNetwork(22.125, 113.5, 22.25, 113.625);
+        Way[] macau = triangle(network, 22.19, 113.54);
+        Way[] zhuhai = triangle(network, 22.245, 113.565);
+        network.restriction("no_left_turn", macau[0], macau[1], macau[0].lastNode());
+        network.restriction("no_left_turn", zhuhai[0], zhuhai[1], zhuhai[0].lastNode());
+
+        List<TestError> errors = network.validate(new LinkTurn());
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).getPrimitives().contains(zhuhai[2]));
+    }
+
+    /**
+     * Check enough links to run the checks in parallel, while a writer waits for the dataset. The checks must not
+     * take the read lock behind the writer. Without at least two threads in the common pool this runs serially.
+     */
+    @Test(timeout = 60_000)
+    public void testParallelWithQueuedWriter() throws InterruptedException {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        int count = KaartTest.PARALLEL_THRESHOLD + 44;
+        for (int i = 0; i < count; i++) {
+            triangle(network, (i / 20) * 0.01, (i % 20) * 0.01);
+        }
+        DataSet dataSet = network.getDataSet();
+        Thread writer = new Thread(() -> {
+            dataSet.beginUpdate();
+            dataSet.endUpdate();
+        });
+        LinkTurn test = new LinkTurn() {
+            @Override
+            protected void prepareIndexes(DataSetIndex dataSetIndex) {
+                super.prepareIndexes(dataSetIndex);
+                // The validation thread holds the read lock, so the writer waits for it in the lock queue
+                writer.start();
+                while (writer.getState() != Thread.State.WAITING) {
+                    Thread.yield();
+                }
+            }
+        };
+
+        List<TestError> errors = network.validate(test);
+        writer.join();
+        assertEquals(count, errors.size());
+    }
+}
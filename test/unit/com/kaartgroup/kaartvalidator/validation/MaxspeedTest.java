@@ -0,0 +1,108 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.validation.TestError;
+
+import com.kaartgroup.kaartvalidator.AbstractTest;
+import com.kaartgroup.kaartvalidator.TestNetwork;
+
+public class MaxspeedTest extends AbstractTest {
+    /**
+     * Add a straight road of ways along a latitude
+     * @param tags The tags of each way
+     * @return The ways
+     */
+    private static Way[] road(TestNetwork network, double lat, double[] lons, String... tags) {
+        Way[] ways = new Way[tags.length];
+        Node previous = network.node(lat, lons[0]);
+        for (int i = 0; i < tags.length; i++) {
+            Node next = network.node(lat, lons[i + 1]);
+            ways[i] = network.way(tags[i], previous, next);
+            previous = next;
+        }
+        return ways;
+    }
+
+    @Test
+    public void testGapOfThreeWays() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Way[] ways = road(network, 0, new double[] {0, 0.001, 0.002, 0.003, 0.004, 0.005},
+                "highway=residential;name=Main;maxspeed=50",
+                "highway=residential;name=Main",
+                "highway=residential;name=Main",
+                "highway=residential;name=Main",
+                "highway=residential;name=Main;maxspeed=50");
+
+        List<TestError> errors = network.validate(new Maxspeed());
+        assertEquals(1, errors.size());
+        assertEquals(Maxspeed.MAXSPEED_BLANKSPOT, errors.get(0).getCode());
+        assertTrue(errors.get(0).getPrimitives().containsAll(Arrays.asList(ways[1], ways[2], ways[3])));
+        assertEquals(3, errors.get(0).getPrimitives().size());
+        // The gap is too long to fill in automatically
+        assertFalse(errors.get(0).isFixable());
+    }
+
+    @Test
+    public void testShortGap() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        road(network, 0, new double[] {0, 0.001, 0.00105, 0.002},
+                "highway=residential;name=Main;maxspeed=50",
+                "highway=residential;name=Main",
+                "highway=residential;name=Main;maxspeed=50");
+
+        List<TestError> errors = network.validate(new Maxspeed());
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).isFixable());
+    }
+
+    @Test
+    public void testDifferentMaxspeeds() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        road(network, 0, new double[] {0, 0.001, 0.002, 0.003},
+                "highway=residential;name=Main;maxspeed=50",
+                "highway=residential;name=Main",
+                "highway=residential;name=Main;maxspeed=60");
+
+        assertTrue(network.validate(new Maxspeed()).isEmpty());
+    }
+
+    @Test
+    public void testGapAtDownloadAreaEdge() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        // The way without a maxspeed leaves the download area, so it may have a maxspeed that was not downloaded
+        road(network, 0, new double[] {0.998, 0.999, 1.001, 1.002},
+                "highway=residential;name=Main;maxspeed=50",
+                "highway=residential;name=Main",
+                "highway=residential;name=Main;maxspeed=50");
+
+        assertTrue(network.validate(new Maxspeed()).isEmpty());
+    }
+
+    @Test
+    public void testDirectionsSwapped() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node a = network.node(0, 0);
+        Node b = network.node(0, 0.001);
+        Node c = network.node(0, 0.002);
+        Node d = network.node(0, 0.003);
+        Way first = network.way("highway=residential;name=Main;maxspeed:forward=50;maxspeed:backward=30", a, b);
+        Way swapped = network.way("highway=residential;name=Main;maxspeed:forward=30;maxspeed:backward=50", b, c);
+        // Drawn against the direction of the others, with the directions matching the way before it
+        network.way("highway=residential;name=Main;maxspeed:forward=50;maxspeed:backward=30", d, c);
+
+        List<TestError> errors = network.validate(new Maxspeed());
+        assertEquals(1, errors.size());
+        assertEquals(Maxspeed.MAXSPEED_DIRECTIONS_SWAPPED, errors.get(0).getCode());
+        assertTrue(errors.get(0).getPrimitives().containsAll(Arrays.asList(first, swapped)));
+    }
+}
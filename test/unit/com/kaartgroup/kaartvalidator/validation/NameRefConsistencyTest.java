@@ -0,0 +1,66 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.validation.TestError;
+
+import com.kaartgroup.kaartvalidator.AbstractTest;
+import com.kaartgroup.kaartvalidator.TestNetwork;
+
+public class NameRefConsistencyTest extends AbstractTest {
+    @Test
+    public void testNameChanges() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node a = network.node(0, 0);
+        Node b = network.node(0, 0.001);
+        Node c = network.node(0, 0.002);
+        Node d = network.node(0, 0.003);
+        Way main1 = network.way("highway=residential;name=Main", a, b);
+        Way main2 = network.way("highway=residential;name=Main", b, c);
+        Way other = network.way("highway=residential;name=Other", c, d);
+
+        List<TestError> errors = network.validate(new NameRefConsistency());
+        assertEquals(1, errors.size());
+        assertEquals(NameRefConsistency.NAME_CHANGES, errors.get(0).getCode());
+        assertTrue(errors.get(0).getPrimitives().contains(main2));
+        assertTrue(errors.get(0).getPrimitives().contains(other));
+        assertFalse(errors.get(0).getPrimitives().contains(main1));
+    }
+
+    @Test
+    public void testNameContinuesThroughCrossing() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node a = network.node(0, 0);
+        Node b = network.node(0, 0.001);
+        Node c = network.node(0, 0.002);
+        network.way("highway=residential;name=Main", a, b);
+        network.way("highway=residential;name=Main", b, c);
+        // A road that passes through b is crossed, it does not replace Main
+        network.way("highway=residential;name=Cross", network.node(0.001, 0.001), b, network.node(-0.001, 0.001));
+
+        assertTrue(network.validate(new NameRefConsistency()).isEmpty());
+    }
+
+    @Test
+    public void testRefChangesAtTee() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node a = network.node(0, 0);
+        Node b = network.node(0, 0.001);
+        Node c = network.node(0, 0.002);
+        network.way("highway=primary;ref=A 1", a, b);
+        network.way("highway=primary;ref=A 2", b, c);
+        // A third way with the first ref keeps the chain going through b
+        network.way("highway=primary;ref=A 1", b, network.node(0.001, 0.001));
+
+        List<TestError> errors = network.validate(new NameRefConsistency());
+        assertEquals(0, TestNetwork.withCode(errors, NameRefConsistency.REF_CHANGES).size());
+    }
+}
@@ -0,0 +1,87 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.validation.TestError;
+
+import com.kaartgroup.kaartvalidator.AbstractTest;
+import com.kaartgroup.kaartvalidator.TestNetwork;
+
+public class RestrictionConsistencyTest extends AbstractTest {
+    @Test
+    public void testConnected() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node via = network.node(0, 0.001);
+        Way from = network.way("highway=residential", network.node(0, 0), via);
+        Way to = network.way("highway=residential", via, network.node(0.001, 0.001));
+        network.restriction("no_left_turn", from, to, via);
+
+        assertTrue(network.validate(new RestrictionConsistency()).isEmpty());
+    }
+
+    @Test
+    public void testViaNotConnected() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node via = network.node(0, 0.001);
+        Way from = network.way("highway=residential", network.node(0, 0), via);
+        // The to way starts next to the via node instead of at it
+        Way to = network.way("highway=residential", network.node(0, 0.0011), network.node(0.001, 0.001));
+        Relation relation = network.restriction("no_left_turn", from, to, via);
+
+        List<TestError> errors = network.validate(new RestrictionConsistency());
+        assertEquals(1, errors.size());
+        assertEquals(RestrictionConsistency.VIA_NOT_CONNECTED, errors.get(0).getCode());
+        assertTrue(errors.get(0).getPrimitives().contains(relation));
+    }
+
+    @Test
+    public void testViaWaysNotConnected() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node a = network.node(0, 0.001);
+        Node b = network.node(0, 0.002);
+        Way from = network.way("highway=residential", network.node(0, 0), a);
+        Way via1 = network.way("highway=residential", a, b);
+        Way via2 = network.way("highway=residential", network.node(0.001, 0.002), network.node(0.001, 0.003));
+        Way to = network.way("highway=residential", b, network.node(-0.001, 0.002));
+        network.restriction("no_u_turn", from, to, via1, via2);
+
+        List<TestError> errors = network.validate(new RestrictionConsistency());
+        assertEquals(1, TestNetwork.withCode(errors, RestrictionConsistency.VIA_NOT_CONNECTED).size());
+    }
+
+    @Test
+    public void testConflictsWithOneway() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node via = network.node(0, 0.001);
+        // Traffic on the from way drives away from the via node, so it can never make the turn
+        Way from = network.way("highway=residential;oneway=yes", via, network.node(0, 0));
+        Way to = network.way("highway=residential", via, network.node(0.001, 0.001));
+        Relation relation = network.restriction("no_left_turn", from, to, via);
+
+        List<TestError> errors = network.validate(new RestrictionConsistency());
+        assertEquals(1, errors.size());
+        assertEquals(RestrictionConsistency.CONFLICTS_WITH_ONEWAY, errors.get(0).getCode());
+        assertTrue(errors.get(0).getPrimitives().contains(relation));
+    }
+
+    @Test
+    public void testOnewayIntoTo() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node via = network.node(0, 0.001);
+        Way from = network.way("highway=residential", network.node(0, 0), via);
+        // The to way only allows traffic towards the via node
+        Way to = network.way("highway=residential;oneway=-1", via, network.node(0.001, 0.001));
+        network.restriction("no_left_turn", from, to, via);
+
+        List<TestError> errors = network.validate(new RestrictionConsistency());
+        assertEquals(1, TestNetwork.withCode(errors, RestrictionConsistency.CONFLICTS_WITH_ONEWAY).size());
+    }
+}
@@ -0,0 +1,71 @@
+// License: GPL. For details, see LICENSE file.
+package com.kaartgroup.kaartvalidator.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.validation.TestError;
+
+import com.kaartgroup.kaartvalidator.AbstractTest;
+import com.kaartgroup.kaartvalidator.TestNetwork;
+
+public class RoadEndsWithLinksTest extends AbstractTest {
+    @Test
+    public void testRoadEndsWithLinks() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node y = network.node(0, 0.001);
+        Way main = network.way("highway=primary;name=Main", network.node(0, 0), y);
+        Way left = network.way("highway=primary_link", y, network.node(0.0001, 0.0011));
+        Way right = network.way("highway=primary_link", y, network.node(-0.0001, 0.0011));
+
+        List<TestError> errors = network.validate(new RoadEndsWithLinks());
+        assertEquals(1, errors.size());
+        assertEquals(RoadEndsWithLinks.ROAD_ENDS_WITH_LINKS, errors.get(0).getCode());
+        assertTrue(errors.get(0).getPrimitives().contains(main));
+        assertTrue(errors.get(0).getPrimitives().contains(left));
+        assertTrue(errors.get(0).getPrimitives().contains(right));
+    }
+
+    @Test
+    public void testLongLinks() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node y = network.node(0, 0.001);
+        network.way("highway=primary;name=Main", network.node(0, 0), y);
+        network.way("highway=primary_link", y, network.node(0.001, 0.002));
+        network.way("highway=primary_link", y, network.node(-0.001, 0.002));
+
+        assertTrue(network.validate(new RoadEndsWithLinks()).isEmpty());
+    }
+
+    @Test
+    public void testRoadContinues() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node y = network.node(0, 0.001);
+        network.way("highway=primary;name=Main", network.node(0, 0), y);
+        network.way("highway=primary;name=Main", y, network.node(0, 0.002));
+        network.way("highway=primary_link", y, network.node(0.0001, 0.0011));
+        network.way("highway=primary_link", y, network.node(-0.0001, 0.0011));
+
+        assertTrue(network.validate(new RoadEndsWithLinks()).isEmpty());
+    }
+
+    @Test
+    public void testLinkGoingThrough() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node z = network.node(0, 0.001);
+        Way main = network.way("highway=primary;name=Main", network.node(0, 0), z);
+        Way passing = network.way("highway=primary_link", network.node(0.0001, 0.001), z,
+                network.node(-0.0001, 0.001));
+
+        List<TestError> errors = network.validate(new RoadEndsWithLinks());
+        assertEquals(1, errors.size());
+        assertEquals(RoadEndsWithLinks.ROAD_HAS_LINK_GOING_THROUGH, errors.get(0).getCode());
+        assertTrue(errors.get(0).getPrimitives().contains(main));
+        assertTrue(errors.get(0).getPrimitives().contains(passing));
+    }
+}
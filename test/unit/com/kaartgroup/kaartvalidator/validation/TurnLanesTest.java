@@ -7,13 +7,15 @@ import java.io.IOException;
 
 import org.junit.Test;
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
 import org.openstreetmap.josm.data.osm.Way;
 
 import com.kaartgroup.kaartvalidator.AbstractTest;
 import com.kaartgroup.kaartvalidator.ImportUtils;
+import com.kaartgroup.kaartvalidator.TestNetwork;
 
-public class TurnLanesTest {
+public class TurnLanesTest extends AbstractTest {
     @Test
     public void getTurnLanesTest() {
         String[] right = {"right"};
@@ -45,4 +47,22 @@ public class TurnLanesTest {
         //Waychecker wayChecker = new WayChecker(way, turnLanes);
 
     }
+
+    @Test
+    public void getContinuingLanesTest() {
+        TestNetwork network = new TestNetwork(-1, -1, 1, 1);
+        Node a = network.node(0, 0);
+        Node b = network.node(0, 0.001);
+        Way main = network.way("highway=primary;name=Main;oneway=yes", a, b);
+        network.way("highway=primary;name=Main;oneway=yes", b, network.node(0, 0.002));
+        network.way("highway=secondary;name=Cross", network.node(-0.001, 0.001), b, network.node(0.001, 0.001));
+        TurnLanes turnLanes = new TurnLanes();
+
+        // The turns are removed from the lanes that also go through, and the value is what the fix sets
+        main.put("turn:lanes", "left;through|through;right");
+        assertEquals("through|through", turnLanes.getContinuingLanes(main, "forward").toString());
+        assertTrue(turnLanes.getContinuingLanes(main, "forward").isOnlyForward());
+        main.put("turn:lanes", "left| |right");
+        assertEquals("through", turnLanes.getContinuingLanes(main, "forward").toString());
+    }
 }